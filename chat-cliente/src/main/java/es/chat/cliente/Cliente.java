@@ -1,5 +1,6 @@
 package es.chat.cliente;
 
+import es.chat.controlador.ClienteController;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -22,13 +23,16 @@ public class Cliente extends Application {
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(Cliente.class.getResource("cliente-run.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 640, 480);
+        ClienteController controlador = fxmlLoader.getController();
         stage.setTitle("Chat");
         stage.setScene(scene);
         stage.setResizable(false);
         stage.show();
 
-        // Cerrar hilo al cerrar la ventana
+        // Cerrar hilo y guardar el historial al cerrar la ventana
         stage.setOnCloseRequest(e -> {
+            controlador.cerrarHistorial();
+
             if (hiloEscucha != null) {
                 hiloEscucha.interrupt();
             }
@@ -0,0 +1,193 @@
+package es.chat.cliente;
+
+import es.chat.controlador.ClienteController;
+import javafx.application.Platform;
+
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Clase que se encarga de escuchar los mensajes que envía el servidor.
+ * Se ejecuta en un hilo separado para no bloquear la interfaz.
+ * @see ClienteController
+ * @see ServCmd
+ * @version 1.0
+ * @author Adrián González
+ */
+public class EscuchaHilo extends Thread {
+    private final DataInputStream entrada;
+    private final ClienteController clienteController;
+
+    public EscuchaHilo(DataInputStream entrada, ClienteController clienteController) {
+        this.entrada = entrada;
+        this.clienteController = clienteController;
+    }
+
+    /**
+     * Se ejecuta al iniciar el hilo. Escucha los mensajes del servidor y los procesa.
+     */
+    @Override
+    public void run() {
+        while (currentThread().isAlive()) {
+            try {
+                String mensajeRecibido = entrada.readUTF();
+                String[] splitMensaje = mensajeRecibido.split(" ", 2);
+                ServCmd comando = ServCmd.valueOf(splitMensaje[0]);
+                String parametros = splitMensaje.length > 1 ? splitMensaje[1] : "";
+
+                ejecutarComando(comando, parametros);
+            } catch (Exception e) {
+                System.out.println("Se ha cerrado la conexión. " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Ejecuta el comando recibido del servidor.
+     * @param comando Comando recibido del servidor.
+     * @param parametros Parámetros del comando.
+     */
+    private void ejecutarComando(ServCmd comando, String parametros) {
+        switch (comando) {
+            case CHT -> recibirGeneral(parametros);
+            case PRV -> recibirPrivado(parametros);
+            case LST -> recibirListaUsuarios(parametros);
+            case PRE -> recibirPresencia(parametros);
+            case NOK -> errorAlConectar(parametros);
+            case OK -> exitoAlConectar(parametros);
+            case BUS -> recibirBusqueda(parametros);
+            case ESC -> recibirEscribiendo(parametros);
+            case SUB -> recibirSubida(parametros);
+            case TRZ -> recibirTrozo(parametros);
+            case FIN -> recibirFin(parametros);
+        }
+    }
+
+    /**
+     * Recibe las entradas y salidas de usuarios agrupadas y las aplica a la lista de usuarios de una vez.
+     * @param parametros Número de secuencia y cambios separados por comas: alias precedido de {@code +} si se ha
+     *                   conectado o {@code -} si se ha desconectado.
+     */
+    private void recibirPresencia(String parametros) {
+        String[] splitParametros = parametros.split(" ", 2);
+        long secuencia = Long.parseLong(splitParametros[0]);
+        List<String> conectados = new ArrayList<>();
+        List<String> desconectados = new ArrayList<>();
+
+        for (String cambio : splitParametros[1].split(",")) {
+            (cambio.charAt(0) == '+' ? conectados : desconectados).add(cambio.substring(1));
+        }
+
+        Platform.runLater(() -> clienteController.recibirPresencia(secuencia, conectados, desconectados));
+        System.out.printf("Usuarios conectados: %s, desconectados: %s%n", conectados, desconectados);
+    }
+
+    /**
+     * Recibe la lista de usuarios conectados y la muestra en la interfaz.
+     * @param listaCSV Lista de usuarios conectados separada por comas.
+     */
+    private void recibirListaUsuarios(String listaCSV) {
+        Platform.runLater(() -> clienteController.recibirUsuarios(listaCSV));
+        System.out.printf("Lista de usuarios: %s%n", listaCSV);
+    }
+
+    /**
+     * Recibe un mensaje privado, enviado por otro usuario o de vuelta de uno propio, y lo muestra en la interfaz.
+     * @param parametros Número de secuencia, alias del emisor, alias del destinatario y mensaje.
+     */
+    private void recibirPrivado(String parametros) {
+        String[] splitParametros = parametros.split(" ", 4);
+        long secuencia = Long.parseLong(splitParametros[0]);
+        Platform.runLater(() -> clienteController.recibirPrivado(secuencia, splitParametros[1], splitParametros[2], splitParametros[3]));
+        System.out.printf("Mensaje privado de %s a %s: %s%n", splitParametros[1], splitParametros[2], splitParametros[3]);
+    }
+
+    /**
+     * Recibe un mensaje general y lo muestra en la interfaz.
+     * @param parametros Parámetros del mensaje general.
+     */
+    private void recibirGeneral(String parametros) {
+        String[] splitParametros = parametros.split(" ", 3);
+        long secuencia = Long.parseLong(splitParametros[0]);
+        Platform.runLater(() -> clienteController.recibirGeneral(secuencia, splitParametros[1], splitParametros[2]));
+        System.out.printf("Mensaje de %s: %s%n", splitParametros[1], splitParametros[2]);
+    }
+
+    /**
+     * Muestra un mensaje de error en la interfaz.
+     * @param mensaje Mensaje de error.
+     */
+    private void errorAlConectar(String mensaje) {
+        Platform.runLater(() -> clienteController.recibirNOK(mensaje));
+        System.out.printf("Conexión rechazada. %s%n", mensaje);
+    }
+
+    /**
+     * Muestra un mensaje de éxito en la interfaz.
+     * @param parametros Token de sesión, último número de secuencia y mensaje de éxito.
+     */
+    private void exitoAlConectar(String parametros) {
+        String[] splitParametros = parametros.split(" ", 3);
+        long secuencia = Long.parseLong(splitParametros[1]);
+        Platform.runLater(() -> clienteController.recibirOK(splitParametros[0], secuencia, splitParametros[2]));
+        System.out.printf("Conexión aceptada. %s%n", splitParametros[2]);
+    }
+
+    /**
+     * Recibe un aviso de que un usuario está escribiendo. No pasa por {@code Platform.runLater}: el controlador lo
+     * guarda desde este hilo y la interfaz lo recoge en su siguiente actualización periódica.
+     * @param parametros Alias del usuario y chat ({@code *} si es el general).
+     */
+    private void recibirEscribiendo(String parametros) {
+        String[] splitParametros = parametros.split(" ", 2);
+        clienteController.recibirEscribiendo(splitParametros[0], splitParametros.length == 2 && splitParametros[1].equals("*"));
+    }
+
+    /**
+     * Recibe la posición desde la que continuar una subida. Como los trozos, no pasa por {@code Platform.runLater}.
+     * @param parametros Hash del adjunto y posición.
+     * @see Transferencias
+     */
+    private void recibirSubida(String parametros) {
+        String[] splitParametros = parametros.split(" ");
+        clienteController.getTransferencias().recibirSubida(splitParametros[0], Long.parseLong(splitParametros[1]));
+    }
+
+    /**
+     * Recibe un trozo de un adjunto que se está descargando y lo escribe en disco desde este hilo.
+     * @param parametros Hash del adjunto, posición del trozo y contenido en Base64.
+     */
+    private void recibirTrozo(String parametros) {
+        String[] splitParametros = parametros.split(" ", 3);
+        clienteController.getTransferencias().recibirTrozo(splitParametros[0], Long.parseLong(splitParametros[1]), splitParametros[2]);
+    }
+
+    /**
+     * Recibe el final de una subida o una descarga.
+     * @param parametros Hash del adjunto y, si ha fallado, el motivo.
+     */
+    private void recibirFin(String parametros) {
+        String[] splitParametros = parametros.split(" ", 2);
+        clienteController.getTransferencias().recibirFin(splitParametros[0], splitParametros.length == 2 ? splitParametros[1] : null);
+        System.out.printf("Transferencia terminada: %s%n", parametros);
+    }
+
+    /**
+     * Recibe una página de resultados de búsqueda y la muestra en la interfaz.
+     * @param parametros Página y total en la primera línea y un mensaje encontrado en cada una de las siguientes.
+     */
+    private void recibirBusqueda(String parametros) {
+        String[] lineas = parametros.split("\n");
+        String[] splitCabecera = lineas[0].split(" ");
+        int pagina = Integer.parseInt(splitCabecera[0]);
+        int total = Integer.parseInt(splitCabecera[1]);
+        List<String> resultados = Arrays.asList(lineas).subList(1, lineas.length);
+        Platform.runLater(() -> clienteController.recibirBusqueda(pagina, total, resultados));
+        System.out.printf("Resultados de búsqueda: %d%n", total);
+    }
+}
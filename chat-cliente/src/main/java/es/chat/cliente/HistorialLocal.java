@@ -0,0 +1,184 @@
+package es.chat.cliente;
+
+import es.chat.controlador.ClienteController;
+import es.chat.modelo.Chat;
+import es.chat.util.Configuracion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Clase que guarda en disco el historial de los chats de un usuario para recuperarlo en la siguiente sesión.
+ * <p>
+ * Cada chat tiene un fichero de texto en UTF-8 con un mensaje por línea al que solo se añaden líneas, nunca se
+ * reescribe. Al abrir un chat se proyecta en memoria solo la cola del fichero (los últimos {@link #TAM_COLA} bytes),
+ * así que el tiempo de arranque no depende del tamaño del historial. Los mensajes no leídos de cada chat se guardan
+ * aparte en {@value #FICHERO_NO_LEIDOS} al desconectarse o cerrar la aplicación.
+ * <p>
+ * Los ficheros están en {@code <chat.cliente.historial>/<alias>/}, por defecto en {@code ~/.chat-multicliente}.
+ * @see ClienteController
+ * @see Chat
+ * @version 1.0
+ * @author Adrián González
+ */
+public class HistorialLocal implements Closeable {
+    public static final int TAM_COLA = 64 * 1024;
+    private static final String FICHERO_NO_LEIDOS = "no-leidos.properties";
+    private static final String FICHERO_GENERAL = "_general";
+
+    private final Path directorio;
+    private final Map<String, FileChannel> ficheros = new HashMap<>();
+    private final Properties noLeidos = new Properties();
+
+    /**
+     * Abre (o crea) el historial del usuario y carga sus mensajes no leídos.
+     * @param alias Alias del usuario
+     * @throws IOException Si no se puede crear el directorio del historial
+     */
+    public HistorialLocal(String alias) throws IOException {
+        directorio = Configuracion.directorioHistorialLocal().resolve(alias);
+        Files.createDirectories(directorio);
+
+        Path ficheroNoLeidos = directorio.resolve(FICHERO_NO_LEIDOS);
+
+        if (Files.exists(ficheroNoLeidos)) {
+            try (InputStream entrada = Files.newInputStream(ficheroNoLeidos)) {
+                noLeidos.load(entrada);
+            }
+        }
+    }
+
+    /**
+     * Carga en el chat la cola de su historial y su número de mensajes no leídos.
+     * @param chat Chat recién creado
+     */
+    public void restaurar(Chat chat) {
+        Path fichero = fichero(chat);
+
+        try {
+            if (Files.exists(fichero)) {
+                chat.setMensajes(leerCola(fichero));
+            }
+        } catch (IOException e) {
+            System.err.printf("ERROR al leer el historial de %s%n%s%n", chat.getAlias(), e.getMessage());
+        }
+
+        try {
+            chat.setNumMensajesNoLeidos(Integer.parseInt(noLeidos.getProperty(chat.getAlias(), "0")));
+        } catch (NumberFormatException e) {
+            chat.setNumMensajesNoLeidos(0);
+        }
+    }
+
+    /**
+     * Añade un mensaje al final del historial del chat.
+     * @param chat Chat al que pertenece el mensaje
+     * @param mensaje Mensaje tal y como se muestra en el chat
+     */
+    public void anotar(Chat chat, String mensaje) {
+        try {
+            FileChannel canal = ficheros.get(chat.getAlias());
+
+            if (canal == null) {
+                canal = FileChannel.open(fichero(chat), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                ficheros.put(chat.getAlias(), canal);
+            }
+
+            ByteBuffer linea = ByteBuffer.wrap((mensaje.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+
+            while (linea.hasRemaining()) {
+                canal.write(linea);
+            }
+        } catch (IOException e) {
+            System.err.printf("ERROR al guardar el historial de %s%n%s%n", chat.getAlias(), e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el número de mensajes no leídos de los chats. Se escribe en un fichero temporal que luego sustituye
+     * al anterior, para no dejarlo a medias si se cierra la aplicación mientras tanto.
+     * @param chats Chats de la sesión
+     */
+    public void guardarNoLeidos(Collection<Chat> chats) {
+        chats.forEach(c -> noLeidos.setProperty(c.getAlias(), String.valueOf(c.getNumMensajesNoLeidos())));
+
+        Path temporal = directorio.resolve(FICHERO_NO_LEIDOS + ".tmp");
+
+        try {
+            try (OutputStream salida = Files.newOutputStream(temporal)) {
+                noLeidos.store(salida, null);
+            }
+
+            Files.move(temporal, directorio.resolve(FICHERO_NO_LEIDOS), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.printf("ERROR al guardar los mensajes no leídos%n%s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Cierra los ficheros abiertos del historial.
+     */
+    @Override
+    public void close() {
+        for (FileChannel canal : ficheros.values()) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                System.err.printf("ERROR al cerrar el historial%n%s%n", e.getMessage());
+            }
+        }
+
+        ficheros.clear();
+    }
+
+    /**
+     * Proyecta en memoria los últimos {@link #TAM_COLA} bytes del fichero y los devuelve empezando en la primera
+     * línea completa, en el mismo formato que {@link Chat#getMensajes()}.
+     * @param fichero Fichero del historial
+     * @return Mensajes de la cola del historial
+     * @throws IOException Si no se puede leer el fichero
+     */
+    private static String leerCola(Path fichero) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            long inicio = Math.max(0, tamano - TAM_COLA);
+            MappedByteBuffer cola = canal.map(FileChannel.MapMode.READ_ONLY, inicio, tamano - inicio);
+
+            if (inicio > 0) {
+                while (cola.hasRemaining() && cola.get() != '\n') {
+                    // Se descarta la línea cortada por el principio de la cola
+                }
+            }
+
+            String texto = StandardCharsets.UTF_8.decode(cola).toString();
+            StringBuilder mensajes = new StringBuilder(texto.length());
+
+            for (String linea : texto.split("\n")) {
+                if (!linea.isEmpty()) {
+                    mensajes.append(String.format("%s%n", linea));
+                }
+            }
+
+            return mensajes.toString();
+        }
+    }
+
+    private Path fichero(Chat chat) {
+        String nombre = chat.getAlias().equals(ClienteController.ALIAS_GENERAL) ? FICHERO_GENERAL : chat.getAlias();
+        return directorio.resolve(nombre + ".log");
+    }
+}
@@ -0,0 +1,336 @@
+package es.chat.cliente;
+
+import es.chat.controlador.ClienteController;
+import es.chat.modelo.Adjunto;
+import es.chat.modelo.comando.CliCmd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Clase que sube y descarga los adjuntos del cliente.
+ * <p>
+ * Cada subida se hace en su propio hilo, que envía los trozos con {@code TRZ} de uno en uno por la misma conexión que
+ * los mensajes. Cada petición se escribe entera y por orden de llegada (ver {@link ClienteController}), así que un
+ * mensaje pasa delante de los trozos que quedan y espera como mucho a que termine de escribirse uno, de
+ * {@link Adjunto#TAM_TROZO} bytes. Las descargas no necesitan hilo: el {@link EscuchaHilo} entrega cada trozo
+ * recibido, que se escribe en un archivo temporal, y al completar una ventana de {@link Adjunto#TROZOS_POR_DESCARGA}
+ * trozos se pide la siguiente con {@code DES}.
+ * <p>
+ * Al terminar, se comprueba que el SHA-256 del contenido corresponde al hash del adjunto.
+ * @see ClienteController
+ * @see Adjunto
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Transferencias {
+    /**
+     * Segundos que se espera una respuesta del servidor durante una subida.
+     */
+    private static final long ESPERA_RESPUESTA = 30;
+
+    private final Consumer<String> peticiones;
+    private final Map<String, Subida> subidas = new ConcurrentHashMap<>();
+    private final Map<String, Descarga> descargas = new ConcurrentHashMap<>();
+
+    /**
+     * @param peticiones Envía una petición al servidor. Se llama desde varios hilos
+     */
+    public Transferencias(Consumer<String> peticiones) {
+        this.peticiones = peticiones;
+    }
+
+    /**
+     * Sube un archivo en segundo plano.
+     * @param archivo Archivo a subir
+     * @return Adjunto subido, listo para enlazarlo en un mensaje, o un error
+     */
+    public CompletableFuture<Adjunto> subir(Path archivo) {
+        CompletableFuture<Adjunto> resultado = new CompletableFuture<>();
+        Thread hilo = new Thread(() -> {
+            try {
+                resultado.complete(subirArchivo(archivo));
+            } catch (Exception e) {
+                resultado.completeExceptionally(e);
+            }
+        }, "subida-" + archivo.getFileName());
+
+        hilo.setDaemon(true);
+        hilo.start();
+        return resultado;
+    }
+
+    /**
+     * Calcula el hash del archivo, pide al servidor la posición desde la que subirlo y envía los trozos que faltan.
+     * @param archivo Archivo a subir
+     * @return Adjunto subido
+     * @throws Exception Si falla la lectura, el servidor rechaza la subida o no responde
+     */
+    private Adjunto subirArchivo(Path archivo) throws Exception {
+        Adjunto adjunto = new Adjunto(hash(archivo), Files.size(archivo), archivo.getFileName().toString());
+        Subida subida = new Subida();
+
+        if (subidas.putIfAbsent(adjunto.hash(), subida) != null) {
+            throw new IOException("El archivo ya se está subiendo");
+        }
+
+        try {
+            peticiones.accept(String.format("%s %s %d", CliCmd.SUB, adjunto.hash(), adjunto.tamano()));
+            long desde = esperar(subida.inicio);
+
+            if (desde >= 0) {
+                enviarTrozos(archivo, adjunto, desde, subida);
+                esperar(subida.fin);
+            }
+
+            return adjunto;
+        } finally {
+            subidas.remove(adjunto.hash());
+        }
+    }
+
+    /**
+     * Envía los trozos del archivo desde la posición indicada. Deja de enviar si el servidor termina la subida antes.
+     */
+    private void enviarTrozos(Path archivo, Adjunto adjunto, long desde, Subida subida) throws IOException {
+        try (InputStream entrada = Files.newInputStream(archivo)) {
+            entrada.skipNBytes(desde);
+
+            for (long posicion = desde; posicion < adjunto.tamano() && !subida.fin.isDone(); posicion += Adjunto.TAM_TROZO) {
+                String datos = Base64.getEncoder().encodeToString(entrada.readNBytes(Adjunto.TAM_TROZO));
+                peticiones.accept(String.format("%s %s %d %s", CliCmd.TRZ, adjunto.hash(), posicion, datos));
+            }
+        }
+    }
+
+    private static <T> T esperar(CompletableFuture<T> respuesta) throws Exception {
+        try {
+            return respuesta.get(ESPERA_RESPUESTA, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } catch (TimeoutException e) {
+            throw new IOException("El servidor no responde");
+        }
+    }
+
+    /**
+     * Descarga un adjunto. Si el archivo de destino existe, se reemplaza al terminar.
+     * @param adjunto Adjunto a descargar
+     * @param destino Archivo de destino
+     * @return Archivo descargado o un error
+     */
+    public CompletableFuture<Path> descargar(Adjunto adjunto, Path destino) {
+        Descarga descarga;
+
+        try {
+            descarga = new Descarga(adjunto, destino);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (descargas.putIfAbsent(adjunto.hash(), descarga) != null) {
+            descarga.cancelar();
+            return CompletableFuture.failedFuture(new IOException("El adjunto ya se está descargando"));
+        }
+
+        peticiones.accept(String.format("%s %s %d", CliCmd.DES, adjunto.hash(), 0));
+        return descarga.resultado;
+    }
+
+    /**
+     * El servidor indica desde dónde continuar una subida. Se llama desde el hilo de escucha.
+     * @param hash Hash del adjunto
+     * @param desplazamiento Posición desde la que enviar los trozos
+     */
+    public void recibirSubida(String hash, long desplazamiento) {
+        Subida subida = subidas.get(hash);
+
+        if (subida != null) {
+            subida.inicio.complete(desplazamiento);
+        }
+    }
+
+    /**
+     * Recibe un trozo de una descarga. Se llama desde el hilo de escucha.
+     * @param hash Hash del adjunto
+     * @param desplazamiento Posición del trozo
+     * @param datos Trozo codificado en Base64
+     */
+    public void recibirTrozo(String hash, long desplazamiento, String datos) {
+        Descarga descarga = descargas.get(hash);
+
+        if (descarga == null) {
+            return;
+        }
+
+        try {
+            descarga.escribir(desplazamiento, Base64.getDecoder().decode(datos));
+        } catch (IOException | IllegalArgumentException e) {
+            descargas.remove(hash);
+            descarga.fallar(new IOException("Trozo no válido: " + e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Termina la subida o la descarga de un adjunto. Se llama desde el hilo de escucha.
+     * @param hash Hash del adjunto
+     * @param error Motivo si ha fallado, o {@code null}
+     */
+    public void recibirFin(String hash, String error) {
+        Subida subida = subidas.get(hash);
+
+        if (subida != null) {
+            if (error == null) {
+                // Si el adjunto ya estaba en el servidor, FIN llega sin SUB y no hay nada que enviar
+                subida.inicio.complete(-1L);
+                subida.fin.complete(null);
+            } else {
+                subida.inicio.completeExceptionally(new IOException(error));
+                subida.fin.completeExceptionally(new IOException(error));
+            }
+        }
+
+        Descarga descarga = descargas.remove(hash);
+
+        if (descarga != null) {
+            if (error == null) {
+                descarga.terminar();
+            } else {
+                descarga.fallar(new IOException(error));
+            }
+        }
+    }
+
+    /**
+     * Cancela todas las transferencias en curso. Se llama al desconectarse.
+     */
+    public void cancelar() {
+        IOException desconectado = new IOException("Desconectado del servidor");
+
+        subidas.values().forEach(s -> {
+            s.inicio.completeExceptionally(desconectado);
+            s.fin.completeExceptionally(desconectado);
+        });
+        descargas.values().forEach(d -> d.fallar(desconectado));
+        descargas.clear();
+    }
+
+    private static String hash(Path archivo) throws IOException {
+        MessageDigest resumen = sha256();
+
+        try (InputStream entrada = Files.newInputStream(archivo)) {
+            byte[] bloque = new byte[Adjunto.TAM_TROZO];
+            int n;
+
+            while ((n = entrada.read(bloque)) > 0) {
+                resumen.update(bloque, 0, n);
+            }
+        }
+
+        return HexFormat.of().formatHex(resumen.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Respuestas del servidor que espera el hilo de una subida: la posición desde la que enviar ({@code -1} si no hay
+     * que enviar nada) y el final.
+     */
+    private static final class Subida {
+        private final CompletableFuture<Long> inicio = new CompletableFuture<>();
+        private final CompletableFuture<Void> fin = new CompletableFuture<>();
+    }
+
+    /**
+     * Descarga en curso. Escribe en {@code <destino>.parcial} y lo mueve al destino al terminar.
+     */
+    private final class Descarga {
+        private final Adjunto adjunto;
+        private final Path destino;
+        private final Path parcial;
+        private final FileChannel canal;
+        private final MessageDigest resumen = sha256();
+        private final CompletableFuture<Path> resultado = new CompletableFuture<>();
+        private long recibidos;
+        private long finVentana = (long) Adjunto.TROZOS_POR_DESCARGA * Adjunto.TAM_TROZO;
+
+        private Descarga(Adjunto adjunto, Path destino) throws IOException {
+            this.adjunto = adjunto;
+            this.destino = destino;
+            this.parcial = destino.resolveSibling(destino.getFileName() + ".parcial");
+            this.canal = FileChannel.open(parcial, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private void escribir(long desplazamiento, byte[] trozo) throws IOException {
+            if (desplazamiento != recibidos || recibidos + trozo.length > adjunto.tamano()) {
+                throw new IOException("trozo inesperado en " + desplazamiento);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(trozo);
+
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+
+            resumen.update(trozo);
+            recibidos += trozo.length;
+
+            if (recibidos == finVentana && recibidos < adjunto.tamano()) {
+                finVentana += (long) Adjunto.TROZOS_POR_DESCARGA * Adjunto.TAM_TROZO;
+                peticiones.accept(String.format("%s %s %d", CliCmd.DES, adjunto.hash(), recibidos));
+            }
+        }
+
+        private void terminar() {
+            try {
+                canal.close();
+
+                if (recibidos != adjunto.tamano() || !HexFormat.of().formatHex(resumen.digest()).equals(adjunto.hash())) {
+                    throw new IOException("El contenido descargado no corresponde al adjunto");
+                }
+
+                Files.move(parcial, destino, StandardCopyOption.REPLACE_EXISTING);
+                resultado.complete(destino);
+            } catch (IOException e) {
+                fallar(e);
+            }
+        }
+
+        private void fallar(IOException e) {
+            cancelar();
+            resultado.completeExceptionally(e);
+        }
+
+        private void cancelar() {
+            try {
+                canal.close();
+                Files.deleteIfExists(parcial);
+            } catch (IOException e) {
+                System.err.printf("ERROR al borrar %s%n%s%n", parcial, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,814 @@
+package es.chat.controlador;
+
+import es.chat.cliente.Cliente;
+import es.chat.cliente.EscuchaHilo;
+import es.chat.cliente.HistorialLocal;
+import es.chat.cliente.Transferencias;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.*;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.shape.Circle;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URL;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import es.chat.modelo.Adjunto;
+import es.chat.modelo.Chat;
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.CliCmd;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.util.Configuracion;
+
+/**
+ * Controlador de la vista de cliente. Se encarga de gestionar la interfaz gráfica y la comunicación con el servidor.
+ * Inicia el hilo de escucha de mensajes del servidor y envía mensajes al servidor.
+ * <p>
+ * Los adjuntos se suben y descargan con {@link Transferencias}. Un adjunto subido se envía al chat como un enlace
+ * ({@link Adjunto#enlace()}) y debajo de los mensajes se muestran los últimos adjuntos enlazados en el chat actual.
+ * @see EscuchaHilo
+ * @see Cliente
+ * @see Chat
+ * @see HistorialLocal
+ * @see Transferencias
+ * @see CliCmd
+ * @version 1.0
+ * @author Adrián González
+ */
+public class ClienteController implements Initializable {
+    public static final String ALIAS_GENERAL = "[General]";
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")
+            .withZone(ZoneId.systemDefault());
+    private static final String ORDEN_BUSCAR = "/buscar ";
+    private static final String ORDEN_MAS = "/mas";
+    /**
+     * Cada cuánto se actualiza el aviso de quién está escribiendo y se quitan los caducados.
+     */
+    private static final Duration PERIODO_ESCRIBIENDO = Duration.millis(250);
+    /**
+     * Número de adjuntos del chat actual que se muestran como enlaces.
+     */
+    private static final int MAX_ENLACES = 6;
+
+    /**
+     * Usuario que está escribiendo en un chat (el general o el privado con él).
+     */
+    private record Escribiendo(String chat, String alias) {
+    }
+
+    private Socket socketCliente;
+    private DataOutputStream salida;
+    private List<Chat> chats;
+    /**
+     * Chat abierto en la interfaz. Se inicializa con el chat general.
+     */
+    private Chat chatActual;
+    /**
+     * Token de la última sesión iniciada, para reanudarla al volver a conectarse. Es {@code null} si no hay sesión que reanudar.
+     */
+    private String tokenSesion;
+    /**
+     * Alias de la última sesión iniciada. Solo se reanuda la sesión si se vuelve a conectar con el mismo alias.
+     */
+    private String aliasSesion;
+    /**
+     * Último número de secuencia recibido del servidor en cada carril, por posición en {@link Carril}. Se envían al
+     * reanudar la sesión para recibir solo lo que se ha perdido.
+     */
+    private final long[] ultimasSecuencias = new long[Carril.values().length];
+    /**
+     * Indica que se ha pedido reanudar la sesión y se espera la respuesta del servidor.
+     */
+    private boolean reanudando;
+    /**
+     * Última consulta de búsqueda enviada, página mostrada y mensajes mostrados hasta ahora, para pedir la siguiente con {@code /mas}.
+     */
+    private String ultimaConsulta;
+    private int paginaBusqueda;
+    private int resultadosMostrados;
+    /**
+     * Ventana en la que el servidor agrupa los avisos de que se está escribiendo. El cliente los repite cada media
+     * ventana ({@link #intervaloEscribiendo}), así que el servidor reenvía al menos uno cada ventana y media aunque
+     * alguno llegue antes de que termine la suya, y un aviso recibido caduca tras dos ventanas sin otro.
+     */
+    private final long ventanaEscribiendo = Configuracion.ventanaEscribiendo();
+    private final long intervaloEscribiendo = Math.max(1, ventanaEscribiendo / 2);
+    /**
+     * Avisos de que otros usuarios escriben, con el instante en el que caducan. Lo rellena el hilo de escucha sin pasar
+     * por el hilo de la interfaz; la interfaz lo lee y lo limpia periódicamente.
+     */
+    private final Map<Escribiendo, Long> escribiendo = new ConcurrentHashMap<>();
+    private long ultimoAvisoEscribiendo;
+    private Chat chatUltimoAviso;
+    /**
+     * Historial en disco de los chats del usuario conectado. Se abre al iniciar una sesión nueva y sigue abierto al
+     * desconectarse, para seguir usándolo si se reanuda la sesión.
+     */
+    private HistorialLocal historialLocal;
+    /**
+     * Subidas y descargas de adjuntos de la conexión actual.
+     */
+    private Transferencias transferencias;
+    /**
+     * Bloqueo del flujo de salida. Es equitativo para que una petición que espera pase antes que el siguiente trozo
+     * del hilo de una subida, que vuelve a pedirlo nada más soltarlo.
+     */
+    private final ReentrantLock escritura = new ReentrantLock(true);
+
+    @FXML
+    private TextField aliasIntroducido;
+
+    @FXML
+    private Label mensajeEstado;
+
+    @FXML
+    private Circle estado;
+
+    @FXML
+    private Button botConexion;
+
+    @FXML
+    private Label labelChatActual;
+
+    @FXML
+    private ListView<Chat> chatsListView;
+
+    @FXML
+    private Label labelEscribiendo;
+
+    @FXML
+    private TextArea mensajes;
+
+    @FXML
+    private FlowPane adjuntos;
+
+    @FXML
+    private TextField mensajeIntroducido;
+
+    @FXML
+    private HBox chat;
+
+    /**
+     * Inicializa la vista de cliente. Oculta el chat, añade un listener al click de la lista de usuarios y otro al
+     * escribir un mensaje, e inicia la actualización periódica de quién está escribiendo.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle resourceBundle) {
+        chat.setVisible(false);
+        chatsListView.setOnMouseClicked(event -> onUsuarioClick(chatsListView.getSelectionModel().getSelectedItem()));
+        mensajeIntroducido.setOnKeyTyped(event -> avisarEscribiendo());
+
+        Timeline actualizacionEscribiendo = new Timeline(new KeyFrame(PERIODO_ESCRIBIENDO, event -> actualizarEscribiendo()));
+        actualizacionEscribiendo.setCycleCount(Animation.INDEFINITE);
+        actualizacionEscribiendo.play();
+    }
+
+    /**
+     * Inicia la conexión con el servidor y envía un mensaje al servidor para conectarse con un alias.
+     * Si ya hubo una sesión con el mismo alias, pide reanudarla para recibir solo los mensajes perdidos.
+     */
+    @FXML
+    private void onConectarClick() {
+        if (!iniciarConexion()) {
+            return;
+        }
+
+        reanudando = tokenSesion != null && aliasIntroducido.getText().equals(aliasSesion);
+
+        if (reanudando) {
+            StringBuilder peticion = new StringBuilder(String.format("%s %s", CliCmd.REA, tokenSesion));
+
+            for (Carril carril : Carril.values()) {
+                if (carril.isNumerado()) {
+                    peticion.append(' ').append(ultimasSecuencias[carril.ordinal()]);
+                }
+            }
+
+            peticionAlServidor(peticion.toString());
+        } else {
+            peticionAlServidor(String.format("%s %s", CliCmd.CON, aliasIntroducido.getText()));
+        }
+    }
+
+    /**
+     * Inicia la conexión con el servidor y el hilo de escucha de mensajes del servidor.
+     * Muestra un mensaje de error si no se puede conectar con el servidor.
+     * @see EscuchaHilo
+     * @see Cliente
+     */
+    private boolean iniciarConexion() {
+        try {
+            socketCliente = new Socket(Configuracion.host(), Configuracion.puerto());
+            DataInputStream entrada = new DataInputStream(socketCliente.getInputStream());
+            salida = new DataOutputStream(socketCliente.getOutputStream());
+            transferencias = new Transferencias(this::peticionAlServidor);
+            Cliente.hiloEscucha = new Thread(new EscuchaHilo(entrada, this));
+            Cliente.hiloEscucha.start();
+            return true;
+        } catch (IOException e) {
+            mensajeEstado.setText("Error al conectar con el servidor");
+            return false;
+        }
+    }
+
+    /**
+     * Cambia el estado de la conexión y muestra un mensaje de error en la interfaz gráfica.
+     * Si no se ha podido reanudar la sesión, se inicia una nueva con el mismo alias.
+     * @param mensaje Mensaje a mostrar en la interfaz gráfica.
+     */
+    public void recibirNOK(String mensaje) {
+        if (reanudando) {
+            reanudando = false;
+            tokenSesion = null;
+            peticionAlServidor(String.format("%s %s", CliCmd.CON, aliasIntroducido.getText()));
+            return;
+        }
+
+        cambiarEstado(ServCmd.NOK, mensaje);
+    }
+
+    /**
+     * Cambia el estado de la conexión y muestra un mensaje de éxito en la interfaz gráfica. Guarda el token de sesión.
+     * Si es una sesión nueva, inicializa la lista de chats y el chat actual y pide la lista de usuarios. Si se ha
+     * reanudado, se conservan los chats y el servidor envía a continuación solo los mensajes y cambios de usuarios perdidos.
+     * @param token Token de sesión.
+     * @param secuencia Último número de secuencia asignado por el servidor.
+     * @param mensaje Mensaje a mostrar en la interfaz gráfica.
+     */
+    public void recibirOK(String token, long secuencia, String mensaje) {
+        boolean sesionReanudada = reanudando;
+
+        reanudando = false;
+        tokenSesion = token;
+        aliasSesion = aliasIntroducido.getText();
+
+        if (!sesionReanudada) {
+            iniciarInterfaz();
+            Arrays.fill(ultimasSecuencias, secuencia);
+        }
+
+        cambiarEstado(ServCmd.OK, mensaje);
+
+        if (!sesionReanudada) {
+            peticionAlServidor(CliCmd.LUS.name());
+        }
+    }
+
+    /**
+     * Abre el historial en disco del usuario y crea el chat general con su historial.
+     */
+    private void iniciarInterfaz() {
+        cerrarHistorial();
+
+        try {
+            historialLocal = new HistorialLocal(aliasIntroducido.getText());
+        } catch (IOException e) {
+            System.err.printf("ERROR al abrir el historial local%n%s%n", e.getMessage());
+        }
+
+        chats = new ArrayList<>();
+        chatActual = nuevoChat(ALIAS_GENERAL);
+        chatActual.resetMensajesNoLeidos();
+        chatsListView.getItems().setAll(chats);
+        labelChatActual.setText("Chat general");
+        mostrarChatActual();
+    }
+
+    /**
+     * Crea un chat, lo añade a la lista de chats y carga su historial en disco, si lo hay.
+     * @param alias Alias del chat.
+     * @return Chat creado.
+     */
+    private Chat nuevoChat(String alias) {
+        Chat chat = new Chat(alias);
+
+        if (historialLocal != null) {
+            historialLocal.restaurar(chat);
+        }
+
+        chats.add(chat);
+        return chat;
+    }
+
+    /**
+     * Añade un mensaje al chat y a su historial en disco.
+     * @param chat Chat al que se añade el mensaje.
+     * @param mensaje Mensaje a añadir.
+     */
+    private void anotar(Chat chat, String mensaje) {
+        chat.addMensaje(mensaje);
+
+        if (historialLocal != null) {
+            historialLocal.anotar(chat, mensaje);
+        }
+    }
+
+    /**
+     * Guarda los mensajes no leídos y cierra el historial en disco. Se llama al iniciar una sesión nueva y al cerrar
+     * la ventana.
+     */
+    public void cerrarHistorial() {
+        if (historialLocal != null) {
+            historialLocal.guardarNoLeidos(chats);
+            historialLocal.close();
+            historialLocal = null;
+        }
+    }
+
+    /**
+     * Cambia el estado de la conexión y muestra el mensaje correspondiente en la interfaz gráfica.
+     * @param comando Comando recibido del servidor.
+     * @param mensaje Mensaje a mostrar en la interfaz gráfica.
+     */
+    private void cambiarEstado(ServCmd comando, String mensaje) {
+        boolean conexionEstablecida = comando == ServCmd.OK;
+
+        chat.setVisible(conexionEstablecida);
+        aliasIntroducido.setEditable(!conexionEstablecida);
+        estado.setStyle(conexionEstablecida ? "-fx-fill: green;" : "-fx-fill: red;");
+        mensajeEstado.setText(mensaje);
+        mensajeEstado.setStyle(conexionEstablecida ? "-fx-text-fill: green;" : "-fx-text-fill: red;");
+        botConexion.setText(conexionEstablecida ? "Desconectar" : "Conectar");
+        botConexion.setOnAction(event -> {
+            if (conexionEstablecida) {
+                onDesconectarClick();
+            } else {
+                onConectarClick();
+            }
+        });
+    }
+
+    /**
+     * Recibe una lista de usuarios separados por comas y los muestra en la lista de usuarios.
+     * Los usuarios que ya estaban en la lista (porque ha llegado antes su entrada en un {@code PRE}) no se repiten.
+     * @param listaSeparadaPorComas Lista de usuarios separados por comas.
+     */
+    public void recibirUsuarios(String listaSeparadaPorComas) {
+        aplicarPresencia(Arrays.asList(listaSeparadaPorComas.split(",")), List.of());
+    }
+
+    /**
+     * Guarda el número de secuencia de una respuesta recibida si es el mayor de su carril hasta ahora.
+     * @param comando Comando de la respuesta, que indica su carril.
+     * @param secuencia Número de secuencia de la respuesta.
+     */
+    private void registrarSecuencia(ServCmd comando, long secuencia) {
+        int carril = Carril.de(comando).ordinal();
+        ultimasSecuencias[carril] = Math.max(ultimasSecuencias[carril], secuencia);
+    }
+
+    /**
+     * Recibe las entradas y salidas de usuarios que el servidor ha agrupado en una notificación.
+     * @param secuencia Número de secuencia de la notificación.
+     * @param conectados Usuarios que se han conectado.
+     * @param desconectados Usuarios que se han desconectado.
+     */
+    public void recibirPresencia(long secuencia, List<String> conectados, List<String> desconectados) {
+        registrarSecuencia(ServCmd.PRE, secuencia);
+        aplicarPresencia(conectados, desconectados);
+    }
+
+    /**
+     * Añade y quita usuarios del ListView de usuarios con una sola actualización. A los usuarios desconectados se les
+     * quita del ListView, pero no de la lista de chats (en caso de que el usuario vuelva a conectarse, se podrán ver los
+     * mensajes anteriores, pero solo el usuario actual). Se añade un mensaje de conexión o desconexión a su chat y al
+     * general. Se ignoran el propio usuario y los cambios que ya estaban aplicados.
+     * @param conectados Usuarios que se han conectado.
+     * @param desconectados Usuarios que se han desconectado.
+     */
+    private void aplicarPresencia(List<String> conectados, List<String> desconectados) {
+        Chat chatGeneral = chats.getFirst(); // El chat general siempre está en la primera posición
+        Map<String, Chat> chatsPorAlias = new HashMap<>();
+        Set<Chat> enLista = new LinkedHashSet<>(chatsListView.getItems());
+
+        chats.forEach(c -> chatsPorAlias.putIfAbsent(c.getAlias(), c));
+
+        for (String alias : conectados) {
+            if (alias.isEmpty() || alias.equals(aliasIntroducido.getText())) {
+                continue;
+            }
+
+            Chat nuevoChat = chatsPorAlias.computeIfAbsent(alias, this::nuevoChat);
+
+            if (enLista.add(nuevoChat)) {
+                anotar(nuevoChat, String.format("%s se ha conectado.", alias));
+                anotar(chatGeneral, String.format("%s se ha conectado.", alias));
+            }
+        }
+
+        for (String alias : desconectados) {
+            Chat eliminarChat = chatsPorAlias.get(alias);
+
+            if (eliminarChat == null || !enLista.remove(eliminarChat)) {
+                continue;
+            }
+
+            escribiendo.keySet().removeIf(e -> e.alias().equals(alias));
+            anotar(eliminarChat, String.format("%s se ha desconectado.", alias));
+            anotar(chatGeneral, String.format("%s se ha desconectado.", alias));
+
+            // Si el chat actual es el que se ha eliminado, se cambia al chat general
+            if (chatActual.equals(eliminarChat)) {
+                chatActual = chatGeneral;
+                labelChatActual.setText("Chat general");
+            }
+        }
+
+        chatsListView.getItems().setAll(enLista);
+
+        if (chatActual.equals(chatGeneral)) {
+            mostrarChatActual();
+        }
+    }
+
+    /**
+     * Envía un mensaje al servidor para desconectarse, cierra la conexión con el servidor y cancela las transferencias.
+     * Guarda los mensajes no leídos, pero conserva los chats y deja abierto el historial en disco: si se reanuda la
+     * sesión se siguen usando, y si se inicia una nueva se cierra al abrir el del nuevo usuario.
+     */
+    @FXML
+    private void onDesconectarClick() {
+        peticionAlServidor(CliCmd.EXI.name());
+
+        try {
+            Cliente.hiloEscucha.interrupt();
+            socketCliente.close();
+        } catch (IOException e) {
+            System.out.println("IOException: " + e.getMessage());
+        }
+
+        if (historialLocal != null) {
+            historialLocal.guardarNoLeidos(chats);
+        }
+
+        escribiendo.clear();
+        transferencias.cancelar();
+        cambiarEstado(ServCmd.NOK, "Desconectado");
+    }
+
+    /**
+     * Envía un mensaje al servidor con el mensaje introducido en la interfaz gráfica. Limpia el campo de texto.
+     * Si el texto empieza por {@code /buscar}, busca en los mensajes anteriores, y {@code /mas} pide la siguiente
+     * página de la última búsqueda.
+     */
+    @FXML
+    private void onEnviarClick() {
+        if (mensajeIntroducido.getText().isBlank()) {
+            return;
+        }
+
+        if (mensajeIntroducido.getText().startsWith(ORDEN_BUSCAR)) {
+            buscar(mensajeIntroducido.getText().substring(ORDEN_BUSCAR.length()).trim(), 0);
+            mensajeIntroducido.setText("");
+            return;
+        }
+
+        if (mensajeIntroducido.getText().equals(ORDEN_MAS) && ultimaConsulta != null) {
+            buscar(ultimaConsulta, paginaBusqueda + 1);
+            mensajeIntroducido.setText("");
+            return;
+        }
+
+        enviarTexto(mensajeIntroducido.getText());
+        mensajeIntroducido.setText("");
+    }
+
+    /**
+     * Envía un mensaje al chat actual: general o privado.
+     * @param texto Texto del mensaje.
+     */
+    private void enviarTexto(String texto) {
+        if (chatActual.getAlias().equals(ALIAS_GENERAL)) {
+            peticionAlServidor(String.format("%s %s", CliCmd.MSG, texto));
+        } else {
+            peticionAlServidor(String.format("%s %s %s", CliCmd.PRV, chatActual.getAlias(), texto));
+        }
+    }
+
+    /**
+     * Elige un archivo y lo sube en segundo plano. Al terminar, envía el enlace al chat en el que se adjuntó,
+     * volviendo a él si se ha cambiado de chat mientras tanto.
+     */
+    @FXML
+    private void onAdjuntarClick() {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Adjuntar archivo");
+        File archivo = selector.showOpenDialog(mensajes.getScene().getWindow());
+
+        if (archivo == null) {
+            return;
+        }
+
+        Chat chatDestino = chatActual;
+
+        transferencias.subir(archivo.toPath()).whenComplete((adjunto, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                mostrarErrorAdjunto(String.format("No se ha podido subir %s", archivo.getName()), error);
+                return;
+            }
+
+            if (!chatActual.equals(chatDestino)) {
+                onUsuarioClick(chatDestino);
+            }
+
+            enviarTexto(adjunto.enlace());
+        }));
+    }
+
+    /**
+     * Elige dónde guardar un adjunto y lo descarga en segundo plano.
+     * @param adjunto Adjunto a descargar.
+     */
+    private void descargar(Adjunto adjunto) {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Guardar adjunto");
+        selector.setInitialFileName(adjunto.nombre());
+        File destino = selector.showSaveDialog(mensajes.getScene().getWindow());
+
+        if (destino == null) {
+            return;
+        }
+
+        transferencias.descargar(adjunto, destino.toPath()).whenComplete((ruta, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                mostrarErrorAdjunto(String.format("No se ha podido descargar %s", adjunto.nombre()), error);
+                return;
+            }
+
+            Alert alerta = new Alert(Alert.AlertType.INFORMATION);
+            alerta.setTitle("Adjuntos");
+            alerta.setHeaderText(String.format("%s descargado", adjunto.nombre()));
+            alerta.setContentText(ruta.toString());
+            alerta.show();
+        }));
+    }
+
+    private void mostrarErrorAdjunto(String cabecera, Throwable error) {
+        Alert alerta = new Alert(Alert.AlertType.ERROR);
+        alerta.setTitle("Adjuntos");
+        alerta.setHeaderText(cabecera);
+        alerta.setContentText(error.getMessage());
+        alerta.show();
+    }
+
+    /**
+     * Muestra los mensajes del chat actual y enlaces a sus últimos {@link #MAX_ENLACES} adjuntos.
+     */
+    private void mostrarChatActual() {
+        mensajes.setText(chatActual.getMensajes());
+
+        List<Adjunto> enlazados = Adjunto.buscar(chatActual.getMensajes());
+        adjuntos.getChildren().setAll(enlazados.stream()
+                .skip(Math.max(0, enlazados.size() - MAX_ENLACES))
+                .map(adjunto -> {
+                    Hyperlink enlace = new Hyperlink(adjunto.toString());
+                    enlace.setStyle("-fx-text-fill: #c8cde6;");
+                    enlace.setOnAction(event -> descargar(adjunto));
+                    return enlace;
+                })
+                .toList());
+    }
+
+    /**
+     * @return Subidas y descargas de la conexión actual. El hilo de escucha les entrega las respuestas del servidor.
+     */
+    public Transferencias getTransferencias() {
+        return transferencias;
+    }
+
+    /**
+     * Recibe un mensaje general y lo muestra en la interfaz gráfica.
+     * @param secuencia Número de secuencia del mensaje.
+     * @param alias Alias del usuario que envía el mensaje.
+     * @param mensaje Mensaje recibido.
+     */
+    public void recibirGeneral(long secuencia, String alias, String mensaje) {
+        registrarSecuencia(ServCmd.CHT, secuencia);
+        escribiendo.remove(new Escribiendo(ALIAS_GENERAL, alias));
+
+        Chat chatGeneral = chats.getFirst(); // El chat general siempre está en la primera posición
+
+        anotar(chatGeneral, String.format("%s: %s", alias, mensaje));
+        chatGeneral.incrementarMensajesNoLeidos();
+
+        if (chatActual.equals(chats.getFirst())) {
+            mostrarChatActual();
+            chatActual.resetMensajesNoLeidos();
+        }
+
+        chatsListView.refresh();
+    }
+
+    /**
+     * Recibe un mensaje privado y lo muestra en la interfaz gráfica. Se guarda en el chat con el otro usuario: el
+     * emisor si lo envía otro o el destinatario si es uno propio que vuelve del servidor, aunque entre tanto se haya
+     * cambiado de chat o se esté reanudando la sesión. Si el otro usuario ya no está conectado, el mensaje solo se
+     * guarda en el historial en disco de su chat.
+     * @param secuencia Número de secuencia del mensaje.
+     * @param emisor Alias del usuario que envía el mensaje.
+     * @param destinatario Alias del usuario que lo recibe.
+     * @param mensaje Mensaje recibido.
+     */
+    public void recibirPrivado(long secuencia, String emisor, String destinatario, String mensaje) {
+        registrarSecuencia(ServCmd.PRV, secuencia);
+
+        boolean propio = emisor.equals(aliasSesion);
+        String aliasChat = propio ? destinatario : emisor;
+        String linea = String.format("%s: %s", emisor, mensaje);
+
+        if (!propio) {
+            escribiendo.remove(new Escribiendo(emisor, emisor));
+        }
+
+        Optional<Chat> chatPrivado = chats.stream()
+                .filter(u -> u.getAlias().equals(aliasChat))
+                .findFirst();
+
+        if (chatPrivado.isEmpty()) {
+            anotar(new Chat(aliasChat), linea);
+            return;
+        }
+
+        Chat chatPrivadoEncontrado = chatPrivado.get();
+
+        anotar(chatPrivadoEncontrado, linea);
+
+        if (!propio) {
+            chatPrivadoEncontrado.incrementarMensajesNoLeidos();
+        }
+
+        if (chatPrivadoEncontrado.equals(chatActual)) {
+            mostrarChatActual();
+            chatActual.resetMensajesNoLeidos();
+        }
+
+        chatsListView.refresh();
+    }
+
+    /**
+     * Muestra el chat con un usuario al hacer click en la lista de usuarios.
+     * @param chatSeleccionado Chat seleccionado en la lista de usuarios.
+     */
+    private void onUsuarioClick(Chat chatSeleccionado) {
+        if (chatSeleccionado == null) {
+            return;
+        }
+
+        chatActual = chatSeleccionado;
+
+        if (chatActual.equals(chats.getFirst())) {
+            labelChatActual.setText("Chat general");
+        } else {
+            labelChatActual.setText(String.format("Chat privado con %s", chatActual.getAlias()));
+        }
+
+        chatActual.resetMensajesNoLeidos();
+        chatsListView.refresh();
+        mostrarChatActual();
+    }
+
+    /**
+     * Avisa al servidor de que se está escribiendo en el chat actual. Mientras se sigue escribiendo en el mismo chat
+     * se avisa como mucho una vez cada {@link #intervaloEscribiendo} ms; las órdenes que empiezan por {@code /} no avisan.
+     */
+    private void avisarEscribiendo() {
+        long ahora = System.currentTimeMillis();
+
+        if (!chat.isVisible() || mensajeIntroducido.getText().startsWith("/")
+                || (chatActual.equals(chatUltimoAviso) && ahora - ultimoAvisoEscribiendo < intervaloEscribiendo)) {
+            return;
+        }
+
+        ultimoAvisoEscribiendo = ahora;
+        chatUltimoAviso = chatActual;
+
+        if (chatActual.getAlias().equals(ALIAS_GENERAL)) {
+            peticionAlServidor(CliCmd.ESC.name());
+        } else {
+            peticionAlServidor(String.format("%s %s", CliCmd.ESC, chatActual.getAlias()));
+        }
+    }
+
+    /**
+     * Guarda que un usuario está escribiendo. Se llama desde el hilo de escucha: no toca la interfaz, que lo muestra
+     * en su siguiente actualización periódica.
+     * @param alias Alias del usuario que escribe.
+     * @param general {@code true} si escribe en el chat general, {@code false} si es en el privado.
+     */
+    public void recibirEscribiendo(String alias, boolean general) {
+        escribiendo.put(new Escribiendo(general ? ALIAS_GENERAL : alias, alias), System.currentTimeMillis() + 2 * ventanaEscribiendo);
+    }
+
+    /**
+     * Quita los avisos caducados y muestra quién está escribiendo en el chat actual. Se ejecuta periódicamente
+     * en el hilo de la interfaz.
+     */
+    private void actualizarEscribiendo() {
+        long ahora = System.currentTimeMillis();
+        escribiendo.values().removeIf(caducidad -> caducidad < ahora);
+
+        List<String> aliases = chatActual == null ? List.of() : escribiendo.keySet().stream()
+                .filter(e -> e.chat().equals(chatActual.getAlias()))
+                .map(Escribiendo::alias)
+                .sorted()
+                .toList();
+
+        String texto = switch (aliases.size()) {
+            case 0 -> "";
+            case 1 -> String.format("%s está escribiendo...", aliases.getFirst());
+            case 2, 3 -> String.format("%s están escribiendo...", String.join(", ", aliases));
+            default -> "Varios usuarios están escribiendo...";
+        };
+
+        if (!texto.equals(labelEscribiendo.getText())) {
+            labelEscribiendo.setText(texto);
+        }
+    }
+
+    /**
+     * Pide al servidor una página de resultados de búsqueda.
+     * @param consulta Palabras a buscar y filtros ({@code de:alias}, {@code desde:AAAA-MM-DD}, {@code hasta:AAAA-MM-DD}).
+     * @param pagina Página de resultados, empezando en 0.
+     */
+    private void buscar(String consulta, int pagina) {
+        if (consulta.isBlank()) {
+            return;
+        }
+
+        ultimaConsulta = consulta;
+        peticionAlServidor(String.format("%s %d %s", CliCmd.BUS, pagina, consulta));
+    }
+
+    /**
+     * Muestra una página de resultados de búsqueda en una ventana.
+     * @param pagina Página de resultados, empezando en 0.
+     * @param total Número de mensajes encontrados.
+     * @param resultados Mensajes encontrados: número de secuencia, instante, emisor, destinatario ({@code *} si es general) y texto.
+     */
+    public void recibirBusqueda(int pagina, int total, List<String> resultados) {
+        StringBuilder contenido = new StringBuilder();
+
+        paginaBusqueda = pagina;
+        resultadosMostrados = (pagina == 0 ? 0 : resultadosMostrados) + resultados.size();
+
+        for (String resultado : resultados) {
+            String[] splitResultado = resultado.split(" ", 5);
+            String fecha = FORMATO_FECHA.format(Instant.ofEpochMilli(Long.parseLong(splitResultado[1])));
+
+            if (splitResultado[3].equals("*")) {
+                contenido.append(String.format("[%s] %s: %s%n", fecha, splitResultado[2], splitResultado[4]));
+            } else {
+                contenido.append(String.format("[%s] %s → %s: %s%n", fecha, splitResultado[2], splitResultado[3], splitResultado[4]));
+            }
+        }
+
+        if (resultados.isEmpty()) {
+            contenido.append("No se han encontrado mensajes.");
+        } else if (resultadosMostrados < total) {
+            contenido.append(String.format("%nEscribe %s para ver más.", ORDEN_MAS));
+        }
+
+        Alert alerta = new Alert(Alert.AlertType.INFORMATION);
+        alerta.setTitle("Búsqueda");
+        alerta.setHeaderText(String.format("«%s»: %d mensajes", ultimaConsulta, total));
+        alerta.setContentText(contenido.toString());
+        alerta.show();
+    }
+
+    /**
+     * Envía una petición al servidor. Si hay un error al enviar la petición, muestra un mensaje de error en la consola.
+     * Se llama también desde los hilos de las subidas y desde el de escucha, así que cada petición se escribe entera
+     * con el flujo de salida bloqueado, por orden de llegada.
+     * @param peticion Petición a enviar al servidor.
+     */
+    private void peticionAlServidor(String peticion) {
+        DataOutputStream flujo = salida;
+
+        escritura.lock();
+
+        try {
+            flujo.writeUTF(peticion);
+        } catch (IOException e) {
+            System.err.printf("ERROR. %s%n%s%n", peticion, e.getMessage());
+        } finally {
+            escritura.unlock();
+        }
+    }
+}
@@ -1,4 +1,6 @@
 module es.chat.cliente {
+    requires es.chat.protocolo;
+
     requires javafx.controls;
     requires javafx.fxml;
 
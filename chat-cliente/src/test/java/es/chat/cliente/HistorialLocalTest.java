@@ -0,0 +1,161 @@
+package es.chat.cliente;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.chat.modelo.Chat;
+
+/**
+ * Comprueba que {@link HistorialLocal} restaura solo la cola del historial de un chat, empezando en una línea
+ * completa, aunque el fichero pase de 2 GB, y que sigue guardando el historial al reanudar la sesión.
+ * @version 1.0
+ * @author Adrián González
+ */
+class HistorialLocalTest {
+    private static final String ALIAS = "Ana";
+    private static final String CHAT = "Juan";
+    /**
+     * Tamaño del historial grande, más de lo que cabe en un {@code int}. El fichero es disperso: solo se escriben
+     * los últimos {@link #TAM_ESCRITO} bytes.
+     */
+    private static final long TAM_GRANDE = 3L << 30;
+    private static final int TAM_ESCRITO = 4 * HistorialLocal.TAM_COLA;
+
+    @TempDir
+    Path directorio;
+
+    private HistorialLocal historial;
+
+    @BeforeEach
+    void abrir() throws IOException {
+        System.setProperty("chat.cliente.historial", directorio.toString());
+        historial = new HistorialLocal(ALIAS);
+    }
+
+    @AfterEach
+    void cerrar() {
+        historial.close();
+        System.clearProperty("chat.cliente.historial");
+    }
+
+    @Test
+    void restauraSoloLaColaDeUnHistorialGrande() throws IOException {
+        int lineas = escribirHistorial(TAM_GRANDE);
+        historial.anotar(new Chat(CHAT), "Juan: último mensaje");
+
+        Chat chat = new Chat(CHAT);
+        historial.restaurar(chat);
+
+        List<String> restauradas = chat.getMensajes().lines().toList();
+        String primera = restauradas.get(0);
+        int numeroPrimera = Integer.parseInt(primera.substring(primera.indexOf('#') + 1, primera.indexOf(' ', primera.indexOf('#'))));
+
+        assertTrue(chat.getMensajes().getBytes(StandardCharsets.UTF_8).length <= HistorialLocal.TAM_COLA,
+            "Se restauran como mucho " + HistorialLocal.TAM_COLA + " bytes");
+        assertEquals(linea(numeroPrimera), primera, "La primera línea restaurada está completa");
+        assertEquals(lineas - numeroPrimera + 1, restauradas.size(), "Se restauran todas las líneas desde la primera");
+        assertEquals(linea(lineas - 1), restauradas.get(restauradas.size() - 2));
+        assertEquals("Juan: último mensaje", restauradas.get(restauradas.size() - 1));
+    }
+
+    @Test
+    void restauraEnteroUnHistorialPequeno() {
+        Chat chat = new Chat(CHAT);
+
+        for (int i = 0; i < 10; i++) {
+            historial.anotar(chat, linea(i));
+        }
+
+        historial.anotar(chat, "con\nsalto de línea");
+        historial.restaurar(chat);
+
+        List<String> restauradas = chat.getMensajes().lines().toList();
+
+        assertEquals(11, restauradas.size());
+        assertEquals(linea(0), restauradas.get(0));
+        assertEquals("con salto de línea", restauradas.get(10));
+    }
+
+    @Test
+    void guardaLosMensajesNoLeidos() throws IOException {
+        Chat chat = new Chat(CHAT);
+        chat.setNumMensajesNoLeidos(7);
+        historial.guardarNoLeidos(List.of(chat));
+        historial.close();
+
+        historial = new HistorialLocal(ALIAS);
+        Chat restaurado = new Chat(CHAT);
+        historial.restaurar(restaurado);
+
+        assertEquals(7, restaurado.getNumMensajesNoLeidos());
+    }
+
+    /**
+     * Al desconectarse el controlador solo guarda los no leídos, así que al reanudar la sesión el mismo historial sigue
+     * anotando los mensajes y guarda los no leídos al cerrar la ventana.
+     */
+    @Test
+    void sigueGuardandoTrasDesconectarseYReanudar() throws IOException {
+        Chat chat = new Chat(CHAT);
+        historial.anotar(chat, "Juan: antes de desconectarse");
+        chat.setNumMensajesNoLeidos(1);
+        historial.guardarNoLeidos(List.of(chat));
+
+        historial.anotar(chat, "Juan: después de reanudar");
+        chat.setNumMensajesNoLeidos(2);
+        historial.guardarNoLeidos(List.of(chat));
+        historial.close();
+
+        historial = new HistorialLocal(ALIAS);
+        Chat restaurado = new Chat(CHAT);
+        historial.restaurar(restaurado);
+
+        assertEquals(List.of("Juan: antes de desconectarse", "Juan: después de reanudar"), restaurado.getMensajes().lines().toList());
+        assertEquals(2, restaurado.getNumMensajesNoLeidos());
+    }
+
+    /**
+     * Escribe directamente el fichero del chat, disperso, con líneas numeradas desde {@link #TAM_ESCRITO} bytes antes
+     * del final hasta llegar al tamaño. Lo anterior se queda sin escribir.
+     * @return Número de líneas escritas
+     */
+    private int escribirHistorial(long tamano) throws IOException {
+        int lineas = 0;
+        Path fichero = directorio.resolve(ALIAS).resolve(CHAT + ".log");
+
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            canal.position(tamano - TAM_ESCRITO);
+
+            while (canal.position() < tamano) {
+                ByteBuffer linea = ByteBuffer.wrap((linea(lineas++) + "\n").getBytes(StandardCharsets.UTF_8));
+
+                while (linea.hasRemaining()) {
+                    canal.write(linea);
+                }
+            }
+        }
+
+        return lineas;
+    }
+
+    /**
+     * Líneas de longitud variable y con caracteres de varios bytes, para que la cola corte una por la mitad.
+     */
+    private static String linea(int numero) {
+        return String.format("Juan: mensaje #%d con acentos: canción, €uro y ñandú%s", numero, ".".repeat(numero % 37));
+    }
+}
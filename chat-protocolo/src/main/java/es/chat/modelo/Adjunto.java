@@ -0,0 +1,76 @@
+package es.chat.modelo;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Archivo adjunto a un mensaje. El servidor lo guarda por el SHA-256 de su contenido, así que el mismo archivo
+ * solo se sube una vez. En los mensajes se envía como un enlace de texto, p. ej:
+ * {@code adj://9f86...0f08/1024/informe.pdf}, que el cliente muestra para descargarlo.
+ * <p>
+ * El contenido viaja en trozos de {@link #TAM_TROZO} bytes codificados en Base64 para que quepan en una trama de
+ * {@code writeUTF}. Como el tamaño de un trozo es múltiplo de 3, cada trozo se codifica sin relleno y la
+ * concatenación de los trozos codificados es el archivo entero codificado.
+ * @see es.chat.modelo.comando.CliCmd
+ * @see es.chat.modelo.comando.ServCmd
+ * @version 1.0
+ * @author Adrián González
+ */
+public record Adjunto(String hash, long tamano, String nombre) {
+    public static final String PREFIJO = "adj://";
+    /**
+     * Bytes de cada trozo, múltiplo de 3. Codificado en Base64 ocupa {@code TAM_TROZO / 3 * 4} caracteres (16 KB).
+     * Es pequeño para que un mensaje que se envía por la misma conexión no espere mucho detrás de un trozo.
+     */
+    public static final int TAM_TROZO = 12 * 1024;
+    /**
+     * Trozos que envía el servidor por cada petición de descarga antes de esperar la siguiente.
+     */
+    public static final int TROZOS_POR_DESCARGA = 12;
+    private static final Pattern ENLACE = Pattern.compile(Pattern.quote(PREFIJO) + "([0-9a-f]{64})/([0-9]{1,12})/(\\S+)");
+
+    /**
+     * @return Enlace al adjunto para incluirlo en un mensaje
+     */
+    public String enlace() {
+        return String.format("%s%s/%d/%s", PREFIJO, hash, tamano, URLEncoder.encode(nombre, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Busca los enlaces a adjuntos de un texto.
+     * @param texto Texto con mensajes
+     * @return Adjuntos enlazados, en el orden en el que aparecen
+     */
+    public static List<Adjunto> buscar(String texto) {
+        List<Adjunto> adjuntos = new ArrayList<>();
+        Matcher m = ENLACE.matcher(texto);
+
+        while (m.find()) {
+            try {
+                adjuntos.add(new Adjunto(m.group(1), Long.parseLong(m.group(2)), URLDecoder.decode(m.group(3), StandardCharsets.UTF_8)));
+            } catch (IllegalArgumentException e) {
+                // Enlace mal formado escrito a mano: se ignora
+            }
+        }
+
+        return adjuntos;
+    }
+
+    /**
+     * @param desplazamiento Posición en el archivo, múltiplo de {@link #TAM_TROZO}
+     * @return Posición correspondiente en el archivo codificado en Base64
+     */
+    public static long posicionCodificada(long desplazamiento) {
+        return desplazamiento / 3 * 4;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d KB)", nombre, (tamano + 1023) / 1024);
+    }
+}
@@ -30,10 +30,22 @@ public class Chat {
         numMensajesNoLeidos = 0;
     }
 
+    public int getNumMensajesNoLeidos() {
+        return numMensajesNoLeidos;
+    }
+
+    public void setNumMensajesNoLeidos(int numMensajesNoLeidos) {
+        this.numMensajesNoLeidos = numMensajesNoLeidos;
+    }
+
     public String getMensajes() {
         return mensajes;
     }
 
+    public void setMensajes(String mensajes) {
+        this.mensajes = mensajes;
+    }
+
     public void addMensaje(String mensaje) {
         mensajes += String.format("%s%n", mensaje);
     }
@@ -0,0 +1,49 @@
+package es.chat.modelo.comando;
+
+/**
+ * Carriles de salida de las respuestas del servidor, de más a menos prioritario. El servidor tiene una cola por
+ * carril en cada conexión y las reparte con pesos, así que una respuesta de control no espera detrás de los
+ * mensajes generales encolados.
+ * <ul>
+ *     <li>{@code CONTROL}: {@code OK}, {@code NOK}, {@code LST}, {@code BUS} y {@code SUB}. No llevan número de secuencia</li>
+ *     <li>{@code PRESENCIA}: {@code PRE} y {@code ESC}</li>
+ *     <li>{@code PRIVADO}: {@code PRV}</li>
+ *     <li>{@code DIFUSION}: {@code CHT}</li>
+ *     <li>{@code ADJUNTO}: {@code TRZ} y {@code FIN}. No llevan número de secuencia y sale como mucho una trama por lote,
+ *     después de las de los demás carriles, para que una descarga no retrase a los mensajes</li>
+ * </ul>
+ * Dentro de un carril se conserva el orden, pero entre carriles no. Por eso el cliente guarda el último número de
+ * secuencia recibido en cada carril numerado y los envía todos al reanudar con {@code REA}, en el orden de la enumeración.
+ * @see ServCmd
+ * @see CliCmd
+ * @version 1.0
+ * @author Adrián González
+ */
+public enum Carril {
+    CONTROL,
+    PRESENCIA,
+    PRIVADO,
+    DIFUSION,
+    ADJUNTO;
+
+    /**
+     * @return {@code true} si las respuestas del carril llevan número de secuencia
+     */
+    public boolean isNumerado() {
+        return this != CONTROL && this != ADJUNTO;
+    }
+
+    /**
+     * @param comando Comando de una respuesta del servidor
+     * @return Carril por el que se envía
+     */
+    public static Carril de(ServCmd comando) {
+        return switch (comando) {
+            case OK, NOK, LST, BUS, SUB -> CONTROL;
+            case PRE, ESC -> PRESENCIA;
+            case PRV -> PRIVADO;
+            case CHT -> DIFUSION;
+            case TRZ, FIN -> ADJUNTO;
+        };
+    }
+}
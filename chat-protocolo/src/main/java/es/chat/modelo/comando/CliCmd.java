@@ -0,0 +1,33 @@
+package es.chat.modelo.comando;
+
+/**
+ * Comandos del cliente
+ * <ul>
+ *     <li>{@code CON}: Entra en el chat, p. ej: {@code CON Juan}</li>
+ *     <li>{@code MSG}: Envía un mensaje general, p. ej: {@code MSG Hola}</li>
+ *     <li>{@code PRV}: Envía un mensaje privado, requiere añadir el alias del destinatario y el mensaje, p. ej: {@code PRV Juan Hola}</li>
+ *     <li>{@code LUS}: Solicita la lista de usuarios, p. ej: {@code LUS}</li>
+ *     <li>{@code EXI}: Abandona el chat, p. ej: {@code EXI}</li>
+ *     <li>{@code BUS}: Busca en los mensajes anteriores, requiere la página (desde 0) y la consulta, que admite los filtros {@code de:alias}, {@code desde:AAAA-MM-DD} y {@code hasta:AAAA-MM-DD}, p. ej: {@code BUS 0 hola de:Juan}</li>
+ *     <li>{@code ESC}: Avisa de que el usuario está escribiendo, en el chat general o en el privado con el alias indicado, p. ej: {@code ESC} o {@code ESC Juan}</li>
+ *     <li>{@code SUB}: Empieza o continúa la subida de un adjunto, requiere el SHA-256 de su contenido en hexadecimal y su tamaño en bytes, p. ej: {@code SUB 9f86...0f08 1024}</li>
+ *     <li>{@code TRZ}: Envía un trozo del adjunto que se está subiendo, requiere el hash, la posición del trozo y su contenido en Base64 (ver {@link es.chat.modelo.Adjunto}), p. ej: {@code TRZ 9f86...0f08 0 SG9sYQ==}</li>
+ *     <li>{@code DES}: Pide descargar un adjunto desde una posición, múltiplo del tamaño de trozo, p. ej: {@code DES 9f86...0f08 0}</li>
+ *     <li>{@code REA}: Reanuda una sesión tras reconectarse, requiere el token de sesión y el último número de secuencia recibido en cada carril numerado (presencia, privado y difusión, ver {@link Carril}), p. ej: {@code REA 3f2a...c1 45 43 42}</li>
+ * </ul>
+ * @version 1.0
+ * @author Adrián González
+ */
+public enum CliCmd {
+    CON,
+    MSG,
+    PRV,
+    LUS,
+    EXI,
+    REA,
+    BUS,
+    ESC,
+    SUB,
+    TRZ,
+    DES
+}
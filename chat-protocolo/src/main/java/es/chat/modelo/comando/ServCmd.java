@@ -0,0 +1,44 @@
+package es.chat.modelo.comando;
+
+/**
+ * Comandos del cliente
+ * <ul>
+ *     <li>{@code OK}: Respuesta de que ha podido entrar al chat, requiere añadir el token de sesión y el último número de secuencia, p. ej: {@code OK 3f2a...c1 41 Inicio correcto}</li>
+ *     <li>{@code NOK}: Respuesta de que no ha podido entrar al chat, p. ej: {@code NOK Alias ya en uso}</li>
+ *     <li>{@code CHT}: Envía un mensaje general, requiere añadir el número de secuencia, el alias del emisor y el mensaje, p. ej: {@code CHT 42 Juan Hola}</li>
+ *     <li>{@code PRV}: Envía un mensaje privado al destinatario y, de vuelta, al emisor. Requiere añadir el número de secuencia,
+ *     el alias del emisor, el del destinatario y el mensaje, p. ej: {@code PRV 43 Juan Ana Hola}</li>
+ *     <li>{@code LST}: Envia la lista de usuarios en formato CSV, p. ej: {@code LST Juan, Alex}</li>
+ *     <li>{@code PRE}: Notifica las llegadas ({@code +}) y salidas ({@code -}) de usuarios agrupadas durante una ventana, requiere
+ *     añadir el número de secuencia y los cambios separados por comas, p. ej: {@code PRE 44 +Juan,+Ana,-Luis}. Cada alias aparece una
+ *     sola vez, con su estado al final de la ventana, y el propio usuario puede aparecer en la lista</li>
+ *     <li>{@code BUS}: Envía una página de resultados de búsqueda: la página y el total en la primera línea y una línea por mensaje
+ *     con su número de secuencia, instante en milisegundos, emisor, destinatario ({@code *} si es general) y texto,
+ *     p. ej: {@code BUS 0 1\n42 1731400000000 Juan * Hola}</li>
+ *     <li>{@code ESC}: Notifica que un usuario está escribiendo, requiere añadir su alias y el chat ({@code *} si es el general
+ *     o el alias del destinatario si es privado), p. ej: {@code ESC Juan *}. No lleva número de secuencia: no se guarda
+ *     para reanudar la sesión y el servidor puede agruparlo o descartarlo</li>
+ *     <li>{@code SUB}: Indica desde qué posición hay que enviar los trozos del adjunto que se está subiendo, p. ej: {@code SUB 9f86...0f08 0}</li>
+ *     <li>{@code TRZ}: Envía un trozo del adjunto que se está descargando, con el hash, la posición del trozo y su contenido en Base64,
+ *     p. ej: {@code TRZ 9f86...0f08 0 SG9sYQ==}. Se envían como mucho {@link es.chat.modelo.Adjunto#TROZOS_POR_DESCARGA} por cada {@code DES}</li>
+ *     <li>{@code FIN}: Termina una subida o una descarga, con el hash y, si ha fallado, el motivo, p. ej: {@code FIN 9f86...0f08}
+ *     o {@code FIN 9f86...0f08 Adjunto no encontrado}. Si el adjunto ya estaba en el servidor, responde a {@code SUB} directamente con {@code FIN}</li>
+ * </ul>
+ * Los números de secuencia los asigna el servidor, son crecientes y se usan para reanudar la sesión con {@code REA}.
+ * Cada respuesta se envía por un {@link Carril}: el orden se conserva dentro de un carril, pero no entre carriles.
+ * @version 1.0
+ * @author Adrián González
+ */
+public enum ServCmd {
+    OK,
+    NOK,
+    CHT,
+    PRV,
+    LST,
+    PRE,
+    BUS,
+    ESC,
+    SUB,
+    TRZ,
+    FIN
+}
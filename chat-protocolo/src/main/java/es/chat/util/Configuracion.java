@@ -0,0 +1,199 @@
+package es.chat.util;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parámetros de configuración del cliente y del servidor. Se leen de las propiedades del sistema
+ * ({@code -Dchat.puerto=5555}) y, si no se indican, se usa su valor por defecto.
+ * <ul>
+ *     <li>{@code chat.host}: Equipo del servidor al que se conecta el cliente, por defecto {@code localhost}</li>
+ *     <li>{@code chat.puerto}: Puerto en el que escucha el servidor, por defecto {@code 4444}</li>
+ *     <li>{@code chat.backlog}: Conexiones pendientes de aceptar que admite cada socket de escucha, por defecto {@code 1024}</li>
+ *     <li>{@code chat.aceptadores}: Hilos que aceptan conexiones, por defecto {@code 2}</li>
+ *     <li>{@code chat.historial}: Respuestas que guarda el servidor para reanudar sesiones, por defecto {@code 4096}</li>
+ *     <li>{@code chat.sesiones}: Tokens de sesión que guarda el servidor, por defecto {@code 10000}</li>
+ *     <li>{@code chat.pendientes}: Tramas pendientes de enviar a un cliente a partir de las cuales el servidor lo desconecta, por defecto {@code 16384}</li>
+ *     <li>{@code chat.escritores}: Hilos que escriben a los clientes las tramas que difunde el servidor, por defecto {@code 16}</li>
+ *     <li>{@code chat.adjuntos}: Directorio en el que el servidor guarda los adjuntos, por defecto {@code adjuntos}</li>
+ *     <li>{@code chat.adjuntos.maximo}: Tamaño máximo de un adjunto en MB, por defecto {@code 64}</li>
+ *     <li>{@code chat.busqueda}: Directorio en el que el servidor guarda los mensajes del índice de búsqueda, por defecto {@code busqueda}</li>
+ *     <li>{@code chat.busqueda.capacidad}: Mensajes que conserva como mínimo el índice de búsqueda, por defecto {@code 1000000}</li>
+ *     <li>{@code chat.cliente.historial}: Directorio en el que el cliente guarda el historial de los chats, por defecto {@code ~/.chat-multicliente}</li>
+ *     <li>{@code chat.escribiendo.ventana}: Milisegundos en los que el servidor agrupa los avisos de que un usuario escribe; el cliente los repite cada media ventana, por defecto {@code 2000}</li>
+ *     <li>{@code chat.medirArranque}: El servidor mide cuánto tarda en aceptar la primera conexión y termina, por defecto {@code false}</li>
+ *     <li>{@code chat.tuberia}: Nombres de las etapas por las que pasan los mensajes en el servidor, separados por comas y en orden, por defecto ninguna</li>
+ *     <li>{@code chat.tuberia.hilos}: Hilos que procesan los mensajes de la tubería, por defecto {@code 1}</li>
+ *     <li>{@code chat.tuberia.capacidad}: Mensajes que caben en la cola de cada hilo de la tubería, por defecto {@code 1024}</li>
+ *     <li>{@code chat.tuberia.limite}: Microsegundos de media a partir de los cuales una etapa prescindible se salta si la tubería está cargada, por defecto {@code 1000}</li>
+ *     <li>{@code chat.filtro.palabras}: Palabras que la etapa {@code filtro} sustituye por asteriscos, separadas por comas, por defecto ninguna</li>
+ *     <li>{@code chat.captura}: Archivo en el que el servidor graba los comandos que recibe para reproducirlos después, por defecto ninguno</li>
+ *     <li>{@code chat.buffers.fugas}: Guarda dónde se presta cada buffer del pool para detectar los que no se devuelven, por defecto {@code false}</li>
+ * </ul>
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Configuracion {
+    public static final String HOST_POR_DEFECTO = "localhost";
+    public static final int PUERTO_POR_DEFECTO = 4444;
+    public static final int BACKLOG_POR_DEFECTO = 1024;
+    public static final int ACEPTADORES_POR_DEFECTO = 2;
+    public static final int HISTORIAL_POR_DEFECTO = 4096;
+    public static final int SESIONES_POR_DEFECTO = 10000;
+    public static final int PENDIENTES_POR_DEFECTO = 16384;
+    public static final int ESCRITORES_POR_DEFECTO = 16;
+    public static final int VENTANA_ESCRIBIENDO_POR_DEFECTO = 2000;
+    public static final int VENTANA_PRESENCIA_POR_DEFECTO = 250;
+    public static final int SECUENCIADOR_POR_DEFECTO = 4096;
+    public static final int HILOS_TUBERIA_POR_DEFECTO = 1;
+    public static final int CAPACIDAD_TUBERIA_POR_DEFECTO = 1024;
+    public static final int LIMITE_TUBERIA_POR_DEFECTO = 1000;
+    public static final String ADJUNTOS_POR_DEFECTO = "adjuntos";
+    public static final int MAXIMO_ADJUNTO_POR_DEFECTO = 64;
+    public static final String BUSQUEDA_POR_DEFECTO = "busqueda";
+    public static final int CAPACIDAD_BUSQUEDA_POR_DEFECTO = 1000000;
+
+    private Configuracion() {
+    }
+
+    public static String host() {
+        return System.getProperty("chat.host", HOST_POR_DEFECTO);
+    }
+
+    public static int puerto() {
+        return entero("chat.puerto", PUERTO_POR_DEFECTO, 0);
+    }
+
+    public static int backlog() {
+        return entero("chat.backlog", BACKLOG_POR_DEFECTO, 1);
+    }
+
+    public static int aceptadores() {
+        return entero("chat.aceptadores", ACEPTADORES_POR_DEFECTO, 1);
+    }
+
+    public static int historial() {
+        return entero("chat.historial", HISTORIAL_POR_DEFECTO, 1);
+    }
+
+    public static int sesiones() {
+        return entero("chat.sesiones", SESIONES_POR_DEFECTO, 1);
+    }
+
+    public static int pendientes() {
+        return entero("chat.pendientes", PENDIENTES_POR_DEFECTO, 1);
+    }
+
+    public static int escritores() {
+        return entero("chat.escritores", ESCRITORES_POR_DEFECTO, 1);
+    }
+
+    public static int ventanaEscribiendo() {
+        return entero("chat.escribiendo.ventana", VENTANA_ESCRIBIENDO_POR_DEFECTO, 1);
+    }
+
+    public static int ventanaPresencia() {
+        return entero("chat.presencia.ventana", VENTANA_PRESENCIA_POR_DEFECTO, 1);
+    }
+
+    public static int secuenciador() {
+        return entero("chat.secuenciador", SECUENCIADOR_POR_DEFECTO, 2);
+    }
+
+    public static List<String> tuberia() {
+        return lista("chat.tuberia");
+    }
+
+    public static int hilosTuberia() {
+        return entero("chat.tuberia.hilos", HILOS_TUBERIA_POR_DEFECTO, 1);
+    }
+
+    public static int capacidadTuberia() {
+        return entero("chat.tuberia.capacidad", CAPACIDAD_TUBERIA_POR_DEFECTO, 4);
+    }
+
+    /**
+     * @return Límite de la tubería en microsegundos
+     */
+    public static int limiteTuberia() {
+        return entero("chat.tuberia.limite", LIMITE_TUBERIA_POR_DEFECTO, 1);
+    }
+
+    public static List<String> palabrasFiltradas() {
+        return lista("chat.filtro.palabras");
+    }
+
+    public static Path directorioAdjuntos() {
+        return Path.of(System.getProperty("chat.adjuntos", ADJUNTOS_POR_DEFECTO));
+    }
+
+    /**
+     * @return Tamaño máximo de un adjunto en bytes
+     */
+    public static long maximoAdjunto() {
+        return entero("chat.adjuntos.maximo", MAXIMO_ADJUNTO_POR_DEFECTO, 1) * 1024L * 1024L;
+    }
+
+    public static Path directorioBusqueda() {
+        return Path.of(System.getProperty("chat.busqueda", BUSQUEDA_POR_DEFECTO));
+    }
+
+    public static int capacidadBusqueda() {
+        return entero("chat.busqueda.capacidad", CAPACIDAD_BUSQUEDA_POR_DEFECTO, 1);
+    }
+
+    public static Path directorioHistorialLocal() {
+        String directorio = System.getProperty("chat.cliente.historial");
+        return directorio != null ? Path.of(directorio) : Path.of(System.getProperty("user.home"), ".chat-multicliente");
+    }
+
+    /**
+     * @return Archivo de captura del servidor, o {@code null} si no se graba
+     */
+    public static Path captura() {
+        String archivo = System.getProperty("chat.captura");
+        return archivo != null ? Path.of(archivo) : null;
+    }
+
+    public static boolean medirArranque() {
+        return Boolean.getBoolean("chat.medirArranque");
+    }
+
+    public static boolean detectarFugas() {
+        return Boolean.getBoolean("chat.buffers.fugas");
+    }
+
+    /**
+     * Lee una propiedad con una lista de valores separados por comas.
+     * @param propiedad Nombre de la propiedad
+     * @return Valores sin espacios alrededor ni vacíos, o una lista vacía si la propiedad no existe
+     */
+    public static List<String> lista(String propiedad) {
+        String valor = System.getProperty(propiedad, "");
+        return Arrays.stream(valor.split(",")).map(String::trim).filter(v -> !v.isEmpty()).toList();
+    }
+
+    /**
+     * Lee una propiedad entera. Si no existe, no es un número o es menor que el mínimo, devuelve el valor por defecto.
+     * @param propiedad Nombre de la propiedad
+     * @param porDefecto Valor por defecto
+     * @param minimo Valor mínimo admitido
+     * @return Valor de la propiedad o el valor por defecto
+     */
+    public static int entero(String propiedad, int porDefecto, int minimo) {
+        String valor = System.getProperty(propiedad);
+
+        if (valor == null) {
+            return porDefecto;
+        }
+
+        try {
+            int numero = Integer.parseInt(valor.trim());
+            return numero >= minimo ? numero : porDefecto;
+        } catch (NumberFormatException e) {
+            System.err.printf("Valor no válido para %s: %s%n", propiedad, valor);
+            return porDefecto;
+        }
+    }
+}
@@ -58,6 +58,11 @@ public class Validar {
                 yield aliasMensaje.length == 2 && alias(aliasMensaje[0]);
             }
             case LUS, EXI -> comandoSplit.length == 1;
+            case BUS -> comandoSplit.length == 2 && comandoSplit[1].matches("^[0-9]{1,4} \\S.*$");
+            case ESC -> comandoSplit.length == 1 || alias(comandoSplit[1]);
+            case REA -> comandoSplit.length == 2 && comandoSplit[1].matches("^[0-9a-fA-F-]+( [0-9]{1,18}){3}$");
+            case SUB, DES -> comandoSplit.length == 2 && comandoSplit[1].matches("^[0-9a-f]{64} [0-9]{1,12}$");
+            case TRZ -> comandoSplit.length == 2 && comandoSplit[1].matches("^[0-9a-f]{64} [0-9]{1,12} [A-Za-z0-9+/]+={0,2}$");
         };
     }
 
@@ -0,0 +1,5 @@
+module es.chat.protocolo {
+    exports es.chat.modelo;
+    exports es.chat.modelo.comando;
+    exports es.chat.util;
+}
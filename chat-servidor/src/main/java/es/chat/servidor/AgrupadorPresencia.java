@@ -0,0 +1,175 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Clase que agrupa las entradas y salidas de usuarios y las notifica cada cierto tiempo en una sola respuesta
+ * {@code PRE} para todos los clientes conectados, p. ej: {@code PRE 44 +Juan,+Ana,-Luis}.
+ * <p>
+ * Notificar cada entrada por separado cuesta una trama por cliente conectado, así que cuando muchos usuarios se
+ * conectan a la vez (por ejemplo, al reiniciar el servidor) el número de tramas crece con el cuadrado de los
+ * usuarios. Agrupadas, cada cliente recibe una trama por ventana. De cada alias solo se notifica su estado al final
+ * de la ventana, y si es el mismo que al principio (un usuario que se reconecta) no se notifica nada.
+ * <p>
+ * Los cambios se anotan con el objeto de sincronización de la lista de clientes, a la vez que se añade o se quita el
+ * cliente, y la respuesta se numera en el {@link Historial} y se encola también con él, así que un cliente que
+ * reanuda su sesión recibe las que se perdió. Las respuestas se escriben después de soltarlo.
+ * @see Worker
+ * @see Historial
+ * @version 1.0
+ * @author Adrián González
+ */
+public class AgrupadorPresencia {
+    /**
+     * Caracteres de cambios a partir de los cuales se empieza otra respuesta, para que cada una quepa en una trama.
+     */
+    private static final int MAX_CARACTERES = 16 * 1024;
+
+    /**
+     * Estado de un alias al principio de la ventana y el último anotado.
+     */
+    private record Cambio(boolean conectadoAntes, boolean conectado) {
+    }
+
+    private final Conectados conectados;
+    private final Object lock;
+    private final Historial historial;
+    /**
+     * Cambios de la ventana actual, en el orden en el que llegaron. Se accede con el objeto de sincronización.
+     */
+    private final Map<String, Cambio> cambios = new LinkedHashMap<>();
+
+    /**
+     * @param conectados Clientes conectados
+     * @param lock Objeto de sincronización de la lista de clientes
+     * @param historial Historial en el que se numeran las respuestas
+     */
+    public AgrupadorPresencia(Conectados conectados, Object lock, Historial historial) {
+        this.conectados = conectados;
+        this.lock = lock;
+        this.historial = historial;
+    }
+
+    /**
+     * Empieza a enviar los cambios en un hilo propio.
+     * @param ventana Milisegundos entre una respuesta y la siguiente
+     */
+    public void iniciar(long ventana) {
+        ScheduledExecutorService hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presencia");
+            t.setDaemon(true);
+            return t;
+        });
+
+        hilo.scheduleWithFixedDelay(() -> {
+            try {
+                enviar();
+            } catch (RuntimeException e) {
+                // Si la tarea lanza una excepción deja de programarse
+                System.err.printf("ERROR al notificar los cambios de usuarios%n%s%n", e);
+            }
+        }, ventana, ventana, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Anota que un usuario ha entrado. Se llama con el objeto de sincronización.
+     * @param alias Alias del usuario
+     */
+    public void entrar(String alias) {
+        anotar(alias, true);
+    }
+
+    /**
+     * Anota que un usuario ha salido. Se llama con el objeto de sincronización.
+     * @param alias Alias del usuario
+     */
+    public void salir(String alias) {
+        anotar(alias, false);
+    }
+
+    private void anotar(String alias, boolean conectado) {
+        cambios.compute(alias, (a, anterior) -> new Cambio(anterior == null ? !conectado : anterior.conectadoAntes(), conectado));
+    }
+
+    /**
+     * Numera y encola para todos los clientes conectados los cambios anotados desde la última vez, y después
+     * los escribe. Si no hay cambios no envía nada.
+     */
+    public void enviar() {
+        List<Cliente> avisados;
+
+        synchronized (lock) {
+            if (cambios.isEmpty()) {
+                return;
+            }
+
+            List<String> respuestas = agrupar();
+            cambios.clear();
+
+            if (respuestas.isEmpty()) {
+                return;
+            }
+
+            avisados = conectados.instantanea().clientes();
+
+            for (String parametros : respuestas) {
+                Trama trama;
+
+                try {
+                    trama = historial.registrar(ServCmd.PRE, parametros, null);
+                } catch (IOException e) {
+                    System.err.printf("ERROR: %s %s%n%s%n", ServCmd.PRE, parametros, e.getMessage());
+                    continue;
+                }
+
+                try {
+                    Difusor.encolar(avisados, trama);
+                } finally {
+                    trama.liberar();
+                }
+            }
+        }
+
+        Difusor.vaciar(avisados);
+    }
+
+    /**
+     * @return Parámetros de las respuestas con los cambios de la ventana, repartidos para no superar {@link #MAX_CARACTERES}
+     */
+    private List<String> agrupar() {
+        List<String> respuestas = new ArrayList<>();
+        StringBuilder parametros = new StringBuilder();
+
+        for (Map.Entry<String, Cambio> cambio : cambios.entrySet()) {
+            if (cambio.getValue().conectadoAntes() == cambio.getValue().conectado()) {
+                continue;
+            }
+
+            if (parametros.length() > MAX_CARACTERES) {
+                respuestas.add(parametros.toString());
+                parametros.setLength(0);
+            }
+
+            if (!parametros.isEmpty()) {
+                parametros.append(',');
+            }
+
+            parametros.append(cambio.getValue().conectado() ? '+' : '-').append(cambio.getKey());
+        }
+
+        if (!parametros.isEmpty()) {
+            respuestas.add(parametros.toString());
+        }
+
+        return respuestas;
+    }
+}
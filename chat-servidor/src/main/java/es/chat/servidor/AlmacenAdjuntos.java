@@ -0,0 +1,310 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import es.chat.modelo.Adjunto;
+
+/**
+ * Clase que guarda en disco los adjuntos que suben los clientes, en {@code <directorio>/<2 primeros>/<hash>},
+ * donde el hash es el SHA-256 del contenido. Un adjunto que ya existe no se vuelve a subir.
+ * <p>
+ * Los adjuntos se guardan codificados en Base64, igual que viajan en las tramas {@code TRZ}, para que las descargas
+ * escriban cada trozo directamente del archivo al canal ({@link Trama#deArchivo(String, java.nio.file.Path, long, int)}).
+ * Mientras se sube, el adjunto está en {@code <directorio>/parciales/<hash>.<usuario>}, con un archivo por usuario
+ * para que dos usuarios puedan subir el mismo adjunto a la vez (el primero que termina lo guarda). Si la conexión se
+ * corta, la subida continúa desde el último trozo completo. Si se cancela, el archivo parcial se borra, y los que
+ * llevan más de {@link #CADUCIDAD_PARCIALES_MS} sin cambios se borran al arrancar y al empezar cada subida.
+ * @see Worker
+ * @see Adjunto
+ * @version 1.0
+ * @author Adrián González
+ */
+public class AlmacenAdjuntos {
+    /**
+     * Caracteres de un trozo completo codificado en Base64.
+     */
+    public static final int TAM_TROZO_CODIFICADO = Adjunto.TAM_TROZO / 3 * 4;
+    /**
+     * Tiempo sin cambios tras el que se borra una subida sin terminar, 24 horas.
+     */
+    public static final long CADUCIDAD_PARCIALES_MS = 24 * 60 * 60 * 1000L;
+
+    private final Path directorio;
+    private final Path parciales;
+    private final long maximo;
+    private final long caducidadMs;
+    /**
+     * Nombres de los archivos parciales que se están escribiendo, para no borrarlos y para que un usuario no suba
+     * el mismo adjunto dos veces a la vez.
+     */
+    private final Set<String> subiendo = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param directorio Directorio de los adjuntos, se crea si no existe
+     * @param maximo Tamaño máximo de un adjunto en bytes
+     * @throws IOException Si no se puede crear el directorio
+     */
+    public AlmacenAdjuntos(Path directorio, long maximo) throws IOException {
+        this(directorio, maximo, CADUCIDAD_PARCIALES_MS);
+    }
+
+    /**
+     * Crea el almacén y borra las subidas sin terminar que han caducado.
+     * @param directorio Directorio de los adjuntos, se crea si no existe
+     * @param maximo Tamaño máximo de un adjunto en bytes
+     * @param caducidadMs Tiempo sin cambios tras el que se borra una subida sin terminar
+     * @throws IOException Si no se puede crear el directorio
+     */
+    public AlmacenAdjuntos(Path directorio, long maximo, long caducidadMs) throws IOException {
+        this.directorio = directorio;
+        this.parciales = directorio.resolve("parciales");
+        this.maximo = maximo;
+        this.caducidadMs = caducidadMs;
+        Files.createDirectories(parciales);
+        borrarCaducadas();
+    }
+
+    /**
+     * @param hash SHA-256 del contenido en hexadecimal
+     * @return Ruta del adjunto codificado, exista o no
+     */
+    public Path ruta(String hash) {
+        return directorio.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * @param hash SHA-256 del contenido en hexadecimal
+     * @return {@code true} si el adjunto está guardado
+     */
+    public boolean existe(String hash) {
+        return Files.isRegularFile(ruta(hash));
+    }
+
+    /**
+     * Empieza la subida de un adjunto o continúa la que había empezado el mismo usuario. Antes borra las subidas
+     * sin terminar que han caducado.
+     * @param hash SHA-256 del contenido en hexadecimal
+     * @param tamano Tamaño del adjunto en bytes
+     * @param usuario Alias del usuario que lo sube
+     * @return Subida, que hay que cerrar al terminar
+     * @throws IOException Si el adjunto es demasiado grande, el usuario ya lo está subiendo o falla el disco
+     */
+    public Subida empezar(String hash, long tamano, String usuario) throws IOException {
+        if (tamano > maximo) {
+            throw new IOException(String.format("Adjunto demasiado grande (máximo %d MB)", maximo / 1024 / 1024));
+        }
+
+        borrarCaducadas();
+
+        String nombre = hash + "." + HexFormat.of().formatHex(sha256().digest(usuario.getBytes(StandardCharsets.UTF_8)), 0, 8);
+
+        if (!subiendo.add(nombre)) {
+            throw new IOException("Ya se está subiendo el mismo adjunto");
+        }
+
+        try {
+            return new Subida(hash, tamano, nombre);
+        } catch (IOException e) {
+            subiendo.remove(nombre);
+            throw e;
+        }
+    }
+
+    /**
+     * Borra los archivos parciales que no se están escribiendo y llevan más de la caducidad sin cambios. Cada uno se
+     * reserva en {@link #subiendo} mientras se comprueba, para que no se borre uno que se acaba de retomar.
+     */
+    private void borrarCaducadas() {
+        FileTime limite = FileTime.fromMillis(System.currentTimeMillis() - caducidadMs);
+
+        try (Stream<Path> archivos = Files.list(parciales)) {
+            archivos.forEach(parcial -> {
+                String nombre = parcial.getFileName().toString();
+
+                if (!subiendo.add(nombre)) {
+                    return;
+                }
+
+                try {
+                    if (Files.getLastModifiedTime(parcial).compareTo(limite) < 0) {
+                        Files.deleteIfExists(parcial);
+                    }
+                } catch (IOException e) {
+                    System.err.printf("ERROR al borrar la subida caducada %s%n%s%n", nombre, e.getMessage());
+                } finally {
+                    subiendo.remove(nombre);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.printf("ERROR al buscar las subidas caducadas%n%s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Subida de un adjunto. La usa solo el {@link Worker} del cliente que sube.
+     */
+    public final class Subida {
+        private final String hash;
+        private final long tamano;
+        private final String nombre;
+        private final Path parcial;
+        private final FileChannel canal;
+        private final MessageDigest resumen;
+        private long recibidos;
+        private boolean cerrada;
+
+        private Subida(String hash, long tamano, String nombre) throws IOException {
+            this.hash = hash;
+            this.tamano = tamano;
+            this.nombre = nombre;
+            this.parcial = parciales.resolve(nombre);
+            this.resumen = sha256();
+            this.canal = FileChannel.open(parcial, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+
+            try {
+                // Se descarta el último trozo si quedó a medias y se recalcula el resumen de lo ya recibido
+                long completos = canal.size() / TAM_TROZO_CODIFICADO * TAM_TROZO_CODIFICADO;
+                canal.truncate(completos);
+
+                try (InputStream entrada = Base64.getDecoder().wrap(Files.newInputStream(parcial))) {
+                    byte[] bloque = new byte[Adjunto.TAM_TROZO];
+                    int n;
+
+                    while ((n = entrada.read(bloque)) > 0) {
+                        resumen.update(bloque, 0, n);
+                        recibidos += n;
+                    }
+                }
+
+                canal.position(completos);
+            } catch (IOException | IllegalArgumentException e) {
+                // Se borra para que el siguiente intento empiece de cero
+                canal.close();
+                Files.deleteIfExists(parcial);
+                throw new IOException("Subida parcial dañada: " + e.getMessage(), e);
+            }
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return Bytes del adjunto recibidos hasta ahora, desde donde tiene que continuar el cliente
+         */
+        public long getRecibidos() {
+            return recibidos;
+        }
+
+        /**
+         * Añade un trozo al adjunto. Todos los trozos menos el último deben tener {@link Adjunto#TAM_TROZO} bytes.
+         * @param desplazamiento Posición del trozo, que debe ser la siguiente a lo ya recibido
+         * @param datos Trozo codificado en Base64
+         * @return {@code true} si con este trozo se ha recibido el adjunto completo
+         * @throws IOException Si el trozo no es el esperado o falla el disco
+         */
+        public boolean escribir(long desplazamiento, String datos) throws IOException {
+            if (desplazamiento != recibidos) {
+                throw new IOException(String.format("Se esperaba el trozo %d y ha llegado el %d", recibidos, desplazamiento));
+            }
+
+            byte[] trozo;
+
+            try {
+                trozo = Base64.getDecoder().decode(datos);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Trozo mal codificado", e);
+            }
+
+            boolean ultimo = recibidos + trozo.length == tamano;
+
+            if (trozo.length == 0 || recibidos + trozo.length > tamano || (!ultimo && trozo.length != Adjunto.TAM_TROZO)) {
+                throw new IOException("Tamaño de trozo no válido: " + trozo.length);
+            }
+
+            ByteBuffer codificado = ByteBuffer.wrap(datos.getBytes(StandardCharsets.US_ASCII));
+
+            while (codificado.hasRemaining()) {
+                canal.write(codificado);
+            }
+
+            resumen.update(trozo);
+            recibidos += trozo.length;
+            return ultimo;
+        }
+
+        /**
+         * Comprueba que el contenido recibido corresponde al hash y guarda el adjunto. La subida queda cerrada.
+         * @throws IOException Si el contenido no corresponde al hash (se descarta) o falla el disco
+         */
+        public void terminar() throws IOException {
+            cerrar();
+
+            if (!HexFormat.of().formatHex(resumen.digest()).equals(hash)) {
+                Files.deleteIfExists(parcial);
+                throw new IOException("El contenido no corresponde al hash");
+            }
+
+            Path destino = ruta(hash);
+            Files.createDirectories(destino.getParent());
+            Files.move(parcial, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /**
+         * Cierra la subida sin terminarla. Lo recibido se conserva para continuar más tarde.
+         */
+        public void cerrar() {
+            if (cerrada) {
+                return;
+            }
+
+            cerrada = true;
+
+            try {
+                canal.close();
+            } catch (IOException e) {
+                System.err.printf("ERROR al cerrar la subida %s%n%s%n", hash, e.getMessage());
+            } finally {
+                subiendo.remove(nombre);
+            }
+        }
+
+        /**
+         * Cierra la subida sin terminarla y borra lo recibido.
+         */
+        public void cancelar() {
+            cerrar();
+
+            try {
+                Files.deleteIfExists(parcial);
+            } catch (IOException e) {
+                System.err.printf("ERROR al borrar la subida %s%n%s%n", hash, e.getMessage());
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
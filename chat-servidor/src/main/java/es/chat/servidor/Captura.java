@@ -0,0 +1,232 @@
+package es.chat.servidor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase que graba en un archivo binario los comandos que reciben los {@link Worker}, para reproducir después el mismo
+ * tráfico contra el servidor ({@code es.chat.servidor.rendimiento.Reproductor}, en las pruebas). Se activa con
+ * {@code chat.captura}.
+ * <p>
+ * El archivo empieza con {@link #MAGIA} y {@link #VERSION} y sigue con un registro por evento, en el orden en el que
+ * ocurren:
+ * <ul>
+ *     <li>Tipo: un byte, {@link #TRAMA}, {@link #SESION} o {@link #CIERRE}</li>
+ *     <li>Microsegundos desde el registro anterior y número de conexión, como enteros de longitud variable
+ *     (7 bits por byte, el bit alto indica que sigue otro byte)</li>
+ *     <li>{@link #TRAMA}: el comando recibido tal y como llega del cliente (dos bytes de longitud y el texto en UTF-8
+ *     modificado). {@link #SESION}: el token de sesión que se ha dado a la conexión, igual que una trama.
+ *     {@link #CIERRE}: nada</li>
+ * </ul>
+ * Los tokens permiten al reproductor traducir los {@code REA} a los tokens de la reproducción. El archivo contiene los
+ * mensajes en claro. Se escribe con un buffer y se cierra al apagar el servidor; si el proceso termina de golpe, el
+ * último registro puede quedar a medias y el {@link Lector} lo ignora.
+ * <p>
+ * Todos los {@link Worker} escriben en el mismo archivo: cada registro se escribe con el objeto de sincronización de
+ * la captura, que solo copia unos bytes al buffer. Si falla la escritura, la captura se desactiva y el servidor sigue.
+ * @see Worker
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Captura implements Closeable {
+    /**
+     * Primeros bytes del archivo ({@code CHCP}).
+     */
+    public static final int MAGIA = 0x43484350;
+    public static final int VERSION = 1;
+    public static final byte TRAMA = 0;
+    public static final byte SESION = 1;
+    public static final byte CIERRE = 2;
+
+    private static final int TAMANO_BUFFER = 1 << 16;
+
+    /**
+     * Registro leído de una captura.
+     * @param tipo {@link #TRAMA}, {@link #SESION} o {@link #CIERRE}
+     * @param instante Microsegundos desde el comienzo de la captura
+     * @param conexion Número de conexión
+     * @param texto Comando o token, o {@code null} en los cierres
+     */
+    public record Registro(byte tipo, long instante, int conexion, String texto) {
+    }
+
+    private final DataOutputStream salida;
+    private final AtomicInteger conexiones = new AtomicInteger();
+    private final long inicio = System.nanoTime();
+    private long ultimo;
+    private boolean activa = true;
+
+    private Captura(OutputStream salida) throws IOException {
+        this.salida = new DataOutputStream(new BufferedOutputStream(salida, TAMANO_BUFFER));
+        this.salida.writeInt(MAGIA);
+        this.salida.writeByte(VERSION);
+    }
+
+    /**
+     * Crea el archivo de captura, o lo sustituye si ya existe.
+     * @param archivo Archivo de captura
+     * @return Captura lista para grabar
+     * @throws IOException Si no se puede crear el archivo
+     */
+    public static Captura abrir(Path archivo) throws IOException {
+        return new Captura(Files.newOutputStream(archivo));
+    }
+
+    /**
+     * @return Número de una nueva conexión
+     */
+    public int nuevaConexion() {
+        return conexiones.incrementAndGet();
+    }
+
+    /**
+     * Graba un comando recibido.
+     * @param conexion Número de conexión
+     * @param comando Comando tal y como lo ha enviado el cliente
+     */
+    public synchronized void trama(int conexion, String comando) {
+        grabar(TRAMA, conexion, comando);
+    }
+
+    /**
+     * Graba el token de sesión que se ha dado a una conexión al iniciar o reanudar la sesión.
+     * @param conexion Número de conexión
+     * @param token Token de sesión
+     */
+    public synchronized void sesion(int conexion, String token) {
+        grabar(SESION, conexion, token);
+    }
+
+    /**
+     * Graba que una conexión se ha cerrado.
+     * @param conexion Número de conexión
+     */
+    public synchronized void cierre(int conexion) {
+        grabar(CIERRE, conexion, null);
+    }
+
+    private void grabar(byte tipo, int conexion, String texto) {
+        if (!activa) {
+            return;
+        }
+
+        // Se toma el instante con el objeto de sincronización para que los registros salgan en orden
+        long ahora = (System.nanoTime() - inicio) / 1000;
+
+        try {
+            salida.writeByte(tipo);
+            escribirVariable(salida, ahora - ultimo);
+            escribirVariable(salida, conexion);
+
+            if (texto != null) {
+                salida.writeUTF(texto);
+            }
+
+            ultimo = ahora;
+        } catch (IOException e) {
+            activa = false;
+            System.err.printf("ERROR al grabar la captura, se desactiva%n%s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Vacía el buffer y cierra el archivo.
+     */
+    @Override
+    public synchronized void close() {
+        activa = false;
+
+        try {
+            salida.close();
+        } catch (IOException e) {
+            System.err.printf("ERROR al cerrar la captura%n%s%n", e.getMessage());
+        }
+    }
+
+    private static void escribirVariable(DataOutputStream salida, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            salida.writeByte((int) (valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+
+        salida.writeByte((int) valor);
+    }
+
+    private static long leerVariable(DataInputStream entrada) throws IOException {
+        long valor = 0;
+
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            int b = entrada.readUnsignedByte();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+
+        throw new IOException("Entero de longitud variable no válido");
+    }
+
+    /**
+     * Lee los registros de un archivo de captura en orden.
+     */
+    public static final class Lector implements Closeable {
+        private final DataInputStream entrada;
+        private long instante;
+
+        /**
+         * @param archivo Archivo de captura
+         * @throws IOException Si no se puede leer o no es una captura de esta versión
+         */
+        public Lector(Path archivo) throws IOException {
+            InputStream flujo = Files.newInputStream(archivo);
+            this.entrada = new DataInputStream(new BufferedInputStream(flujo, TAMANO_BUFFER));
+
+            if (entrada.readInt() != MAGIA || entrada.readUnsignedByte() != VERSION) {
+                entrada.close();
+                throw new IOException("No es un archivo de captura compatible: " + archivo);
+            }
+        }
+
+        /**
+         * @return Siguiente registro, o {@code null} al llegar al final o a un registro incompleto
+         * @throws IOException Si falla la lectura o el archivo está dañado
+         */
+        public Registro siguiente() throws IOException {
+            try {
+                int tipo = entrada.read();
+
+                if (tipo < 0) {
+                    return null;
+                }
+
+                if (tipo > CIERRE) {
+                    throw new IOException("Registro no válido: " + tipo);
+                }
+
+                instante += leerVariable(entrada);
+                int conexion = (int) leerVariable(entrada);
+                String texto = tipo == CIERRE ? null : entrada.readUTF();
+
+                return new Registro((byte) tipo, instante, conexion, texto);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            entrada.close();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package es.chat.servidor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.util.Configuracion;
+
+/**
+ * Clase que representa a un cliente. Contiene su alias, el canal de la conexión
+ * y las colas de tramas pendientes de enviar.
+ * Se utiliza en el servidor para gestionar los clientes conectados.
+ * <p>
+ * Las respuestas se encolan como {@link Trama} compartidas y se escriben con escrituras agrupadas
+ * ({@code SocketChannel.write(ByteBuffer[])}). Escribe el hilo que consigue el cerrojo de escritura;
+ * el resto solo encola y vuelve, y el hilo que escribe vacía también lo que han encolado los demás.
+ * Los comandos se leen del canal en buffers del {@link PoolBuffers} y se decodifican igual que con {@code readUTF}.
+ * <p>
+ * Hay una cola por {@link Carril}. Cada lote se llena por turnos, de más a menos prioritario, tomando en cada turno
+ * hasta {@link #PESOS} tramas de cada carril: una confirmación de inicio de sesión o la lista de usuarios sale en el
+ * siguiente lote aunque haya miles de mensajes generales encolados, y los mensajes generales siguen saliendo aunque
+ * haya tráfico de los demás carriles. Los trozos de adjuntos ({@link Carril#ADJUNTO}) se añaden al final del lote,
+ * uno como mucho, y su contenido se escribe desde el archivo con {@link Trama#transferir(java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * Los {@link Worker} encolan con {@link #encolar(Trama)} mientras tienen el objeto de sincronización, para fijar el
+ * orden, y vacían después de soltarlo. Cada {@link Worker} escribe directamente las respuestas a su propio cliente con
+ * {@link #vaciar()}. Los hilos que difunden a muchos ({@link Secuenciador}, {@link AgrupadorPresencia},
+ * {@link Repartidor} y los avisos prescindibles) solo piden el vaciado con {@link #programarVaciado()}, que lo hace
+ * uno de los {@link Configuracion#escritores()} hilos escritores. El canal es bloqueante, así que una escritura a un
+ * cliente que lee despacio se bloquea, pero solo retiene a un escritor y no a los demás clientes. Mientras tanto sus
+ * tramas se acumulan en sus colas, donde se pueden adelantar las de control. Si acumula más de
+ * {@link Configuracion#pendientes()} tramas, se cierra su conexión y el escritor bloqueado queda libre.
+ * @see Servidor
+ * @see Worker
+ * @see Trama
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Cliente {
+    /**
+     * Número máximo de tramas que se escriben en una sola escritura agrupada.
+     */
+    private static final int MAX_LOTE = 64;
+    /**
+     * Carriles que se reparten por turnos y tramas que se toman de cada uno en cada turno.
+     */
+    private static final Carril[] POR_TURNOS = {Carril.CONTROL, Carril.PRESENCIA, Carril.PRIVADO, Carril.DIFUSION};
+    private static final int[] PESOS = {8, 4, 2, 1};
+    private static final int MAX_PENDIENTES = Configuracion.pendientes();
+    private static final AtomicInteger NUM_ESCRITORES = new AtomicInteger();
+    private static final ExecutorService ESCRITORES = Executors.newFixedThreadPool(Configuracion.escritores(), r -> {
+        Thread hilo = new Thread(r, "escritor-" + NUM_ESCRITORES.incrementAndGet());
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private String alias;
+    private final SocketChannel canal;
+    private final ByteBuffer cabecera = ByteBuffer.allocate(2);
+    /**
+     * Array de trabajo para decodificar comandos. Crece hasta el comando más largo que ha enviado el cliente.
+     */
+    private char[] caracteres = new char[128];
+    private final Queue<Trama>[] pendientes = nuevasColas();
+    private final AtomicInteger numPendientes = new AtomicInteger();
+    private final ReentrantLock escritura = new ReentrantLock();
+    /**
+     * Si hay un vaciado programado en los escritores que todavía no ha empezado. Como mucho hay uno por cliente.
+     */
+    private final AtomicBoolean vaciadoProgramado = new AtomicBoolean();
+    private final Trama[] lote = new Trama[MAX_LOTE];
+    private final ByteBuffer[] vistas = new ByteBuffer[MAX_LOTE];
+    private volatile boolean cerrado;
+
+    public Cliente(SocketChannel canal) {
+        this.canal = canal;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * Lee el siguiente comando del cliente, bloqueando hasta que llega completo.
+     * @return Comando recibido
+     * @throws IOException Si se cierra la conexión o el comando no es UTF-8 modificado válido
+     */
+    public String leerComando() throws IOException {
+        cabecera.clear();
+        leerCompleto(cabecera);
+        int longitud = cabecera.getShort(0) & 0xFFFF;
+
+        if (caracteres.length < longitud) {
+            caracteres = new char[longitud];
+        }
+
+        ByteBuffer datos = PoolBuffers.prestar(longitud);
+
+        try {
+            leerCompleto(datos);
+            datos.flip();
+            return UtfModificado.decodificar(datos, caracteres);
+        } finally {
+            PoolBuffers.devolver(datos);
+        }
+    }
+
+    /**
+     * Lee del canal hasta llenar el buffer.
+     * @param buffer Buffer a llenar
+     * @throws EOFException Si el cliente cierra la conexión antes
+     */
+    private void leerCompleto(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Envía una respuesta al cliente por parte del servidor, si se produce un error se muestra por consola.
+     * @param respuesta Respuesta a enviar
+     * @return {@code true} si se envía correctamente, {@code false} en caso contrario
+     */
+    public boolean enviarRespuesta(String respuesta) {
+        Trama trama;
+
+        try {
+            trama = Trama.de(respuesta);
+        } catch (IOException e) {
+            System.err.printf("ERROR: %s%n%s%n", respuesta, e.getMessage());
+            return false;
+        }
+
+        try {
+            return enviar(trama);
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    /**
+     * Encola una trama para el cliente e intenta vaciar la cola. La trama se retiene mientras está en la cola,
+     * así que quien la pasa conserva su referencia y debe liberarla.
+     * @param trama Trama a enviar
+     * @return {@code false} si la conexión ya ha fallado, {@code true} en caso contrario
+     */
+    public boolean enviar(Trama trama) {
+        return encolar(trama) && vaciar();
+    }
+
+    /**
+     * Encola una trama para el cliente sin escribirla. Quien la pasa conserva su referencia y debe liberarla,
+     * y tiene que llamar después a {@link #vaciar()}. Si el cliente acumula demasiadas tramas, se cierra su conexión.
+     * @param trama Trama a encolar
+     * @return {@code false} si la conexión ya ha fallado, {@code true} en caso contrario
+     */
+    public boolean encolar(Trama trama) {
+        if (cerrado) {
+            return false;
+        }
+
+        pendientes[trama.carril().ordinal()].add(trama.retener());
+        int encoladas = numPendientes.incrementAndGet();
+
+        if (cerrado) {
+            // La conexión se ha cerrado entre la comprobación y el add, y puede que ya se hayan descartado las colas:
+            // nadie más las va a vaciar, así que se libera lo que quede, incluida esta trama
+            descartarPendientes();
+            return false;
+        }
+
+        if (encoladas > MAX_PENDIENTES) {
+            cortar();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Encola una trama prescindible, como un aviso de que alguien escribe, solo si la salida del cliente está libre:
+     * sin tramas pendientes y sin ningún hilo escribiendo. Si hay congestión se descarta para no retrasar a las demás.
+     * La escribe un hilo escritor, así que no bloquea al que llama. Quien la pasa conserva su referencia y debe liberarla.
+     * @param trama Trama a enviar
+     * @return {@code true} si se ha encolado, {@code false} si se ha descartado o la conexión ya ha fallado
+     */
+    public boolean enviarSiLibre(Trama trama) {
+        if (cerrado || hayPendientes() || escritura.isLocked()) {
+            return false;
+        }
+
+        return encolar(trama) && programarVaciado();
+    }
+
+    /**
+     * Pide a un hilo escritor que escriba las tramas pendientes, sin bloquear al que llama. No se programa ninguno si
+     * ya hay uno programado que no ha empezado, que las escribirá también, ni si otro hilo está escribiendo, porque
+     * {@link #vaciar()} vuelve a comprobar las colas al soltar el cerrojo.
+     * @return {@code false} si la conexión ya ha fallado, {@code true} en caso contrario
+     */
+    public boolean programarVaciado() {
+        if (cerrado) {
+            descartarPendientes();
+            return false;
+        }
+
+        if (hayPendientes() && !escritura.isLocked() && vaciadoProgramado.compareAndSet(false, true)) {
+            ESCRITORES.execute(() -> {
+                // Se desmarca antes de vaciar: lo que se encole a partir de aquí puede programar otro vaciado
+                vaciadoProgramado.set(false);
+                vaciar();
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Escribe las tramas pendientes si ningún otro hilo lo está haciendo. Después de soltar el cerrojo
+     * se vuelve a comprobar la cola por si otro hilo encoló algo mientras tanto.
+     * @return {@code false} si la conexión ha fallado, {@code true} en caso contrario
+     */
+    public boolean vaciar() {
+        while (!cerrado && hayPendientes() && escritura.tryLock()) {
+            try {
+                while (hayPendientes()) {
+                    escribirLote();
+                }
+            } catch (IOException e) {
+                System.err.printf("ERROR al escribir a %s%n%s%n", alias, e.getMessage());
+                cerrado = true;
+                // Una trama a medias descuadra las siguientes: la conexión ya no se puede usar
+                cerrarCanal();
+            } finally {
+                escritura.unlock();
+            }
+        }
+
+        if (cerrado) {
+            descartarPendientes();
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean hayPendientes() {
+        for (Queue<Trama> cola : pendientes) {
+            if (!cola.isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Saca hasta {@link #MAX_LOTE} tramas de las colas, por turnos y según los pesos de cada carril, más una del
+     * carril de adjuntos, y las escribe en una sola escritura agrupada. Si la última trama tiene parte en un archivo,
+     * se transfiere a continuación. Solo se llama con el cerrojo de escritura.
+     * @throws IOException Si falla la escritura en el canal o la lectura del archivo
+     */
+    private void escribirLote() throws IOException {
+        int n = 0;
+        int anterior = -1;
+        long restantes = 0;
+        Trama trama;
+
+        while (n < MAX_LOTE - 1 && n > anterior) {
+            anterior = n;
+
+            for (int c = 0; c < POR_TURNOS.length; c++) {
+                Queue<Trama> cola = pendientes[POR_TURNOS[c].ordinal()];
+
+                for (int i = 0; i < PESOS[c] && n < MAX_LOTE - 1 && (trama = cola.poll()) != null; i++) {
+                    lote[n] = trama;
+                    vistas[n] = trama.vista();
+                    restantes += trama.longitud();
+                    n++;
+                }
+            }
+        }
+
+        if ((trama = pendientes[Carril.ADJUNTO.ordinal()].poll()) != null) {
+            lote[n] = trama;
+            vistas[n] = trama.vista();
+            restantes += trama.longitud();
+            n++;
+        }
+
+        numPendientes.addAndGet(-n);
+
+        try {
+            while (restantes > 0) {
+                restantes -= canal.write(vistas, 0, n);
+            }
+
+            if (n > 0 && lote[n - 1].tieneArchivo()) {
+                lote[n - 1].transferir(canal);
+            }
+        } finally {
+            for (int i = 0; i < n; i++) {
+                lote[i].liberar();
+                lote[i] = null;
+                vistas[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Libera las tramas que quedan en la cola de un cliente cuya conexión ha fallado.
+     */
+    private void descartarPendientes() {
+        for (Queue<Trama> cola : pendientes) {
+            Trama trama;
+
+            while ((trama = cola.poll()) != null) {
+                numPendientes.decrementAndGet();
+                trama.liberar();
+            }
+        }
+    }
+
+    /**
+     * Cierra la conexión de un cliente que no lee sus tramas. El hilo que escribe, si lo hay, falla y descarta las
+     * colas, y el {@link Worker} del cliente falla al leer y lo desconecta.
+     */
+    private void cortar() {
+        cerrado = true;
+        System.err.printf("Cliente lento, se cierra su conexión: %s (%d tramas pendientes)%n", alias, numPendientes.get());
+        cerrarCanal();
+        vaciar();
+    }
+
+    private void cerrarCanal() {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            System.err.printf("ERROR al cerrar la conexión de %s%n%s%n", alias, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<Trama>[] nuevasColas() {
+        Queue<Trama>[] colas = new Queue[Carril.values().length];
+
+        for (int i = 0; i < colas.length; i++) {
+            colas[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        return colas;
+    }
+}
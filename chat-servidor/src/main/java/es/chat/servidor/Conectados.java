@@ -0,0 +1,142 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Clase que guarda los clientes conectados como una {@link Instantanea} inmutable que se sustituye entera cada vez que
+ * un cliente entra o sale.
+ * <p>
+ * La lista se lee mucho más de lo que se modifica: cada mensaje general la recorre, cada {@code LUS} la envía y cada
+ * mensaje privado y aviso de que alguien escribe busca en ella. Los lectores toman la instantánea actual con
+ * {@link #instantanea()} y la recorren sin ningún objeto de sincronización; aunque mientras tanto se publique otra,
+ * la suya no cambia. Las modificaciones se hacen con el objeto de sincronización de los {@link Worker}, que además
+ * fija el orden de las respuestas numeradas en el {@link Historial}, así que solo hay un escritor a la vez.
+ * @see Worker
+ * @see AgrupadorPresencia
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Conectados {
+    private final AtomicReference<Instantanea> actual = new AtomicReference<>(new Instantanea(List.of()));
+
+    /**
+     * @return Clientes conectados en este momento. No cambia aunque después entren o salgan clientes
+     */
+    public Instantanea instantanea() {
+        return actual.get();
+    }
+
+    /**
+     * Añade un cliente. Se llama con el objeto de sincronización.
+     * @param cliente Cliente que ha iniciado sesión
+     */
+    public void anadir(Cliente cliente) {
+        List<Cliente> clientes = new ArrayList<>(actual.get().clientes());
+        clientes.add(cliente);
+        publicar(clientes);
+    }
+
+    /**
+     * Quita un cliente. Se llama con el objeto de sincronización.
+     * @param cliente Cliente que se ha desconectado
+     * @return {@code true} si estaba conectado, {@code false} en caso contrario
+     */
+    public boolean quitar(Cliente cliente) {
+        List<Cliente> clientes = new ArrayList<>(actual.get().clientes());
+
+        if (!clientes.remove(cliente)) {
+            return false;
+        }
+
+        publicar(clientes);
+        return true;
+    }
+
+    private void publicar(List<Cliente> clientes) {
+        actual.getAndSet(new Instantanea(clientes)).retirar();
+    }
+
+    /**
+     * Clientes conectados en un momento dado. Es inmutable salvo por la lista de usuarios ({@code LST}), que se
+     * codifica la primera vez que se pide y después la comparten todos los que la piden.
+     */
+    public static final class Instantanea {
+        private final List<Cliente> clientes;
+        private final Map<String, Cliente> porAlias;
+        /**
+         * Respuesta {@code LST} codificada, o {@code null} si todavía no se ha pedido. Tiene una referencia propia.
+         */
+        private final AtomicReference<Trama> lista = new AtomicReference<>();
+        private volatile boolean retirada;
+
+        private Instantanea(List<Cliente> clientes) {
+            this.clientes = List.copyOf(clientes);
+            this.porAlias = new HashMap<>(clientes.size() * 2);
+
+            for (Cliente cliente : this.clientes) {
+                porAlias.put(cliente.getAlias(), cliente);
+            }
+        }
+
+        /**
+         * @return Clientes conectados, en el orden en el que entraron. La lista no se puede modificar
+         */
+        public List<Cliente> clientes() {
+            return clientes;
+        }
+
+        /**
+         * @param alias Alias de un usuario
+         * @return Cliente con ese alias, o {@code null} si no está conectado
+         */
+        public Cliente buscar(String alias) {
+            return porAlias.get(alias);
+        }
+
+        /**
+         * Devuelve la respuesta {@code LST} con los alias de los clientes separados por comas.
+         * @return Trama retenida que quien llama debe liberar
+         * @throws IOException Si la lista no cabe en una trama
+         */
+        public Trama lista() throws IOException {
+            Trama codificada = lista.get();
+
+            if (codificada != null && codificada.intentarRetener()) {
+                return codificada;
+            }
+
+            Trama nueva = Trama.de(String.format("%s %s", ServCmd.LST, String.join(",", clientes.stream().map(Cliente::getAlias).toList())));
+
+            // La instantánea conserva una referencia; si otro hilo la ha codificado a la vez, se queda la suya
+            if (lista.compareAndSet(codificada, nueva.retener())) {
+                // Si se ha retirado mientras tanto, nadie más liberará la referencia de la instantánea
+                if (retirada && lista.compareAndSet(nueva, null)) {
+                    nueva.liberar();
+                }
+            } else {
+                nueva.liberar();
+            }
+
+            return nueva;
+        }
+
+        /**
+         * Libera la lista de usuarios codificada al publicarse otra instantánea.
+         */
+        private void retirar() {
+            retirada = true;
+            Trama codificada = lista.getAndSet(null);
+
+            if (codificada != null) {
+                codificada.liberar();
+            }
+        }
+    }
+}
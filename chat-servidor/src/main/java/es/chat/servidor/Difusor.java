@@ -0,0 +1,146 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Clase que se encarga de difundir una respuesta del servidor a un grupo de clientes.
+ * Si el número de destinatarios no supera {@link #UMBRAL}, la respuesta se envía en el hilo que llama.
+ * En caso contrario, los destinatarios se dividen en fragmentos de {@link #TAM_FRAGMENTO} clientes
+ * que se envían en paralelo en un {@code ForkJoinPool} de tamaño acotado.
+ * <p>
+ * La respuesta se codifica una sola vez en una {@link Trama} que comparten todos los destinatarios.
+ * {@link #difundir(List, String)} no vuelve hasta que todos los fragmentos se han encolado, así que
+ * un emisor no puede adelantar su siguiente mensaje al anterior y se conserva el orden de sus mensajes.
+ * Las tramas prescindibles (avisos de que alguien escribe) se envían con {@link Cliente#enviarSiLibre(Trama)},
+ * que las descarta para los destinatarios con la salida congestionada.
+ * <p>
+ * Las respuestas que se difunden con el objeto de sincronización de los {@link Worker} se encolan con
+ * {@link #encolar(List, Trama)}, que nunca se bloquea, y después de soltarlo se pasan a los hilos escritores de
+ * {@link Cliente} con {@link #vaciar(List)}, que tampoco se bloquea: un destinatario que lee despacio no retiene
+ * el objeto de sincronización ni al hilo que difunde.
+ * @see Worker
+ * @see Cliente
+ * @see Trama
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Difusor {
+    public static final int UMBRAL = 256;
+    public static final int TAM_FRAGMENTO = 128;
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private Difusor() {
+    }
+
+    /**
+     * Envía la respuesta a todos los destinatarios. La lista no debe modificarse mientras dure la difusión.
+     * @param destinatarios Clientes que reciben la respuesta
+     * @param respuesta Respuesta a enviar
+     */
+    public static void difundir(List<Cliente> destinatarios, String respuesta) {
+        Trama trama;
+
+        try {
+            trama = Trama.de(respuesta);
+        } catch (IOException e) {
+            System.err.printf("ERROR: %s%n%s%n", respuesta, e.getMessage());
+            return;
+        }
+
+        try {
+            difundir(destinatarios, trama);
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    /**
+     * Envía una trama ya codificada a todos los destinatarios. Quien llama conserva su referencia a la trama.
+     * @param destinatarios Clientes que reciben la trama
+     * @param trama Trama a enviar
+     */
+    public static void difundir(List<Cliente> destinatarios, Trama trama) {
+        difundir(destinatarios, trama, false);
+    }
+
+    /**
+     * Envía una trama ya codificada a todos los destinatarios. Quien llama conserva su referencia a la trama.
+     * @param destinatarios Clientes que reciben la trama
+     * @param trama Trama a enviar
+     * @param prescindible Si es {@code true}, no se envía a los destinatarios con la salida congestionada
+     */
+    public static void difundir(List<Cliente> destinatarios, Trama trama, boolean prescindible) {
+        aplicar(destinatarios, prescindible ? c -> c.enviarSiLibre(trama) : c -> c.enviar(trama));
+    }
+
+    /**
+     * Encola una trama ya codificada para todos los destinatarios sin escribirla. Quien llama conserva su referencia
+     * a la trama y tiene que llamar después a {@link #vaciar(List)}.
+     * @param destinatarios Clientes que reciben la trama
+     * @param trama Trama a encolar
+     */
+    public static void encolar(List<Cliente> destinatarios, Trama trama) {
+        for (Cliente c : destinatarios) {
+            c.encolar(trama);
+        }
+    }
+
+    /**
+     * Programa la escritura de las tramas pendientes de todos los destinatarios en los hilos escritores, sin esperarla.
+     * @param destinatarios Clientes cuyas colas se vacían
+     * @see Cliente#programarVaciado()
+     */
+    public static void vaciar(List<Cliente> destinatarios) {
+        for (Cliente c : destinatarios) {
+            c.programarVaciado();
+        }
+    }
+
+    private static void aplicar(List<Cliente> destinatarios, Consumer<Cliente> accion) {
+        if (destinatarios.size() <= UMBRAL) {
+            destinatarios.forEach(accion);
+            return;
+        }
+
+        POOL.invoke(new Fragmento(destinatarios, 0, destinatarios.size(), accion));
+    }
+
+    /**
+     * Tarea que aplica la acción a los clientes de {@code desde} a {@code hasta} (excluido).
+     * Se divide en dos mientras tenga más de {@link #TAM_FRAGMENTO} clientes. Nunca se serializa, así que la lista y
+     * la acción, que no son serializables, son {@code transient}.
+     */
+    private static class Fragmento extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Cliente> destinatarios;
+        private final int desde;
+        private final int hasta;
+        private final transient Consumer<Cliente> accion;
+
+        Fragmento(List<Cliente> destinatarios, int desde, int hasta, Consumer<Cliente> accion) {
+            this.destinatarios = destinatarios;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.accion = accion;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= TAM_FRAGMENTO) {
+                for (int i = desde; i < hasta; i++) {
+                    accion.accept(destinatarios.get(i));
+                }
+                return;
+            }
+
+            int mitad = (desde + hasta) >>> 1;
+            invokeAll(new Fragmento(destinatarios, desde, mitad, accion),
+                new Fragmento(destinatarios, mitad, hasta, accion));
+        }
+    }
+}
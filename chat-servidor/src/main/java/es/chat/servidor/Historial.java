@@ -0,0 +1,195 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Clase que asigna los números de secuencia de las respuestas que se pueden recuperar al reanudar una sesión
+ * ({@code CHT}, {@code PRV} y {@code PRE}) y guarda las últimas en una ventana circular de tamaño fijo.
+ * <p>
+ * Los números de secuencia son globales y crecientes. Como cada conexión reparte las respuestas en varios
+ * {@link Carril} y entre carriles no se conserva el orden, un cliente que se reconecta indica el último número
+ * que vio en cada carril y recibe solo las respuestas posteriores de cada uno que le correspondan. Si alguna que
+ * le correspondía ya ha salido de la ventana, no se puede reanudar y el cliente tiene que iniciar sesión de nuevo.
+ * Para saberlo se guarda, por carril, el último número descartado de las respuestas para todos y, por alias,
+ * el de las que tenían destinatarios concretos. Las llamadas se hacen con el objeto de sincronización
+ * de la lista de clientes, así que el orden de los números coincide con el orden de envío.
+ * @see Sesiones
+ * @see Worker
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Historial {
+    /**
+     * Respuesta guardada en la ventana.
+     * @param secuencia Número de secuencia
+     * @param carril Carril por el que sale
+     * @param destinatarios Alias que la reciben, o {@code null} si la reciben todos
+     * @param trama Respuesta codificada
+     */
+    private record Entrada(long secuencia, Carril carril, Set<String> destinatarios, Trama trama) {
+        boolean esPara(String alias) {
+            return destinatarios == null || destinatarios.contains(alias);
+        }
+    }
+
+    private final Entrada[] ventana;
+    private long ultimaSecuencia;
+    /**
+     * Último número descartado de la ventana por carril, de las respuestas para todos.
+     */
+    private final long[] descartadasParaTodos = new long[Carril.values().length];
+    /**
+     * Último número descartado de la ventana por carril, de las respuestas con destinatarios, para los últimos alias.
+     */
+    private final Map<String, long[]> descartadasPorAlias;
+    /**
+     * Máximo de los números de los alias que ya no están en {@link #descartadasPorAlias}, que se aplica a todos.
+     */
+    private final long[] descartadasOlvidadas = new long[Carril.values().length];
+
+    public Historial(int capacidad) {
+        this(capacidad, 0);
+    }
+
+    /**
+     * Crea un historial que sigue la numeración de una ejecución anterior. Los números hasta {@code ultimaSecuencia}
+     * cuentan como descartados, así que no se puede reanudar desde ninguno de ellos.
+     * @param capacidad Respuestas que caben en la ventana
+     * @param ultimaSecuencia Último número de secuencia ya usado
+     */
+    public Historial(int capacidad, long ultimaSecuencia) {
+        this.ultimaSecuencia = ultimaSecuencia;
+        Arrays.fill(descartadasParaTodos, ultimaSecuencia);
+        Arrays.fill(descartadasOlvidadas, ultimaSecuencia);
+        ventana = new Entrada[capacidad];
+        descartadasPorAlias = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> mayor) {
+                if (size() <= capacidad) {
+                    return false;
+                }
+
+                for (int i = 0; i < descartadasOlvidadas.length; i++) {
+                    descartadasOlvidadas[i] = Math.max(descartadasOlvidadas[i], mayor.getValue()[i]);
+                }
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return Último número de secuencia asignado, {@code 0} si todavía no se ha asignado ninguno
+     */
+    public synchronized long getUltimaSecuencia() {
+        return ultimaSecuencia;
+    }
+
+    /**
+     * Asigna el siguiente número de secuencia, codifica la respuesta como {@code <comando> <secuencia> <parámetros>}
+     * y la guarda en la ventana, sacando la más antigua si está llena.
+     * @param comando Comando de la respuesta
+     * @param parametros Parámetros de la respuesta
+     * @param destinatarios Alias que la reciben, o {@code null} si la reciben todos
+     * @return Trama de la respuesta. Quien llama tiene una referencia y debe liberarla
+     * @throws IOException Si la respuesta no cabe en una trama
+     */
+    public synchronized Trama registrar(ServCmd comando, String parametros, Set<String> destinatarios) throws IOException {
+        long secuencia = ultimaSecuencia + 1;
+        Trama trama = Trama.de(String.format("%s %d %s", comando, secuencia, parametros));
+        int posicion = (int) (secuencia % ventana.length);
+
+        if (ventana[posicion] != null) {
+            descartar(ventana[posicion]);
+        }
+
+        ventana[posicion] = new Entrada(secuencia, trama.carril(), destinatarios, trama.retener());
+        ultimaSecuencia = secuencia;
+
+        return trama;
+    }
+
+    /**
+     * Devuelve las respuestas que corresponden al alias posteriores, en su carril, a la última que vio, en orden.
+     * @param ultimasVistas Último número de secuencia que recibió el cliente en cada carril, por posición en {@link Carril}
+     * @param alias Alias del cliente
+     * @return Tramas retenidas que quien llama debe liberar, o {@code null} si alguna ya no está en la ventana
+     */
+    public synchronized List<Trama> desde(long[] ultimasVistas, String alias) {
+        long[] descartadasAlias = descartadasPorAlias.getOrDefault(alias, descartadasOlvidadas);
+        long menorVista = Long.MAX_VALUE;
+
+        for (Carril carril : Carril.values()) {
+            if (!carril.isNumerado()) {
+                continue;
+            }
+
+            long vista = ultimasVistas[carril.ordinal()];
+
+            if (vista > ultimaSecuencia || vista < descartadasParaTodos[carril.ordinal()]
+                    || vista < descartadasAlias[carril.ordinal()] || vista < descartadasOlvidadas[carril.ordinal()]) {
+                return null;
+            }
+
+            menorVista = Math.min(menorVista, vista);
+        }
+
+        List<Trama> perdidas = new ArrayList<>();
+        long primeraGuardada = Math.max(1, ultimaSecuencia - ventana.length + 1);
+
+        for (long secuencia = Math.max(menorVista + 1, primeraGuardada); secuencia <= ultimaSecuencia; secuencia++) {
+            Entrada entrada = ventana[(int) (secuencia % ventana.length)];
+
+            if (entrada.secuencia() > ultimasVistas[entrada.carril().ordinal()] && entrada.esPara(alias)) {
+                perdidas.add(entrada.trama().retener());
+            }
+        }
+
+        return perdidas;
+    }
+
+    /**
+     * Saca todas las respuestas de la ventana y libera sus tramas. Se llama al cerrar el servidor, antes de buscar
+     * buffers sin devolver. Después no se puede reanudar desde ningún número anterior, pero se siguen registrando
+     * respuestas.
+     */
+    public synchronized void vaciar() {
+        for (int i = 0; i < ventana.length; i++) {
+            if (ventana[i] != null) {
+                ventana[i].trama().liberar();
+                ventana[i] = null;
+            }
+        }
+
+        Arrays.fill(descartadasParaTodos, ultimaSecuencia);
+        Arrays.fill(descartadasOlvidadas, ultimaSecuencia);
+        descartadasPorAlias.clear();
+    }
+
+    /**
+     * Saca una entrada de la ventana y anota su número como descartado en su carril.
+     * @param entrada Entrada más antigua de la ventana
+     */
+    private void descartar(Entrada entrada) {
+        int carril = entrada.carril().ordinal();
+
+        if (entrada.destinatarios() == null) {
+            descartadasParaTodos[carril] = entrada.secuencia();
+        } else {
+            for (String alias : entrada.destinatarios()) {
+                descartadasPorAlias.computeIfAbsent(alias, a -> descartadasOlvidadas.clone())[carril] = entrada.secuencia();
+            }
+        }
+
+        entrada.trama().liberar();
+    }
+}
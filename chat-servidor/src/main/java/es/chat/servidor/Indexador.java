@@ -0,0 +1,126 @@
+package es.chat.servidor;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.chat.servidor.busqueda.IndiceMensajes;
+import es.chat.servidor.busqueda.MensajeIndexado;
+
+/**
+ * Clase que añade los mensajes al {@link IndiceMensajes} desde un hilo propio, para que el disco no se toque con el
+ * objeto de sincronización de la lista de clientes.
+ * <p>
+ * El {@link Secuenciador} y el {@link Repartidor} numeran los mensajes con el objeto de sincronización y, después de
+ * soltarlo, los dejan en una cola acotada que lee el hilo del indexador. Si el disco va más lento que los mensajes
+ * y la cola se llena, los que no caben se difunden igual pero no se indexan, y se avisa por la salida de errores: la
+ * búsqueda no los encontrará, pero ni los emisores ni los inicios de sesión esperan al disco.
+ * <p>
+ * Al cerrarlo se indexan los mensajes que quedan en la cola y se cierra el índice.
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Indexador implements Closeable {
+    /**
+     * Mensajes que caben en la cola por defecto.
+     */
+    public static final int CAPACIDAD = 1 << 16;
+    private static final long ESPERA_CIERRE_MS = 10_000;
+    /**
+     * Marca que se deja en la cola al cerrar, después de los mensajes pendientes.
+     */
+    private static final MensajeIndexado FIN = new MensajeIndexado(-1, 0, "", null, "");
+
+    private final IndiceMensajes indice;
+    private final BlockingQueue<MensajeIndexado> cola;
+    /**
+     * Mensajes descartados con la cola llena desde el último aviso.
+     */
+    private final AtomicLong descartados = new AtomicLong();
+    private Thread hilo;
+
+    /**
+     * @param indice Índice en el que se añaden los mensajes
+     * @param capacidad Mensajes que caben en la cola
+     */
+    public Indexador(IndiceMensajes indice, int capacidad) {
+        this.indice = indice;
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+    }
+
+    /**
+     * @return Índice en el que se añaden los mensajes
+     */
+    public IndiceMensajes getIndice() {
+        return indice;
+    }
+
+    /**
+     * Empieza a indexar los mensajes en un hilo propio.
+     */
+    public void iniciar() {
+        Thread t = new Thread(this::consumir, "indexador");
+        t.setDaemon(true);
+        hilo = t;
+        t.start();
+    }
+
+    /**
+     * Deja un mensaje para indexarlo. No espera nunca: si la cola está llena, el mensaje no se indexa.
+     * @param mensaje Mensaje numerado
+     */
+    public void indexar(MensajeIndexado mensaje) {
+        if (!cola.offer(mensaje) && descartados.getAndIncrement() == 0) {
+            System.err.printf("ERROR: la cola del índice de búsqueda está llena, los mensajes nuevos no se indexan%n");
+        }
+    }
+
+    private void consumir() {
+        while (true) {
+            MensajeIndexado mensaje;
+
+            try {
+                mensaje = cola.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (mensaje == FIN) {
+                return;
+            }
+
+            long perdidos = descartados.getAndSet(0);
+
+            if (perdidos > 0) {
+                System.err.printf("Se han quedado sin indexar %d mensajes por la cola del índice de búsqueda llena%n", perdidos);
+            }
+
+            indice.indexar(mensaje);
+        }
+    }
+
+    /**
+     * Indexa los mensajes que quedan en la cola, espera a que termine el hilo y cierra el índice.
+     */
+    @Override
+    public void close() {
+        Thread t = hilo;
+
+        if (t != null) {
+            try {
+                if (cola.offer(FIN, ESPERA_CIERRE_MS, TimeUnit.MILLISECONDS)) {
+                    t.join(ESPERA_CIERRE_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            t.interrupt();
+        }
+
+        indice.close();
+    }
+}
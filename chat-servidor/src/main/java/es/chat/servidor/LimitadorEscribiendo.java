@@ -0,0 +1,68 @@
+package es.chat.servidor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decide qué avisos de "escribiendo" ({@code ESC}) de un cliente se reenvían. Cada {@link Worker} tiene el suyo y
+ * solo lo usa su hilo, así que no necesita sincronización.
+ * <p>
+ * Los avisos repetidos al mismo chat dentro de la ventana se agrupan en el primero: el cliente los envía mientras
+ * se escribe y los demás solo necesitan saber que sigue escribiendo. El cliente los repite cada media ventana, así
+ * que si uno llega un poco antes de que termine la ventana y se descarta, el siguiente pasa media ventana después:
+ * los destinatarios reciben uno al menos cada ventana y media, antes de que caduque el anterior (a las dos ventanas).
+ * Además, un cubo de fichas limita el total de avisos del cliente a una ráfaga de {@link #MAX_RAFAGA} y uno cada
+ * {@link #MS_POR_AVISO} ms, aunque cambie de chat.
+ * @see Worker
+ * @version 1.0
+ * @author Adrián González
+ */
+final class LimitadorEscribiendo {
+    static final int MAX_RAFAGA = 4;
+    static final long MS_POR_AVISO = 500;
+    /**
+     * Número de chats a partir del cual se olvidan los que llevan más de una ventana sin avisos.
+     */
+    private static final int MAX_CHATS = 64;
+
+    private final long ventana;
+    private final Map<String, Long> ultimosAvisos = new HashMap<>();
+    private double fichas = MAX_RAFAGA;
+    private long ultimaRecarga;
+
+    /**
+     * @param ventana Milisegundos en los que se agrupan los avisos al mismo chat
+     */
+    LimitadorEscribiendo(long ventana) {
+        this.ventana = ventana;
+    }
+
+    /**
+     * @param chat Chat del aviso: alias del destinatario, o {@code *} si es el general
+     * @param ahora Instante actual en milisegundos
+     * @return {@code true} si el aviso se debe reenviar, {@code false} si se descarta
+     */
+    boolean permitir(String chat, long ahora) {
+        Long ultimo = ultimosAvisos.get(chat);
+
+        if (ultimo != null && ahora - ultimo < ventana) {
+            return false;
+        }
+
+        fichas = Math.min(MAX_RAFAGA, fichas + (double) (ahora - ultimaRecarga) / MS_POR_AVISO);
+        ultimaRecarga = ahora;
+
+        if (fichas < 1) {
+            return false;
+        }
+
+        fichas--;
+
+        if (ultimosAvisos.size() >= MAX_CHATS) {
+            ultimosAvisos.values().removeIf(t -> ahora - t >= ventana);
+        }
+
+        ultimosAvisos.put(chat, ahora);
+        return true;
+    }
+}
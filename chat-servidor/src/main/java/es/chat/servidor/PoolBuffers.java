@@ -0,0 +1,251 @@
+package es.chat.servidor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.chat.util.Configuracion;
+
+/**
+ * Pool de {@code ByteBuffer} directos que usa la capa de conexión del servidor para leer comandos y codificar tramas.
+ * <p>
+ * Los buffers se agrupan por clases de tamaño ({@link #CLASES}); se presta el de la clase más pequeña en la que cabe
+ * lo pedido. Cada hilo guarda unos pocos buffers devueltos de cada clase en una caché propia y el resto va a una lista
+ * libre compartida, que guarda como mucho {@link #BYTES_LIBRES_POR_CLASE} bytes por clase: los que no caben se sueltan
+ * para que los recoja el recolector, y así un pico de carga no deja la memoria reservada para siempre. Cuando una
+ * clase se queda sin buffers se reserva un bloque ({@link #BUFFERS_POR_BLOQUE} buffers de golpe) y se trocea. Lo que
+ * no cabe en la clase más grande se reserva sin pasar por el pool.
+ * <p>
+ * Lleva la cuenta de aciertos (buffers reutilizados), fallos (buffers nuevos) y bytes prestados sin devolver.
+ * Con {@code -Dchat.buffers.fugas=true} guarda además dónde se prestó cada buffer para poder mostrar los que no se
+ * han devuelto con {@link #comprobarFugas()}.
+ * @see Trama
+ * @see Cliente
+ * @version 1.0
+ * @author Adrián González
+ */
+public class PoolBuffers {
+    /**
+     * Capacidades de las clases de tamaño. La última admite la trama más grande: dos bytes de longitud y 65535 de texto.
+     */
+    static final int[] CLASES = {64, 256, 1024, 4096, 16384, 65537};
+    static final int BUFFERS_POR_BLOQUE = 16;
+    /**
+     * Bytes que puede guardar cada hilo por clase en su caché (al menos un buffer).
+     */
+    private static final int BYTES_CACHE_HILO = 64 * 1024;
+    /**
+     * Bytes que puede guardar la lista libre compartida de cada clase (al menos un bloque).
+     */
+    static final int BYTES_LIBRES_POR_CLASE = 4 * 1024 * 1024;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Queue<ByteBuffer>[] LIBRES = new Queue[CLASES.length];
+    /**
+     * Buffers en cada lista libre, porque {@link ConcurrentLinkedQueue#size()} las recorre enteras.
+     */
+    private static final AtomicInteger[] NUM_LIBRES = new AtomicInteger[CLASES.length];
+    private static final ThreadLocal<ArrayDeque<ByteBuffer>[]> CACHE_HILO = ThreadLocal.withInitial(PoolBuffers::nuevaCache);
+
+    private static final AtomicLong aciertos = new AtomicLong();
+    private static final AtomicLong fallos = new AtomicLong();
+    private static final AtomicLong bytesPrestados = new AtomicLong();
+
+    private static final boolean DETECTAR_FUGAS = Configuracion.detectarFugas();
+    private static final Map<ByteBuffer, Throwable> prestados = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    static {
+        for (int i = 0; i < CLASES.length; i++) {
+            LIBRES[i] = new ConcurrentLinkedQueue<>();
+            NUM_LIBRES[i] = new AtomicInteger();
+        }
+    }
+
+    private PoolBuffers() {
+    }
+
+    /**
+     * Presta un buffer directo de al menos {@code tamano} bytes, con la posición a 0 y el límite en {@code tamano}.
+     * @param tamano Número de bytes que se necesitan
+     * @return Buffer prestado, que hay que devolver con {@link #devolver(ByteBuffer)}
+     */
+    public static ByteBuffer prestar(int tamano) {
+        int clase = clase(tamano);
+        ByteBuffer buffer;
+
+        if (clase < 0) {
+            fallos.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(tamano);
+        } else {
+            buffer = CACHE_HILO.get()[clase].pollLast();
+
+            if (buffer == null) {
+                buffer = LIBRES[clase].poll();
+
+                if (buffer != null) {
+                    NUM_LIBRES[clase].decrementAndGet();
+                }
+            }
+
+            if (buffer != null) {
+                aciertos.incrementAndGet();
+            } else {
+                fallos.incrementAndGet();
+                buffer = reservarBloque(clase);
+            }
+        }
+
+        buffer.clear().limit(tamano);
+        bytesPrestados.addAndGet(buffer.capacity());
+
+        if (DETECTAR_FUGAS) {
+            prestados.put(buffer, new Throwable("Buffer de " + buffer.capacity() + " bytes prestado aquí"));
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Devuelve al pool un buffer prestado. Después de devolverlo no se puede usar ni él ni ninguna vista suya.
+     * @param buffer Buffer prestado con {@link #prestar(int)}
+     */
+    public static void devolver(ByteBuffer buffer) {
+        if (DETECTAR_FUGAS && prestados.remove(buffer) == null) {
+            throw new IllegalStateException("Se devuelve un buffer que no está prestado");
+        }
+
+        bytesPrestados.addAndGet(-buffer.capacity());
+        int clase = claseExacta(buffer.capacity());
+
+        if (clase < 0) {
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> cache = CACHE_HILO.get()[clase];
+
+        if (cache.size() < capacidadCache(clase)) {
+            cache.addLast(buffer);
+        } else if (NUM_LIBRES[clase].incrementAndGet() <= maximoLibres(clase)) {
+            LIBRES[clase].add(buffer);
+        } else {
+            // La lista está llena: el buffer se suelta y su bloque se libera cuando no quede ninguno en uso
+            NUM_LIBRES[clase].decrementAndGet();
+        }
+    }
+
+    public static long getAciertos() {
+        return aciertos.get();
+    }
+
+    public static long getFallos() {
+        return fallos.get();
+    }
+
+    public static long getBytesPrestados() {
+        return bytesPrestados.get();
+    }
+
+    /**
+     * @return Resumen de las métricas del pool
+     */
+    public static String estadisticas() {
+        long a = aciertos.get();
+        long f = fallos.get();
+        return String.format("Pool de buffers: %d aciertos, %d fallos (%.1f%% aciertos), %d bytes prestados",
+            a, f, a + f == 0 ? 0.0 : 100.0 * a / (a + f), bytesPrestados.get());
+    }
+
+    /**
+     * Muestra por consola dónde se prestaron los buffers que siguen sin devolver. Solo tiene efecto con
+     * {@code -Dchat.buffers.fugas=true}.
+     * @return Número de buffers sin devolver, {@code 0} si la detección de fugas no está activada
+     */
+    public static int comprobarFugas() {
+        if (!DETECTAR_FUGAS) {
+            return 0;
+        }
+
+        synchronized (prestados) {
+            prestados.values().forEach(Throwable::printStackTrace);
+            return prestados.size();
+        }
+    }
+
+    /**
+     * Reserva un bloque de buffers de una clase, se queda con uno y deja el resto en la lista libre compartida.
+     * @param clase Índice de la clase de tamaño
+     * @return Buffer del nuevo bloque
+     */
+    private static ByteBuffer reservarBloque(int clase) {
+        int capacidad = CLASES[clase];
+        ByteBuffer bloque = ByteBuffer.allocateDirect(capacidad * BUFFERS_POR_BLOQUE);
+
+        for (int i = 1; i < BUFFERS_POR_BLOQUE; i++) {
+            LIBRES[clase].add(bloque.slice(i * capacidad, capacidad));
+        }
+
+        NUM_LIBRES[clase].addAndGet(BUFFERS_POR_BLOQUE - 1);
+
+        return bloque.slice(0, capacidad);
+    }
+
+    /**
+     * @param tamano Número de bytes
+     * @return Índice de la clase más pequeña en la que caben, o {@code -1} si no caben en ninguna
+     */
+    private static int clase(int tamano) {
+        for (int i = 0; i < CLASES.length; i++) {
+            if (tamano <= CLASES[i]) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param capacidad Capacidad de un buffer
+     * @return Índice de la clase con esa capacidad, o {@code -1} si el buffer no es del pool
+     */
+    private static int claseExacta(int capacidad) {
+        int clase = clase(capacidad);
+        return clase >= 0 && CLASES[clase] == capacidad ? clase : -1;
+    }
+
+    private static int capacidadCache(int clase) {
+        return Math.max(1, BYTES_CACHE_HILO / CLASES[clase]);
+    }
+
+    /**
+     * @param clase Índice de la clase de tamaño
+     * @return Buffers que caben en la lista libre compartida de la clase
+     */
+    static int maximoLibres(int clase) {
+        return Math.max(BUFFERS_POR_BLOQUE, BYTES_LIBRES_POR_CLASE / CLASES[clase]);
+    }
+
+    /**
+     * @param clase Índice de la clase de tamaño
+     * @return Buffers que hay ahora en la lista libre compartida de la clase
+     */
+    static int libres(int clase) {
+        return NUM_LIBRES[clase].get();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<ByteBuffer>[] nuevaCache() {
+        ArrayDeque<ByteBuffer>[] cache = new ArrayDeque[CLASES.length];
+
+        for (int i = 0; i < CLASES.length; i++) {
+            cache[i] = new ArrayDeque<>();
+        }
+
+        return cache;
+    }
+}
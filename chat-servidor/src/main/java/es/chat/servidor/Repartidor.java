@@ -0,0 +1,97 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import es.chat.modelo.comando.ServCmd;
+import es.chat.servidor.busqueda.MensajeIndexado;
+import es.chat.servidor.tuberia.Mensaje;
+import es.chat.servidor.tuberia.Tuberia;
+
+/**
+ * Clase que entrega los mensajes que salen de la {@link Tuberia}: los generales los publica en el {@link Secuenciador}
+ * y los privados los numera en el {@link Historial} y los encola para el destinatario y el emisor con el objeto de
+ * sincronización de la lista de clientes. Después de soltarlo pide que se escriban y los deja en el {@link Indexador}.
+ * <p>
+ * Como entre que el {@link Worker} recibe un mensaje privado y se entrega puede pasar un tiempo, el destinatario y el
+ * emisor se vuelven a buscar en la instantánea de los clientes {@link Conectados}. Si el destinatario ya no está, el
+ * mensaje se pierde, igual que si no estuviera al enviarlo.
+ * @see Tuberia
+ * @see Worker
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Repartidor {
+    private final Conectados conectados;
+    private final Object lock;
+    private final Historial historial;
+    private final Indexador indexador;
+    private final Secuenciador secuenciador;
+
+    /**
+     * @param conectados Clientes conectados
+     * @param lock Objeto de sincronización de la lista de clientes
+     * @param historial Historial en el que se numeran los mensajes privados
+     * @param indexador Indexador de los mensajes para la búsqueda
+     * @param secuenciador Secuenciador de los mensajes generales
+     */
+    public Repartidor(Conectados conectados, Object lock, Historial historial, Indexador indexador, Secuenciador secuenciador) {
+        this.conectados = conectados;
+        this.lock = lock;
+        this.historial = historial;
+        this.indexador = indexador;
+        this.secuenciador = secuenciador;
+    }
+
+    /**
+     * Entrega un mensaje general o privado.
+     * @param mensaje Mensaje que ha pasado la tubería
+     */
+    public void entregar(Mensaje mensaje) {
+        if (mensaje.esPrivado()) {
+            entregarPrivado(mensaje);
+        } else {
+            secuenciador.publicar(mensaje.emisor(), mensaje.texto());
+            System.out.printf("Mensaje de %s: %s%n", mensaje.emisor(), mensaje.texto());
+        }
+    }
+
+    private void entregarPrivado(Mensaje mensaje) {
+        Conectados.Instantanea instantanea = conectados.instantanea();
+        Cliente destinatario = instantanea.buscar(mensaje.destinatario());
+        Cliente emisor = instantanea.buscar(mensaje.emisor());
+
+        if (destinatario == null || destinatario.equals(emisor)) {
+            return;
+        }
+
+        List<Cliente> destinatarios = emisor != null ? List.of(destinatario, emisor) : List.of(destinatario);
+        Set<String> aliasDestinatarios = Set.copyOf(destinatarios.stream().map(Cliente::getAlias).toList());
+        String parametros = String.format("%s %s %s", mensaje.emisor(), mensaje.destinatario(), mensaje.texto());
+        long tiempo = System.currentTimeMillis();
+        Trama trama;
+        long secuencia;
+
+        synchronized (lock) {
+            try {
+                trama = historial.registrar(ServCmd.PRV, parametros, aliasDestinatarios);
+                secuencia = historial.getUltimaSecuencia();
+            } catch (IOException e) {
+                System.err.printf("ERROR: %s %s%n%s%n", ServCmd.PRV, parametros, e.getMessage());
+                return;
+            }
+
+            try {
+                Difusor.encolar(destinatarios, trama);
+            } finally {
+                trama.liberar();
+            }
+        }
+
+        Difusor.vaciar(destinatarios);
+        indexador.indexar(new MensajeIndexado(secuencia, tiempo, mensaje.emisor(), mensaje.destinatario(), mensaje.texto()));
+
+        System.out.printf("Mensaje privado de %s a %s: %s%n", mensaje.emisor(), mensaje.destinatario(), mensaje.texto());
+    }
+}
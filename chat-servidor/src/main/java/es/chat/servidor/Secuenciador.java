@@ -0,0 +1,228 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import es.chat.modelo.comando.ServCmd;
+import es.chat.servidor.busqueda.MensajeIndexado;
+
+/**
+ * Clase que ordena los mensajes generales de todos los clientes y los difunde desde un solo hilo.
+ * <p>
+ * Los {@link Worker} publican cada mensaje en un anillo de tamaño fijo reservado al crearlo, sin objeto de
+ * sincronización: reservan su posición con un incremento atómico, rellenan la ranura y la marcan como publicada.
+ * El hilo del secuenciador es el único que lee el anillo. Recoge todos los mensajes publicados seguidos (hasta
+ * {@link #MAX_LOTE}) y con el objeto de sincronización de la lista de clientes solo los numera en el {@link Historial}
+ * y toma la instantánea de los clientes {@link Conectados}, una vez por lote. Después, sin él, los encola para todos,
+ * pide que se escriban las colas y los deja en el {@link Indexador}, que los añade al índice de búsqueda desde su
+ * propio hilo: el disco nunca se toca con el objeto de sincronización.
+ * <p>
+ * Como un solo hilo encola los mensajes generales, todos los clientes los reciben en el mismo orden, el de su número.
+ * Si el anillo está lleno, el {@link Worker} que publica espera a que quede sitio, lo que frena al cliente que envía.
+ * @see Worker
+ * @see Difusor
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Secuenciador {
+    /**
+     * Número máximo de mensajes que se numeran con una sola toma del objeto de sincronización.
+     */
+    public static final int MAX_LOTE = 256;
+    /**
+     * Vueltas que da el hilo del secuenciador comprobando el anillo antes de dormirse.
+     */
+    private static final int VUELTAS_ANTES_DE_DORMIR = 200;
+
+    /**
+     * Ranura del anillo. Se reutiliza: solo la escribe el {@link Worker} que ha reservado su posición y solo la lee
+     * el hilo del secuenciador después de que se publique.
+     */
+    private static final class Ranura {
+        private String alias;
+        private String mensaje;
+        private long instante;
+    }
+
+    private final Ranura[] anillo;
+    private final int mascara;
+    /**
+     * Posición publicada en cada ranura, o {@code -1} si todavía no se ha publicado ninguna.
+     */
+    private final AtomicLongArray publicadas;
+    /**
+     * Siguiente posición que reservará un {@link Worker}.
+     */
+    private final AtomicLong siguiente = new AtomicLong();
+    /**
+     * Siguiente posición que leerá el secuenciador. Las anteriores ya se pueden reutilizar.
+     */
+    private final AtomicLong leida = new AtomicLong();
+    private final Conectados conectados;
+    private final Object lock;
+    private final Historial historial;
+    private final Indexador indexador;
+    private final Trama[] tramas = new Trama[MAX_LOTE];
+    private final MensajeIndexado[] indexados = new MensajeIndexado[MAX_LOTE];
+    private volatile Thread hilo;
+    private volatile boolean durmiendo;
+
+    /**
+     * @param capacidad Número de ranuras del anillo, se redondea a la siguiente potencia de dos
+     * @param conectados Clientes conectados
+     * @param lock Objeto de sincronización de la lista de clientes
+     * @param historial Historial en el que se numeran los mensajes
+     * @param indexador Indexador de los mensajes para la búsqueda
+     */
+    public Secuenciador(int capacidad, Conectados conectados, Object lock, Historial historial, Indexador indexador) {
+        int tamano = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+
+        this.anillo = new Ranura[tamano];
+        this.mascara = tamano - 1;
+        this.publicadas = new AtomicLongArray(tamano);
+        this.conectados = conectados;
+        this.lock = lock;
+        this.historial = historial;
+        this.indexador = indexador;
+
+        for (int i = 0; i < tamano; i++) {
+            anillo[i] = new Ranura();
+            publicadas.set(i, -1);
+        }
+    }
+
+    /**
+     * Empieza a difundir los mensajes en un hilo propio.
+     */
+    public void iniciar() {
+        Thread t = new Thread(this::consumir, "secuenciador");
+        t.setDaemon(true);
+        hilo = t;
+        t.start();
+    }
+
+    /**
+     * Publica un mensaje general. Vuelve en cuanto está en el anillo, antes de que se difunda.
+     * @param alias Alias del emisor
+     * @param mensaje Mensaje
+     */
+    public void publicar(String alias, String mensaje) {
+        long posicion = siguiente.getAndIncrement();
+
+        // Anillo lleno: se espera a que el secuenciador lea la posición que ocupaba esta ranura
+        while (posicion - leida.get() >= anillo.length) {
+            LockSupport.parkNanos(50_000);
+        }
+
+        Ranura ranura = anillo[(int) posicion & mascara];
+        ranura.alias = alias;
+        ranura.mensaje = mensaje;
+        ranura.instante = System.currentTimeMillis();
+        publicadas.set((int) posicion & mascara, posicion);
+
+        if (durmiendo) {
+            despertar();
+        }
+    }
+
+    private void despertar() {
+        Thread t = hilo;
+
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Bucle del hilo del secuenciador: espera a que haya mensajes publicados y los difunde por lotes.
+     */
+    private void consumir() {
+        int vueltas = 0;
+
+        while (true) {
+            long primera = leida.get();
+            int n = 0;
+
+            while (n < MAX_LOTE && publicadas.get((int) (primera + n) & mascara) == primera + n) {
+                n++;
+            }
+
+            if (n > 0) {
+                vueltas = 0;
+
+                try {
+                    difundir(primera, n);
+                } catch (RuntimeException e) {
+                    System.err.printf("ERROR al difundir mensajes%n%s%n", e);
+                }
+
+                continue;
+            }
+
+            if (++vueltas < VUELTAS_ANTES_DE_DORMIR) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            // Se anuncia que se duerme antes de volver a mirar, para no perder la llamada de un Worker que publica ahora
+            durmiendo = true;
+
+            if (publicadas.get((int) primera & mascara) != primera) {
+                LockSupport.park(this);
+            }
+
+            durmiendo = false;
+            vueltas = 0;
+        }
+    }
+
+    /**
+     * Numera y difunde un lote de mensajes publicados, libera sus ranuras y los deja para indexar.
+     * @param primera Posición del primer mensaje del lote
+     * @param n Número de mensajes del lote
+     */
+    private void difundir(long primera, int n) {
+        List<Cliente> destinatarios;
+        int numTramas = 0;
+
+        synchronized (lock) {
+            destinatarios = conectados.instantanea().clientes();
+
+            for (int i = 0; i < n; i++) {
+                Ranura ranura = anillo[(int) (primera + i) & mascara];
+
+                try {
+                    tramas[numTramas] = historial.registrar(ServCmd.CHT, String.format("%s %s", ranura.alias, ranura.mensaje), null);
+                    indexados[numTramas] = new MensajeIndexado(historial.getUltimaSecuencia(), ranura.instante, ranura.alias, null, ranura.mensaje);
+                    numTramas++;
+                } catch (IOException e) {
+                    System.err.printf("ERROR: %s %s %s%n%s%n", ServCmd.CHT, ranura.alias, ranura.mensaje, e.getMessage());
+                }
+
+                ranura.alias = null;
+                ranura.mensaje = null;
+            }
+        }
+
+        leida.set(primera + n);
+
+        for (int i = 0; i < numTramas; i++) {
+            try {
+                Difusor.encolar(destinatarios, tramas[i]);
+            } finally {
+                tramas[i].liberar();
+                tramas[i] = null;
+            }
+        }
+
+        Difusor.vaciar(destinatarios);
+
+        for (int i = 0; i < numTramas; i++) {
+            indexador.indexar(indexados[i]);
+            indexados[i] = null;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package es.chat.servidor;
+
+import es.chat.servidor.busqueda.IndiceMensajes;
+import es.chat.servidor.tuberia.Etapa;
+import es.chat.servidor.tuberia.Tuberia;
+import es.chat.util.Configuracion;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Clase que inicia el servidor y acepta conexiones de clientes.
+ * Crea un hilo {@code Worker} por cada {@code Cliente} que se conecta.
+ * <p>
+ * Escucha con varios hilos aceptadores ({@code chat.aceptadores}). Si el sistema admite {@code SO_REUSEPORT}
+ * (Linux), cada aceptador tiene su propio socket de escucha en el mismo puerto y el núcleo reparte las conexiones;
+ * si no, todos aceptan del mismo socket. Los aceptadores solo aceptan: el {@code Cliente} se crea ya en el hilo
+ * de su {@code Worker}. El puerto y el tamaño de la cola de conexiones pendientes se configuran con
+ * {@code chat.puerto} y {@code chat.backlog}.
+ * <p>
+ * Con {@code chat.medirArranque}, en cuanto empieza a aceptar se conecta una vez a sí mismo, muestra el tiempo
+ * transcurrido desde que arrancó la JVM y termina. Sirve para medir el arranque y para generar el archivo AppCDS
+ * de la imagen del servidor (perfil {@code imagen} de {@code chat-servidor}).
+ * <p>
+ * Con {@code chat.captura} graba los comandos que recibe en una {@link Captura}, que se cierra al apagar el servidor.
+ * <p>
+ * Las etapas de la {@link Tuberia} de mensajes se registran al arrancar, las indicadas en {@code chat.tuberia}. Al
+ * apagar el servidor se muestran sus estadísticas.
+ * @see Worker
+ * @see Cliente
+ * @see Configuracion
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Servidor {
+    public static void main(String[] args) {
+        Conectados conectados = new Conectados();
+        Object lock = new Object();
+        Sesiones sesiones = new Sesiones(Configuracion.sesiones());
+        IndiceMensajes indice;
+        Indexador indexador;
+        Tuberia tuberia;
+        AlmacenAdjuntos adjuntos;
+        Captura captura = null;
+        ExecutorService hilosSesion = Executors.newCachedThreadPool();
+        int puerto = Configuracion.puerto();
+        int numAceptadores = Configuracion.aceptadores();
+        List<ServerSocketChannel> sockets;
+
+        try {
+            indice = new IndiceMensajes(Configuracion.directorioBusqueda(), Configuracion.capacidadBusqueda());
+        } catch (IOException e) {
+            System.out.println("No se puede abrir el índice de búsqueda: " + e.getMessage());
+            System.exit(-1);
+            return;
+        }
+
+        if (indice.tamano() > 0) {
+            System.out.printf("Índice de búsqueda: %d mensajes recuperados de %s%n", indice.tamano(), Configuracion.directorioBusqueda());
+        }
+
+        // Los números de secuencia siguen a los de los mensajes recuperados, para que no se repitan en las búsquedas
+        Historial historial = new Historial(Configuracion.historial(), indice.getUltimaSecuencia());
+        AgrupadorPresencia presencia = new AgrupadorPresencia(conectados, lock, historial);
+
+        indexador = new Indexador(indice, Indexador.CAPACIDAD);
+        Secuenciador secuenciador = new Secuenciador(Configuracion.secuenciador(), conectados, lock, historial, indexador);
+        Repartidor repartidor = new Repartidor(conectados, lock, historial, indexador, secuenciador);
+
+        try {
+            adjuntos = new AlmacenAdjuntos(Configuracion.directorioAdjuntos(), Configuracion.maximoAdjunto());
+        } catch (IOException e) {
+            System.out.println("No se puede crear el directorio de adjuntos: " + e.getMessage());
+            System.exit(-1);
+            return;
+        }
+
+        try {
+            tuberia = new Tuberia(Tuberia.cargar(Configuracion.tuberia()), Configuracion.hilosTuberia(),
+                Configuracion.capacidadTuberia(), Configuracion.limiteTuberia(), repartidor::entregar);
+        } catch (IllegalArgumentException | ServiceConfigurationError e) {
+            System.out.println("No se pueden cargar las etapas de la tubería: " + e.getMessage());
+            System.exit(-1);
+            return;
+        }
+
+        if (Configuracion.captura() != null) {
+            try {
+                captura = Captura.abrir(Configuracion.captura());
+                System.out.println("Grabando captura: " + Configuracion.captura());
+            } catch (IOException e) {
+                System.out.println("No se puede crear el archivo de captura: " + e.getMessage());
+                System.exit(-1);
+                return;
+            }
+        }
+
+        try {
+            sockets = abrirSockets(puerto, Configuracion.backlog(), numAceptadores);
+        } catch (IOException e) {
+            System.out.println("No puede escuchar en el puerto: " + puerto);
+            System.exit(-1);
+            return;
+        }
+
+        presencia.iniciar(Configuracion.ventanaPresencia());
+        indexador.iniciar();
+        secuenciador.iniciar();
+        tuberia.iniciar();
+
+        if (!tuberia.getEtapas().isEmpty()) {
+            System.out.println("Etapas de la tubería: " + tuberia.getEtapas().stream().map(Etapa::nombre).toList());
+        }
+
+        Captura capturaServidor = captura;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (capturaServidor != null) {
+                capturaServidor.close();
+            }
+
+            indexador.close();
+
+            if (!tuberia.getEtapas().isEmpty()) {
+                System.out.println(tuberia.estadisticas());
+            }
+
+            System.out.println(PoolBuffers.estadisticas());
+
+            // Las tramas de la ventana del historial se retienen hasta que salen de ella: no son fugas
+            historial.vaciar();
+
+            int fugas = PoolBuffers.comprobarFugas();
+
+            if (fugas > 0) {
+                System.err.printf("Buffers sin devolver al cerrar: %d%n", fugas);
+            }
+        }));
+
+        List<Thread> aceptadores = new ArrayList<>();
+
+        for (int i = 0; i < numAceptadores; i++) {
+            ServerSocketChannel socketServidor = sockets.get(i % sockets.size());
+            Thread aceptador = new Thread(() -> aceptar(socketServidor, conectados, lock, historial, sesiones, presencia, tuberia, indice, adjuntos, capturaServidor, hilosSesion), "aceptador-" + i);
+            aceptador.start();
+            aceptadores.add(aceptador);
+        }
+
+        if (Configuracion.medirArranque()) {
+            medirPrimeraConexion(sockets.get(0));
+            System.exit(0);
+        }
+
+        for (Thread aceptador : aceptadores) {
+            try {
+                aceptador.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Abre una conexión con el propio servidor y muestra cuánto ha tardado desde que arrancó la JVM. También carga
+     * las clases del camino de aceptación para que entren en el archivo AppCDS.
+     * @param socketServidor Socket de escucha del servidor
+     */
+    private static void medirPrimeraConexion(ServerSocketChannel socketServidor) {
+        try {
+            int puerto = ((InetSocketAddress) socketServidor.getLocalAddress()).getPort();
+            SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto)).close();
+            long ahora = System.currentTimeMillis();
+            // La hora de arranque se consulta después para no contar la carga de las clases de gestión
+            long inicio = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.printf("Primera conexión establecida tras %d ms%n", ahora - inicio);
+        } catch (IOException e) {
+            System.err.printf("ERROR al conectar con el servidor%n%s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Abre los sockets de escucha. Con {@code SO_REUSEPORT} abre uno por aceptador, si no, uno solo.
+     * @param puerto Puerto en el que escuchar
+     * @param backlog Conexiones pendientes de aceptar que admite cada socket
+     * @param aceptadores Número de hilos aceptadores
+     * @return Sockets de escucha abiertos
+     * @throws IOException Si no se puede escuchar en el puerto
+     */
+    private static List<ServerSocketChannel> abrirSockets(int puerto, int backlog, int aceptadores) throws IOException {
+        List<ServerSocketChannel> sockets = new ArrayList<>();
+        ServerSocketChannel primero = ServerSocketChannel.open();
+        boolean reutilizarPuerto = aceptadores > 1
+            && primero.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        int numSockets = reutilizarPuerto ? aceptadores : 1;
+
+        for (int i = 0; i < numSockets; i++) {
+            ServerSocketChannel socketServidor = i == 0 ? primero : ServerSocketChannel.open();
+
+            try {
+                socketServidor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+
+                if (reutilizarPuerto) {
+                    socketServidor.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+
+                socketServidor.bind(new InetSocketAddress(puerto), backlog);
+            } catch (IOException e) {
+                cerrar(socketServidor);
+                sockets.forEach(Servidor::cerrar);
+                throw e;
+            }
+
+            System.out.println("Escuchando: " + socketServidor);
+            sockets.add(socketServidor);
+        }
+
+        return sockets;
+    }
+
+    /**
+     * Acepta conexiones mientras el socket esté abierto y pasa cada una a un hilo de sesión,
+     * que crea el {@code Cliente} y ejecuta su {@code Worker}.
+     * @param socketServidor Socket de escucha
+     * @param conectados Clientes conectados
+     * @param lock Objeto de sincronización con el que se modifican los clientes conectados
+     * @param historial Historial de respuestas numeradas
+     * @param sesiones Tokens de sesión
+     * @param presencia Agrupador de las entradas y salidas de usuarios
+     * @param tuberia Tubería de los mensajes generales y privados
+     * @param indice Índice de búsqueda de mensajes
+     * @param adjuntos Almacén de adjuntos
+     * @param captura Captura del tráfico, o {@code null} si no se graba
+     * @param hilosSesion Hilos de sesión
+     */
+    private static void aceptar(ServerSocketChannel socketServidor, Conectados conectados, Object lock,
+                                Historial historial, Sesiones sesiones, AgrupadorPresencia presencia, Tuberia tuberia,
+                                IndiceMensajes indice, AlmacenAdjuntos adjuntos, Captura captura, ExecutorService hilosSesion) {
+        while (socketServidor.isOpen()) {
+            try {
+                SocketChannel canalCliente = socketServidor.accept();
+                hilosSesion.execute(() -> new Worker(new Cliente(canalCliente), conectados, lock, historial, sesiones, presencia, tuberia, indice, adjuntos, captura).run());
+            } catch (IOException e) {
+                System.out.println("IOException: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void cerrar(ServerSocketChannel socketServidor) {
+        try {
+            socketServidor.close();
+        } catch (IOException e) {
+            System.out.println("IOException: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package es.chat.servidor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Clase que guarda los tokens de sesión entregados al iniciar sesión, para que un cliente que se reconecta
+ * pueda reanudar su sesión con {@code REA}. Cada token se puede usar una sola vez: al reanudar se entrega uno nuevo.
+ * Solo se guardan los {@code capacidad} tokens más recientes, los más antiguos se descartan.
+ * @see Historial
+ * @see Worker
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Sesiones {
+    private final Map<String, String> aliasPorToken;
+
+    public Sesiones(int capacidad) {
+        aliasPorToken = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /**
+     * Crea un token de sesión para el alias.
+     * @param alias Alias del cliente
+     * @return Token de sesión
+     */
+    public synchronized String abrir(String alias) {
+        String token = UUID.randomUUID().toString();
+        aliasPorToken.put(token, alias);
+        return token;
+    }
+
+    /**
+     * Consume un token de sesión.
+     * @param token Token de sesión
+     * @return Alias de la sesión, o {@code null} si el token no existe o ya se descartó
+     */
+    public synchronized String reanudar(String token) {
+        return aliasPorToken.remove(token);
+    }
+}
@@ -0,0 +1,195 @@
+package es.chat.servidor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Clase que representa una respuesta del servidor ya codificada tal y como la escribe
+ * {@code DataOutputStream.writeUTF} (dos bytes de longitud seguidos del texto en UTF-8 modificado),
+ * por lo que el cliente la sigue leyendo con {@code readUTF}.
+ * <p>
+ * El contenido se guarda una sola vez en un {@code ByteBuffer} directo prestado por el {@link PoolBuffers}
+ * que comparten todas las colas de salida de los destinatarios. Cada cola obtiene su propia vista de solo lectura
+ * con {@link #vista()}, sin copiar el contenido. La trama lleva un contador de referencias: quien la crea tiene
+ * la primera, cada cola que la encola llama a {@link #retener()} y todos llaman a {@link #liberar()} al terminar.
+ * Al liberar la última referencia el buffer vuelve al pool.
+ * <p>
+ * Cada trama sabe por qué {@link Carril} sale, según el comando de la respuesta.
+ * <p>
+ * Las tramas de los trozos de adjuntos ({@link #deArchivo(String, Path, long, int)}) solo guardan en el buffer los dos
+ * bytes de longitud y la cabecera; el resto de la trama es una parte de un archivo del {@link AlmacenAdjuntos}, que ya
+ * está codificado en Base64 y se escribe en el canal con {@code FileChannel.transferTo}, sin copiarlo a la JVM.
+ * @see Cliente
+ * @see Difusor
+ * @see PoolBuffers
+ * @version 1.0
+ * @author Adrián González
+ */
+public final class Trama {
+    private final ByteBuffer buffer;
+    private final ByteBuffer contenido;
+    private final Carril carril;
+    private final Path archivo;
+    private final long posicion;
+    private final int longitudArchivo;
+    private final AtomicInteger referencias = new AtomicInteger(1);
+
+    private Trama(ByteBuffer buffer, Carril carril, Path archivo, long posicion, int longitudArchivo) {
+        this.buffer = buffer;
+        this.contenido = buffer.asReadOnlyBuffer();
+        this.carril = carril;
+        this.archivo = archivo;
+        this.posicion = posicion;
+        this.longitudArchivo = longitudArchivo;
+    }
+
+    /**
+     * Codifica una respuesta en una nueva trama con una referencia.
+     * @param respuesta Respuesta a codificar
+     * @return Trama con la respuesta codificada
+     * @throws IOException Si la respuesta no cabe en una trama (más de 65535 bytes codificada)
+     */
+    public static Trama de(String respuesta) throws IOException {
+        int longitud = UtfModificado.longitud(respuesta);
+
+        if (longitud > UtfModificado.LONGITUD_MAXIMA) {
+            throw new UTFDataFormatException("Respuesta demasiado larga: " + longitud + " bytes");
+        }
+
+        int finComando = respuesta.indexOf(' ');
+        Carril carril = Carril.de(ServCmd.valueOf(finComando < 0 ? respuesta : respuesta.substring(0, finComando)));
+        ByteBuffer buffer = PoolBuffers.prestar(longitud + 2);
+        UtfModificado.codificar(respuesta, longitud, buffer);
+        buffer.flip();
+
+        return new Trama(buffer, carril, null, 0, 0);
+    }
+
+    /**
+     * Crea una trama cuyo texto es la cabecera seguida de una parte de un archivo, que debe contener solo caracteres ASCII.
+     * @param cabecera Comienzo de la respuesta, hasta el espacio anterior a la parte del archivo
+     * @param archivo Archivo con el resto de la respuesta
+     * @param posicion Posición de la parte en el archivo
+     * @param longitudArchivo Bytes de la parte
+     * @return Trama con una referencia
+     * @throws IOException Si la respuesta no cabe en una trama
+     */
+    public static Trama deArchivo(String cabecera, Path archivo, long posicion, int longitudArchivo) throws IOException {
+        int longitud = UtfModificado.longitud(cabecera);
+
+        if (longitud + longitudArchivo > UtfModificado.LONGITUD_MAXIMA) {
+            throw new UTFDataFormatException("Respuesta demasiado larga: " + (longitud + longitudArchivo) + " bytes");
+        }
+
+        Carril carril = Carril.de(ServCmd.valueOf(cabecera.substring(0, cabecera.indexOf(' '))));
+        ByteBuffer buffer = PoolBuffers.prestar(longitud + 2);
+        UtfModificado.codificar(cabecera, longitud, buffer);
+        buffer.putShort(0, (short) (longitud + longitudArchivo));
+        buffer.flip();
+
+        return new Trama(buffer, carril, archivo, posicion, longitudArchivo);
+    }
+
+    /**
+     * @return Carril por el que sale la trama
+     */
+    public Carril carril() {
+        return carril;
+    }
+
+    /**
+     * Devuelve una vista del contenido con su propia posición, lista para escribirse en un canal.
+     * @return Vista de solo lectura del contenido
+     */
+    public ByteBuffer vista() {
+        return contenido.duplicate();
+    }
+
+    /**
+     * @return Número de bytes de la trama que están en el buffer (sin la parte del archivo, si la hay)
+     */
+    public int longitud() {
+        return contenido.remaining();
+    }
+
+    /**
+     * @return {@code true} si parte de la trama está en un archivo y hay que escribirla con {@link #transferir(WritableByteChannel)}
+     */
+    public boolean tieneArchivo() {
+        return archivo != null;
+    }
+
+    /**
+     * Escribe en el canal la parte de la trama que está en el archivo, después de escribir la {@link #vista()}.
+     * @param canal Canal de destino
+     * @throws IOException Si falla la lectura del archivo o la escritura en el canal
+     */
+    public void transferir(WritableByteChannel canal) throws IOException {
+        try (FileChannel origen = FileChannel.open(archivo)) {
+            long transferidos = 0;
+
+            while (transferidos < longitudArchivo) {
+                long n = origen.transferTo(posicion + transferidos, longitudArchivo - transferidos, canal);
+
+                if (n == 0 && origen.size() < posicion + longitudArchivo) {
+                    throw new EOFException("Adjunto truncado: " + archivo);
+                }
+
+                transferidos += n;
+            }
+        }
+    }
+
+    /**
+     * Añade una referencia a la trama.
+     * @return La propia trama
+     */
+    public Trama retener() {
+        if (referencias.getAndIncrement() <= 0) {
+            throw new IllegalStateException("Trama ya liberada");
+        }
+
+        return this;
+    }
+
+    /**
+     * Añade una referencia a la trama si todavía no se ha liberado la última. Sirve para tramas compartidas que otro
+     * hilo puede estar liberando a la vez, como la lista de usuarios de una {@link Conectados.Instantanea}.
+     * @return {@code true} si se ha retenido, {@code false} si ya estaba liberada
+     */
+    public boolean intentarRetener() {
+        int actuales;
+
+        do {
+            actuales = referencias.get();
+
+            if (actuales <= 0) {
+                return false;
+            }
+        } while (!referencias.compareAndSet(actuales, actuales + 1));
+
+        return true;
+    }
+
+    /**
+     * Quita una referencia a la trama. Al quitar la última, el buffer vuelve al pool.
+     */
+    public void liberar() {
+        int restantes = referencias.decrementAndGet();
+
+        if (restantes == 0) {
+            PoolBuffers.devolver(buffer);
+        } else if (restantes < 0) {
+            throw new IllegalStateException("Trama liberada más veces de las retenidas");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package es.chat.servidor;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codifica y decodifica texto en el UTF-8 modificado de {@code DataOutputStream.writeUTF} y
+ * {@code DataInputStream.readUTF}, pero sobre {@code ByteBuffer} del {@link PoolBuffers}, sin crear
+ * un {@code byte[]} intermedio por cada trama.
+ * @see Trama
+ * @see Cliente
+ * @version 1.0
+ * @author Adrián González
+ */
+public class UtfModificado {
+    public static final int LONGITUD_MAXIMA = 65535;
+
+    private UtfModificado() {
+    }
+
+    /**
+     * @param texto Texto a codificar
+     * @return Número de bytes que ocupa el texto codificado, sin los dos bytes de longitud
+     */
+    public static int longitud(String texto) {
+        int longitud = texto.length();
+
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+
+            if (c >= 0x80 || c == 0) {
+                longitud += c >= 0x800 ? 2 : 1;
+            }
+        }
+
+        return longitud;
+    }
+
+    /**
+     * Escribe en el buffer la longitud (dos bytes) y el texto codificado, igual que {@code writeUTF}.
+     * @param texto Texto a codificar
+     * @param longitud Longitud del texto codificado, calculada con {@link #longitud(String)}
+     * @param destino Buffer con al menos {@code longitud + 2} bytes libres
+     * @throws UTFDataFormatException Si el texto codificado ocupa más de {@link #LONGITUD_MAXIMA} bytes
+     */
+    public static void codificar(String texto, int longitud, ByteBuffer destino) throws UTFDataFormatException {
+        if (longitud > LONGITUD_MAXIMA) {
+            throw new UTFDataFormatException("Texto demasiado largo: " + longitud + " bytes");
+        }
+
+        destino.putShort((short) longitud);
+
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+
+            if (c != 0 && c < 0x80) {
+                destino.put((byte) c);
+            } else if (c < 0x800) {
+                destino.put((byte) (0xC0 | (c >> 6)));
+                destino.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                destino.put((byte) (0xE0 | (c >> 12)));
+                destino.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                destino.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Decodifica todos los bytes que quedan en el buffer, igual que {@code readUTF} una vez leída la longitud.
+     * @param origen Buffer con el texto codificado
+     * @param caracteres Array de trabajo con al menos {@code origen.remaining()} posiciones
+     * @return Texto decodificado
+     * @throws UTFDataFormatException Si los bytes no son UTF-8 modificado válido
+     */
+    public static String decodificar(ByteBuffer origen, char[] caracteres) throws UTFDataFormatException {
+        int n = 0;
+
+        while (origen.hasRemaining()) {
+            int a = origen.get() & 0xFF;
+
+            if (a < 0x80) {
+                caracteres[n++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = continuacion(origen);
+                caracteres[n++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0) {
+                int b = continuacion(origen);
+                int c = continuacion(origen);
+                caracteres[n++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Byte no válido: " + a);
+            }
+        }
+
+        return new String(caracteres, 0, n);
+    }
+
+    private static int continuacion(ByteBuffer origen) throws UTFDataFormatException {
+        if (!origen.hasRemaining()) {
+            throw new UTFDataFormatException("Texto incompleto");
+        }
+
+        int b = origen.get() & 0xFF;
+
+        if ((b & 0xC0) != 0x80) {
+            throw new UTFDataFormatException("Byte de continuación no válido: " + b);
+        }
+
+        return b;
+    }
+}
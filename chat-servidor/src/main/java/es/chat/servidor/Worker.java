@@ -0,0 +1,580 @@
+package es.chat.servidor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.chat.modelo.Adjunto;
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.CliCmd;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.servidor.busqueda.Consulta;
+import es.chat.servidor.busqueda.IndiceMensajes;
+import es.chat.servidor.busqueda.MensajeIndexado;
+import es.chat.servidor.busqueda.ResultadoBusqueda;
+import es.chat.servidor.tuberia.Mensaje;
+import es.chat.servidor.tuberia.Tuberia;
+import es.chat.util.Configuracion;
+import es.chat.util.Validar;
+
+/**
+ * Clase que implementa la interfaz Runnable y se encarga de gestionar los comandos
+ * enviados por un cliente. Se ejecuta en un hilo independiente por cada cliente.
+ * Tiene acceso a los clientes {@link Conectados} y al objeto de sincronización con el que se modifican, que
+ * también fija el orden de las respuestas numeradas. Las lecturas de la lista ({@code LUS}, la búsqueda del
+ * destinatario de un mensaje privado y los avisos de que el cliente escribe) usan la instantánea actual sin él.
+ * <p>
+ * Las respuestas {@code CHT}, {@code PRV} y {@code PRE} se numeran y se guardan en el {@link Historial}
+ * para que un cliente que se reconecta con su token de {@link Sesiones} reciba solo lo que se perdió. Las entradas y
+ * salidas de usuarios no se notifican al momento: se anotan en el {@link AgrupadorPresencia}, que las envía agrupadas.
+ * Los mensajes generales y privados se añaden además al {@link IndiceMensajes} para poder buscarlos con {@code BUS}.
+ * Con el objeto de sincronización las respuestas solo se encolan, lo que fija su orden, y se escriben después de soltarlo.
+ * Los mensajes generales y privados no toman el objeto de sincronización en este hilo: se dejan en la {@link Tuberia},
+ * que los pasa por sus etapas y los entrega al {@link Repartidor} desde las suyas. Los generales los numera y los
+ * difunde por lotes el {@link Secuenciador}.
+ * <p>
+ * Los avisos de que el cliente está escribiendo ({@code ESC}) no se numeran ni se guardan: pasan por un
+ * {@link LimitadorEscribiendo} y se envían como tramas prescindibles, que se descartan antes que las demás si
+ * la salida de un destinatario está congestionada.
+ * <p>
+ * Los adjuntos se suben en trozos ({@code SUB} y {@code TRZ}) al {@link AlmacenAdjuntos} sin tomar el objeto de
+ * sincronización, así que un cliente que sube un archivo sigue pudiendo enviar mensajes entre trozo y trozo. Las descargas
+ * ({@code DES}) encolan una ventana de trozos que salen por el carril de adjuntos, después de los mensajes.
+ * <p>
+ * Si el servidor graba una {@link Captura}, cada comando recibido, cada token de sesión y el cierre de la conexión
+ * se graban con el número de conexión del {@link Worker}.
+ * @see Historial
+ * @see Sesiones
+ * @see Conectados
+ * @see AgrupadorPresencia
+ * @see Tuberia
+ * @see Repartidor
+ * @see IndiceMensajes
+ * @see AlmacenAdjuntos
+ * @see Captura
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Worker implements Runnable {
+    private static final int MAX_TEXTO_RESULTADO = 500;
+
+    private final Cliente cliente;
+    private final Conectados conectados;
+    private final Object lock;
+    private final Historial historial;
+    private final Sesiones sesiones;
+    private final AgrupadorPresencia presencia;
+    private final Tuberia tuberia;
+    private final IndiceMensajes indice;
+    private final AlmacenAdjuntos adjuntos;
+    /**
+     * Captura del tráfico, o {@code null} si no se graba.
+     */
+    private final Captura captura;
+    private final int conexion;
+    private final LimitadorEscribiendo limitadorEscribiendo = new LimitadorEscribiendo(Configuracion.ventanaEscribiendo());
+
+    /**
+     * Adjunto que está subiendo el cliente, o {@code null}. Solo hay uno a la vez.
+     */
+    private AlmacenAdjuntos.Subida subida;
+
+    public Worker(Cliente cliente, Conectados conectados, Object lock, Historial historial, Sesiones sesiones,
+                  AgrupadorPresencia presencia, Tuberia tuberia, IndiceMensajes indice, AlmacenAdjuntos adjuntos,
+                  Captura captura) {
+        this.cliente = cliente;
+        this.conectados = conectados;
+        this.lock = lock;
+        this.historial = historial;
+        this.sesiones = sesiones;
+        this.presencia = presencia;
+        this.tuberia = tuberia;
+        this.indice = indice;
+        this.adjuntos = adjuntos;
+        this.captura = captura;
+        this.conexion = captura != null ? captura.nuevaConexion() : 0;
+    }
+
+    /**
+     * Se ejecuta al iniciar el hilo. Lee los comandos enviados por el cliente
+     * y ejecuta la acción correspondiente. En caso de error, desconecta al cliente.
+     */
+    @Override
+    public void run() {
+        try {
+            CliCmd comando = null;
+
+            while (comando != CliCmd.EXI) {
+                String comandoRecibido = cliente.leerComando();
+
+                if (captura != null) {
+                    captura.trama(conexion, comandoRecibido);
+                }
+
+                if (!validarComando(comandoRecibido)) {
+                    continue;
+                }
+
+                String[] splitComandoParametros = comandoRecibido.split(" ", 2);
+                comando = CliCmd.valueOf(splitComandoParametros[0]);
+                String parametros = splitComandoParametros.length == 2 ? splitComandoParametros[1] : "";
+
+                ejecutarComando(comando, parametros);
+            } 
+        } catch (IOException e) {
+            if (cliente.getAlias() != null) {
+                desconectar(); // Desconectar cliente en caso de error
+            }
+        } finally {
+            cerrarSubida();
+
+            if (captura != null) {
+                captura.cierre(conexion);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta el comando recibido por el cliente.
+     * @param comando Comando recibido
+     * @param parametros Parámetros del comando
+     */
+    private void ejecutarComando(CliCmd comando, String parametros) {
+        switch (comando) {
+            case PRV -> enviarMensajePrivado(parametros);
+            case EXI -> {
+                cancelarSubida(); // Al salir, el cliente abandona sus subidas
+                desconectar();
+            }
+            case LUS -> pedirListaUsuarios();
+            case MSG -> enviarMensajeGeneral(parametros);
+            case CON -> iniciarSesion(parametros);
+            case REA -> reanudarSesion(parametros);
+            case BUS -> buscar(parametros);
+            case ESC -> avisarEscribiendo(parametros);
+            case SUB -> subirAdjunto(parametros);
+            case TRZ -> recibirTrozo(parametros);
+            case DES -> descargarAdjunto(parametros);
+        }
+    }
+
+    /**
+     * Valida el comando recibido por el cliente. Si el comando no es válido, muestra un mensaje de error.
+     * @param comandoRecibido Comando recibido
+     * @return {@code true} si el comando es válido, {@code false} en caso contrario
+     */
+    private boolean validarComando(String comandoRecibido) {
+        if (Validar.comandoParametros(comandoRecibido)) {
+            return true;
+        }
+        
+        System.err.printf("COMANDO NO VÁLIDO. %s: %s%n",
+            cliente.getAlias() == null ? "Nueva conexión" : cliente.getAlias(), comandoRecibido);
+
+        return false;
+    }
+
+    /**
+     * Inicia la sesión del cliente con el alias especificado. Si el alias ya está en uso o no es válido,
+     * no se inicia la sesión y se envía un mensaje de error al cliente. En caso contrario, se inicia la sesión
+     * y se envía un mensaje de confirmación con el token de sesión al cliente y se anota su llegada para los demás.
+     * @param alias Alias del cliente
+     */
+    private void iniciarSesion(String alias) {
+        if (cliente.getAlias() != null) {
+            cliente.enviarRespuesta(String.format("%s %s", ServCmd.NOK, "Ya estás conectado"));
+            System.err.printf("Cliente ya conectado: %s%n", cliente.getAlias());
+            return;
+        }
+
+        if (!Validar.alias(alias)) {
+            cliente.enviarRespuesta(String.format("%s %s", ServCmd.NOK, "Alias no válido"));
+            System.err.printf("Alias no válido: %s%n", alias);
+            return;
+        }
+
+        synchronized (lock) {
+            if (conectados.instantanea().buscar(alias) != null) {
+                cliente.enviarRespuesta(String.format("%s %s", ServCmd.NOK, "Alias ya en uso"));
+                System.err.printf("Alias en uso: %s%n", alias);
+                return;
+            }
+
+            cliente.setAlias(alias);
+            entrar("¡Conectado!");
+        }
+
+        System.out.printf("Cliente conectado: %s%n", cliente.getAlias());
+    }
+
+    /**
+     * Reanuda la sesión indicada por el token. Si el token no existe, el alias está en uso o alguna de las
+     * respuestas posteriores a la última que vio el cliente ya no está en el historial, se envía un mensaje
+     * de error y el cliente tiene que iniciar sesión con {@code CON}. En caso contrario, se envía la confirmación,
+     * las respuestas que se perdió el cliente y se anota su llegada para los demás clientes.
+     * @param parametros Token de sesión y último número de secuencia recibido en cada carril numerado
+     */
+    private void reanudarSesion(String parametros) {
+        if (cliente.getAlias() != null) {
+            cliente.enviarRespuesta(String.format("%s %s", ServCmd.NOK, "Ya estás conectado"));
+            System.err.printf("Cliente ya conectado: %s%n", cliente.getAlias());
+            return;
+        }
+
+        String[] splitTokenSecuencias = parametros.split(" ");
+        long[] ultimasVistas = new long[Carril.values().length];
+        int posicion = 1;
+
+        for (Carril carril : Carril.values()) {
+            if (carril.isNumerado()) {
+                ultimasVistas[carril.ordinal()] = Long.parseLong(splitTokenSecuencias[posicion++]);
+            }
+        }
+
+        synchronized (lock) {
+            String alias = sesiones.reanudar(splitTokenSecuencias[0]);
+            List<Trama> perdidas = alias == null ? null : historial.desde(ultimasVistas, alias);
+
+            if (perdidas == null || conectados.instantanea().buscar(alias) != null) {
+                if (perdidas != null) {
+                    perdidas.forEach(Trama::liberar);
+                }
+
+                cliente.enviarRespuesta(String.format("%s %s", ServCmd.NOK, "Sesión caducada"));
+                System.err.printf("No se puede reanudar la sesión: %s%n", alias == null ? "token desconocido" : alias);
+                return;
+            }
+
+            cliente.setAlias(alias);
+            entrar("¡Reconectado!");
+
+            for (Trama trama : perdidas) {
+                cliente.encolar(trama);
+                trama.liberar();
+            }
+
+            System.out.printf("Sesión reanudada: %s (%d mensajes pendientes)%n", alias, perdidas.size());
+        }
+
+        cliente.vaciar();
+    }
+
+    /**
+     * Envía al cliente la confirmación con un nuevo token de sesión y el último número de secuencia, lo añade a la
+     * lista y anota su llegada. Se llama con el objeto de sincronización.
+     * @param mensaje Mensaje de la confirmación
+     */
+    private void entrar(String mensaje) {
+        String token = sesiones.abrir(cliente.getAlias());
+
+        if (captura != null) {
+            captura.sesion(conexion, token);
+        }
+
+        cliente.enviarRespuesta(String.format("%s %s %d %s", ServCmd.OK, token, historial.getUltimaSecuencia(), mensaje));
+        conectados.anadir(cliente);
+        presencia.entrar(cliente.getAlias());
+    }
+
+    /**
+     * Envía un mensaje general a todos los clientes conectados. Se deja en la {@link Tuberia}, y al salir de ella el
+     * {@link Secuenciador} lo numera y lo difunde en su hilo.
+     * @param mensaje Mensaje a enviar
+     */
+    private void enviarMensajeGeneral(String mensaje) {
+        if (cliente.getAlias() == null) {
+            return;
+        }
+
+        tuberia.enviar(new Mensaje(cliente.getAlias(), null, mensaje));
+    }
+
+    /**
+     * Envía la lista de usuarios conectados al cliente. La respuesta ya codificada la comparten todos los que
+     * la piden mientras no cambie la lista.
+     */
+    private void pedirListaUsuarios() {
+        Trama lista;
+
+        try {
+            lista = conectados.instantanea().lista();
+        } catch (IOException e) {
+            System.err.printf("ERROR: %s%n%s%n", ServCmd.LST, e.getMessage());
+            return;
+        }
+
+        try {
+            if (cliente.enviar(lista)) {
+                System.out.printf("Lista de usuarios enviada a %s%n", cliente.getAlias());
+            }
+        } finally {
+            lista.liberar();
+        }
+    }
+
+    /**
+     * Desconecta al cliente y anota su salida para los demás clientes.
+     */
+    private void desconectar() {
+        synchronized (lock) {
+            if (conectados.quitar(cliente)) {
+                presencia.salir(cliente.getAlias());
+            }
+        }
+
+        System.out.printf("Cliente desconectado: %s%n", cliente.getAlias());
+    }
+
+    /**
+     * Envía un mensaje privado al destinatario especificado. Si el destinatario no existe
+     * o es el propio cliente, no se envía el mensaje. En caso contrario, se envía el mensaje
+     * al destinatario y al cliente que lo envió después de pasar por la {@link Tuberia}. El destinatario se busca sin
+     * el objeto de sincronización.
+     * @param parametros Destinatario y mensaje
+     */
+    private void enviarMensajePrivado(String parametros) {
+        if (cliente.getAlias() == null) {
+            return;
+        }
+
+        String[] splitDestinatarioMensaje = parametros.split(" ", 2);
+        String aliasDestinatario = splitDestinatarioMensaje[0];
+        String mensaje = splitDestinatarioMensaje[1];
+
+        Cliente destinatario = conectados.instantanea().buscar(aliasDestinatario);
+
+        if (destinatario == null || cliente.equals(destinatario)) {
+            return;
+        }
+
+        tuberia.enviar(new Mensaje(cliente.getAlias(), aliasDestinatario, mensaje));
+    }
+
+    /**
+     * Avisa de que el cliente está escribiendo en el chat general (a todos los demás) o en un chat privado
+     * (solo al destinatario). Los avisos que no pasan el {@link LimitadorEscribiendo} se descartan. Los destinatarios
+     * se toman de la instantánea de los clientes conectados, sin el objeto de sincronización, para no retrasar
+     * a los mensajes.
+     * @param aliasDestinatario Alias del destinatario, o vacío si es el chat general
+     */
+    private void avisarEscribiendo(String aliasDestinatario) {
+        String alias = cliente.getAlias();
+        boolean general = aliasDestinatario.isEmpty();
+
+        if (alias == null || alias.equals(aliasDestinatario)
+                || !limitadorEscribiendo.permitir(general ? "*" : aliasDestinatario, System.currentTimeMillis())) {
+            return;
+        }
+
+        List<Cliente> destinatarios;
+
+        if (general) {
+            List<Cliente> todos = conectados.instantanea().clientes();
+            destinatarios = new ArrayList<>(todos.size());
+
+            for (Cliente c : todos) {
+                if (c != cliente) {
+                    destinatarios.add(c);
+                }
+            }
+        } else {
+            Cliente destinatario = conectados.instantanea().buscar(aliasDestinatario);
+            destinatarios = destinatario == null ? List.of() : List.of(destinatario);
+        }
+
+        if (destinatarios.isEmpty()) {
+            return;
+        }
+
+        Trama trama;
+
+        try {
+            trama = Trama.de(String.format("%s %s %s", ServCmd.ESC, alias, general ? "*" : aliasDestinatario));
+        } catch (IOException e) {
+            System.err.printf("ERROR: %s %s%n%s%n", ServCmd.ESC, alias, e.getMessage());
+            return;
+        }
+
+        try {
+            Difusor.difundir(destinatarios, trama, true);
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    /**
+     * Empieza o continúa la subida de un adjunto. Si ya está guardado (o es un archivo vacío), responde directamente
+     * con {@code FIN}; si no, con {@code SUB} y la posición desde la que el cliente tiene que enviar los trozos.
+     * Una subida anterior sin terminar se cierra.
+     * @param parametros Hash y tamaño del adjunto
+     */
+    private void subirAdjunto(String parametros) {
+        if (cliente.getAlias() == null) {
+            return;
+        }
+
+        String[] splitHashTamano = parametros.split(" ");
+        String hash = splitHashTamano[0];
+
+        cerrarSubida();
+
+        if (adjuntos.existe(hash)) {
+            cliente.enviarRespuesta(String.format("%s %s", ServCmd.FIN, hash));
+            return;
+        }
+
+        try {
+            subida = adjuntos.empezar(hash, Long.parseLong(splitHashTamano[1]), cliente.getAlias());
+
+            if (subida.getRecibidos() == Long.parseLong(splitHashTamano[1])) {
+                terminarSubida();
+                return;
+            }
+
+            cliente.enviarRespuesta(String.format("%s %s %d", ServCmd.SUB, hash, subida.getRecibidos()));
+        } catch (IOException e) {
+            cliente.enviarRespuesta(String.format("%s %s %s", ServCmd.FIN, hash, e.getMessage()));
+            System.err.printf("No se puede subir el adjunto %s de %s: %s%n", hash, cliente.getAlias(), e.getMessage());
+        }
+    }
+
+    /**
+     * Añade un trozo al adjunto que se está subiendo. Al recibir el último, lo guarda y responde con {@code FIN}.
+     * Si otro usuario ha terminado de subir el mismo adjunto mientras tanto, la subida se cancela y se responde con
+     * {@code FIN} sin error. Si el trozo no es válido, se cancela la subida y se responde con {@code FIN} y el motivo.
+     * @param parametros Hash, posición del trozo y contenido en Base64
+     */
+    private void recibirTrozo(String parametros) {
+        String[] splitHashDesplazamientoDatos = parametros.split(" ", 3);
+        String hash = splitHashDesplazamientoDatos[0];
+
+        if (subida == null || !subida.getHash().equals(hash)) {
+            cliente.enviarRespuesta(String.format("%s %s %s", ServCmd.FIN, hash, "Subida no iniciada"));
+            return;
+        }
+
+        if (adjuntos.existe(hash)) {
+            cancelarSubida();
+            cliente.enviarRespuesta(String.format("%s %s", ServCmd.FIN, hash));
+            return;
+        }
+
+        try {
+            if (subida.escribir(Long.parseLong(splitHashDesplazamientoDatos[1]), splitHashDesplazamientoDatos[2])) {
+                terminarSubida();
+            }
+        } catch (IOException e) {
+            cancelarSubida();
+            cliente.enviarRespuesta(String.format("%s %s %s", ServCmd.FIN, hash, e.getMessage()));
+            System.err.printf("Subida de %s cancelada: %s%n", cliente.getAlias(), e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el adjunto recibido completo y responde con {@code FIN}.
+     * @throws IOException Si el contenido no corresponde al hash o falla el disco
+     */
+    private void terminarSubida() throws IOException {
+        String hash = subida.getHash();
+        AlmacenAdjuntos.Subida terminada = subida;
+
+        subida = null;
+        terminada.terminar();
+        cliente.enviarRespuesta(String.format("%s %s", ServCmd.FIN, hash));
+        System.out.printf("Adjunto subido por %s: %s%n", cliente.getAlias(), hash);
+    }
+
+    private void cerrarSubida() {
+        if (subida != null) {
+            subida.cerrar();
+            subida = null;
+        }
+    }
+
+    private void cancelarSubida() {
+        if (subida != null) {
+            subida.cancelar();
+            subida = null;
+        }
+    }
+
+    /**
+     * Encola hasta {@link Adjunto#TROZOS_POR_DESCARGA} trozos del adjunto a partir de la posición pedida. Cada trama
+     * {@code TRZ} lleva la parte del archivo codificado que le corresponde, que se escribe desde el disco al enviarla.
+     * Tras el último trozo del adjunto se envía {@code FIN}; si el cliente necesita más, vuelve a pedir con {@code DES}.
+     * @param parametros Hash y posición, múltiplo de {@link Adjunto#TAM_TROZO}
+     */
+    private void descargarAdjunto(String parametros) {
+        if (cliente.getAlias() == null) {
+            return;
+        }
+
+        String[] splitHashDesplazamiento = parametros.split(" ");
+        String hash = splitHashDesplazamiento[0];
+        long desplazamiento = Long.parseLong(splitHashDesplazamiento[1]);
+        Path ruta = adjuntos.ruta(hash);
+
+        try {
+            if (!adjuntos.existe(hash) || desplazamiento % Adjunto.TAM_TROZO != 0) {
+                cliente.enviarRespuesta(String.format("%s %s %s", ServCmd.FIN, hash, "Adjunto no encontrado"));
+                return;
+            }
+
+            long longitud = Files.size(ruta);
+            long posicion = Adjunto.posicionCodificada(desplazamiento);
+
+            for (int i = 0; i < Adjunto.TROZOS_POR_DESCARGA && posicion < longitud; i++) {
+                int longitudTrozo = (int) Math.min(AlmacenAdjuntos.TAM_TROZO_CODIFICADO, longitud - posicion);
+                Trama trama = Trama.deArchivo(String.format("%s %s %d ", ServCmd.TRZ, hash, desplazamiento), ruta, posicion, longitudTrozo);
+
+                try {
+                    if (!cliente.enviar(trama)) {
+                        return;
+                    }
+                } finally {
+                    trama.liberar();
+                }
+
+                posicion += longitudTrozo;
+                desplazamiento += Adjunto.TAM_TROZO;
+            }
+
+            if (posicion >= longitud) {
+                cliente.enviarRespuesta(String.format("%s %s", ServCmd.FIN, hash));
+            }
+        } catch (IOException e) {
+            cliente.enviarRespuesta(String.format("%s %s %s", ServCmd.FIN, hash, e.getMessage()));
+            System.err.printf("ERROR al descargar el adjunto %s%n%s%n", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * Busca en el índice los mensajes que cumplen la consulta y que el cliente puede ver, y le envía la página pedida.
+     * La respuesta tiene una primera línea con la página y el total y una línea por mensaje con su número de secuencia,
+     * el instante de envío, el emisor, el destinatario ({@code *} si es un mensaje general) y el texto,
+     * recortado a {@link #MAX_TEXTO_RESULTADO} caracteres para que la página quepa en una trama.
+     * @param parametros Página y consulta
+     */
+    private void buscar(String parametros) {
+        if (cliente.getAlias() == null) {
+            return;
+        }
+
+        String[] splitPaginaConsulta = parametros.split(" ", 2);
+        int pagina = Integer.parseInt(splitPaginaConsulta[0]);
+        ResultadoBusqueda resultado = indice.buscar(Consulta.de(splitPaginaConsulta[1]), cliente.getAlias(), pagina);
+        StringBuilder respuesta = new StringBuilder(String.format("%s %d %d", ServCmd.BUS, pagina, resultado.total()));
+
+        for (MensajeIndexado m : resultado.mensajes()) {
+            String texto = m.texto().length() > MAX_TEXTO_RESULTADO ? m.texto().substring(0, MAX_TEXTO_RESULTADO) : m.texto();
+            respuesta.append('\n').append(String.format("%d %d %s %s %s", m.secuencia(), m.tiempo(), m.emisor(),
+                m.destinatario() == null ? "*" : m.destinatario(), texto.replace('\n', ' ')));
+        }
+
+        if (cliente.enviarRespuesta(respuesta.toString())) {
+            System.out.printf("Búsqueda de %s: %s (%d resultados)%n", cliente.getAlias(), splitPaginaConsulta[1], resultado.total());
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package es.chat.servidor.busqueda;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Almacén en disco de los mensajes del {@link IndiceMensajes}. Los mensajes se guardan seguidos en archivos de
+ * {@code documentosPorTramo} documentos (tramos) y en memoria solo queda, por documento, su posición en el archivo,
+ * su instante y si es privado. Los tramos más antiguos se borran enteros con {@link #descartarTramo()}.
+ * <p>
+ * Cada tramo empieza con {@link #MAGIA} y {@link #VERSION} y sigue con un registro por documento: número de
+ * secuencia, instante, emisor, destinatario (vacío si es general) y texto. Las escrituras pasan por un buffer que se
+ * vuelca al archivo cuando se llena, al cambiar de tramo y al cerrar, y los documentos que todavía están en él se
+ * leen de ahí. No se sincroniza: el índice escribe con su cerrojo de escritura y lee con el de lectura, así que las
+ * lecturas pueden ser concurrentes entre sí pero nunca con una escritura.
+ * <p>
+ * Los tramos se conservan al cerrar. Al crear el almacén se recuperan los de la ejecución anterior: se leen enteros
+ * y se pasa cada documento a quien lo crea para que lo vuelva a indexar. Si el proceso terminó de golpe, lo que no
+ * llegó a volcarse se pierde y un último registro a medias se corta. Los tramos que no se pueden recuperar (con otra
+ * versión, o incompletos y seguidos de otros) se borran junto con los anteriores, para que los identificadores de
+ * los documentos sigan siendo consecutivos.
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+class AlmacenDocumentos implements Closeable {
+    /**
+     * Primeros bytes de cada tramo ({@code CHDX}).
+     */
+    static final int MAGIA = 0x43484458;
+    static final int VERSION = 1;
+    private static final int TAM_CABECERA = 5;
+    private static final int TAM_BUFFER = 64 * 1024;
+    private static final String EXTENSION = ".docs";
+
+    private final Path directorio;
+    private final int documentosPorTramo;
+    /**
+     * Tramos guardados, del más antiguo al más reciente. Solo el último puede no estar lleno.
+     */
+    private final List<Tramo> tramos = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(TAM_BUFFER);
+    private final ByteArrayOutputStream codificado = new ByteArrayOutputStream(256);
+    private final DataOutputStream salida = new DataOutputStream(codificado);
+    private int primerDocumento;
+    private int finDocumento;
+    private long ultimoTiempo = Long.MIN_VALUE;
+    private long ultimaSecuencia;
+
+    /**
+     * @param directorio Directorio de los tramos. Se crea si no existe
+     * @param documentosPorTramo Documentos de cada archivo
+     * @param recuperado Recibe cada documento recuperado de una ejecución anterior con su identificador, en orden
+     * @throws IOException Si no se puede crear el directorio o leer los tramos anteriores
+     */
+    AlmacenDocumentos(Path directorio, int documentosPorTramo, ObjIntConsumer<MensajeIndexado> recuperado) throws IOException {
+        this.directorio = directorio;
+        this.documentosPorTramo = documentosPorTramo;
+        Files.createDirectories(directorio);
+        recuperar(recuperado);
+    }
+
+    /**
+     * @return Primer documento guardado
+     */
+    int getPrimerDocumento() {
+        return primerDocumento;
+    }
+
+    /**
+     * @return Identificador que tendrá el siguiente documento
+     */
+    int getFinDocumento() {
+        return finDocumento;
+    }
+
+    /**
+     * @return Mayor número de secuencia guardado, {@code 0} si no hay ninguno
+     */
+    long getUltimaSecuencia() {
+        return ultimaSecuencia;
+    }
+
+    /**
+     * Guarda un mensaje como el siguiente documento.
+     * <p>
+     * El {@link es.chat.servidor.Secuenciador} pone el instante a los mensajes generales al publicarlos y el
+     * {@link es.chat.servidor.Repartidor} a los privados al entregarlos, así que pueden llegar ligeramente
+     * desordenados. Cada instante se iguala al menos al del documento anterior para poder buscar por fecha
+     * con bisección.
+     * @param mensaje Mensaje a guardar
+     * @return Identificador del documento
+     * @throws IOException Si el mensaje no se puede codificar o falla el disco. En ese caso no se guarda
+     */
+    int anadir(MensajeIndexado mensaje) throws IOException {
+        long tiempo = Math.max(mensaje.tiempo(), ultimoTiempo);
+        codificado.reset();
+        salida.writeLong(mensaje.secuencia());
+        salida.writeLong(tiempo);
+        salida.writeUTF(mensaje.emisor());
+        salida.writeUTF(mensaje.destinatario() == null ? "" : mensaje.destinatario());
+        salida.writeUTF(mensaje.texto());
+        byte[] bytes = codificado.toByteArray();
+
+        Tramo tramo = tramos.isEmpty() ? null : tramos.get(tramos.size() - 1);
+
+        if (tramo == null || tramo.n == documentosPorTramo) {
+            if (tramo != null) {
+                volcar(tramo);
+            }
+
+            tramo = nuevoTramo(finDocumento / documentosPorTramo);
+        }
+
+        if (bytes.length > buffer.remaining()) {
+            volcar(tramo);
+        }
+
+        if (bytes.length > buffer.capacity()) {
+            escribir(tramo, ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+
+        registrar(tramo, bytes.length, tiempo, mensaje);
+
+        return finDocumento++;
+    }
+
+    /**
+     * @param documento Documento guardado
+     * @return Mensaje del documento, con el instante con el que se guardó
+     * @throws IOException Si falla el disco
+     */
+    MensajeIndexado leer(int documento) throws IOException {
+        Tramo tramo = tramo(documento);
+        int i = documento - tramo.numero * documentosPorTramo;
+        long posicion = tramo.posiciones[i];
+        byte[] bytes = new byte[(int) ((i + 1 < tramo.n ? tramo.posiciones[i + 1] : tramo.fin) - posicion)];
+
+        if (posicion >= tramo.volcado) {
+            buffer.get((int) (posicion - tramo.volcado), bytes);
+        } else {
+            ByteBuffer destino = ByteBuffer.wrap(bytes);
+
+            while (destino.hasRemaining()) {
+                if (tramo.canal.read(destino, posicion + destino.position()) < 0) {
+                    throw new EOFException("Falta el documento " + documento + " en " + tramo.ruta.getFileName());
+                }
+            }
+        }
+
+        return decodificar(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Permite comprobar la visibilidad sin leer el documento: los mensajes generales los ve cualquiera.
+     * @param documento Documento guardado
+     * @return {@code true} si es un mensaje privado, {@code false} si es general
+     */
+    boolean esPrivado(int documento) {
+        Tramo tramo = tramo(documento);
+        return tramo.privados.get(documento - tramo.numero * documentosPorTramo);
+    }
+
+    /**
+     * Los instantes de los documentos no decrecen (ver {@link #anadir(MensajeIndexado)}), así que se busca por bisección.
+     * @param tiempo Instante en milisegundos
+     * @return Primer documento guardado de ese instante o posterior, o {@link #getFinDocumento()} si no hay ninguno
+     */
+    int primerDocumentoDesde(long tiempo) {
+        int bajo = primerDocumento;
+        int alto = finDocumento;
+
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            Tramo tramo = tramo(medio);
+
+            if (tramo.tiempos[medio - tramo.numero * documentosPorTramo] < tiempo) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+
+        return bajo;
+    }
+
+    /**
+     * Borra el tramo más antiguo. Aunque falle el borrado, sus documentos dejan de estar guardados.
+     * @throws IOException Si no se puede cerrar o borrar el archivo
+     */
+    void descartarTramo() throws IOException {
+        Tramo tramo = tramos.remove(0);
+        primerDocumento = tramos.isEmpty() ? finDocumento : tramos.get(0).numero * documentosPorTramo;
+
+        try {
+            tramo.canal.close();
+        } finally {
+            Files.delete(tramo.ruta);
+        }
+    }
+
+    /**
+     * Vuelca el buffer y cierra los tramos, que se conservan para la siguiente ejecución.
+     * @throws IOException Si no se puede volcar o cerrar alguno. Se intenta con todos
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+
+        if (!tramos.isEmpty()) {
+            Tramo ultimo = tramos.get(tramos.size() - 1);
+
+            try {
+                volcar(ultimo);
+                ultimo.canal.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        for (Tramo tramo : tramos) {
+            try {
+                tramo.canal.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+
+        tramos.clear();
+        buffer.clear();
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private Tramo tramo(int documento) {
+        return tramos.get(documento / documentosPorTramo - tramos.get(0).numero);
+    }
+
+    /**
+     * Anota un documento que ya está escrito (o en el buffer) al final del tramo.
+     */
+    private void registrar(Tramo tramo, int bytes, long tiempo, MensajeIndexado mensaje) {
+        tramo.posiciones[tramo.n] = tramo.fin;
+        tramo.tiempos[tramo.n] = tiempo;
+        tramo.privados.set(tramo.n, mensaje.destinatario() != null);
+        tramo.n++;
+        tramo.fin += bytes;
+        ultimoTiempo = tiempo;
+        ultimaSecuencia = Math.max(ultimaSecuencia, mensaje.secuencia());
+    }
+
+    private Tramo nuevoTramo(int numero) throws IOException {
+        Path ruta = directorio.resolve(String.format("%010d%s", numero, EXTENSION));
+        Tramo tramo = new Tramo(numero, ruta, FileChannel.open(ruta, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        ByteBuffer cabecera = ByteBuffer.allocate(TAM_CABECERA).putInt(MAGIA).put((byte) VERSION).flip();
+
+        try {
+            escribir(tramo, cabecera);
+        } catch (IOException e) {
+            tramo.canal.close();
+            Files.delete(ruta);
+            throw e;
+        }
+
+        tramo.fin = tramo.volcado;
+        tramos.add(tramo);
+        return tramo;
+    }
+
+    /**
+     * Recupera los tramos consecutivos más recientes del directorio y borra los demás.
+     */
+    private void recuperar(ObjIntConsumer<MensajeIndexado> recuperado) throws IOException {
+        TreeMap<Integer, Path> archivos = new TreeMap<>();
+
+        try (DirectoryStream<Path> anteriores = Files.newDirectoryStream(directorio, "*" + EXTENSION)) {
+            for (Path anterior : anteriores) {
+                String nombre = anterior.getFileName().toString();
+
+                try {
+                    archivos.put(Integer.parseInt(nombre.substring(0, nombre.length() - EXTENSION.length())), anterior);
+                } catch (NumberFormatException e) {
+                    System.err.printf("Se ignora el archivo %s del índice de búsqueda%n", anterior);
+                }
+            }
+        }
+
+        // Se recorren del más reciente al más antiguo hasta encontrar un hueco o un tramo que no se puede usar
+        List<Integer> usables = new ArrayList<>();
+
+        for (Integer numero : archivos.descendingKeySet()) {
+            if (!usables.isEmpty() && numero != usables.get(0) - 1) {
+                break;
+            }
+
+            usables.add(0, numero);
+        }
+
+        for (Integer numero : archivos.keySet()) {
+            if (!usables.contains(numero)) {
+                Files.delete(archivos.get(numero));
+            }
+        }
+
+        List<Tramo> leidos = new ArrayList<>();
+
+        for (int i = 0; i < usables.size(); i++) {
+            int numero = usables.get(i);
+            Tramo tramo = abrir(numero, archivos.get(numero));
+            boolean ultimo = i == usables.size() - 1;
+
+            if (tramo == null || (!ultimo && tramo.n < documentosPorTramo)) {
+                // Los documentos de los anteriores dejarían un hueco en los identificadores: se empieza de cero tras él
+                for (Tramo anterior : leidos) {
+                    anterior.canal.close();
+                    Files.delete(anterior.ruta);
+                }
+
+                leidos.clear();
+
+                if (tramo != null) {
+                    tramo.canal.close();
+                }
+
+                Files.delete(archivos.get(numero));
+                continue;
+            }
+
+            leidos.add(tramo);
+        }
+
+        if (leidos.isEmpty()) {
+            return;
+        }
+
+        tramos.addAll(leidos);
+        primerDocumento = tramos.get(0).numero * documentosPorTramo;
+        finDocumento = primerDocumento;
+
+        for (Tramo tramo : tramos) {
+            leerDocumentos(tramo, recuperado);
+        }
+    }
+
+    /**
+     * Abre un tramo de una ejecución anterior y anota sus documentos. Corta el archivo tras el último registro completo.
+     * @return Tramo, o {@code null} si no es de esta versión
+     */
+    private Tramo abrir(int numero, Path ruta) throws IOException {
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Tramo tramo = new Tramo(numero, ruta, canal);
+        Contador contador = new Contador(new BufferedInputStream(Channels.newInputStream(canal.position(0)), TAM_BUFFER));
+        DataInputStream entrada = new DataInputStream(contador);
+
+        try {
+            if (entrada.readInt() != MAGIA || entrada.readUnsignedByte() != VERSION) {
+                System.err.printf("El tramo %s del índice de búsqueda es de otra versión, se borra%n", ruta.getFileName());
+                canal.close();
+                return null;
+            }
+        } catch (EOFException e) {
+            System.err.printf("El tramo %s del índice de búsqueda está vacío, se borra%n", ruta.getFileName());
+            canal.close();
+            return null;
+        }
+
+        tramo.fin = contador.leidos;
+
+        try {
+            while (tramo.n < documentosPorTramo) {
+                MensajeIndexado mensaje = decodificar(entrada);
+                int bytes = (int) (contador.leidos - tramo.fin);
+                registrar(tramo, bytes, Math.max(mensaje.tiempo(), ultimoTiempo), mensaje);
+            }
+        } catch (EOFException e) {
+            // Último registro a medias o fin del archivo
+        } catch (IOException e) {
+            System.err.printf("El tramo %s del índice de búsqueda está dañado, se corta tras el documento %d%n%s%n",
+                ruta.getFileName(), tramo.n, e.getMessage());
+        }
+
+        if (canal.size() > tramo.fin) {
+            canal.truncate(tramo.fin);
+        }
+
+        tramo.volcado = tramo.fin;
+        return tramo;
+    }
+
+    /**
+     * Pasa los documentos de un tramo recuperado a quien creó el almacén, en orden.
+     */
+    private void leerDocumentos(Tramo tramo, ObjIntConsumer<MensajeIndexado> recuperado) throws IOException {
+        DataInputStream entrada = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(tramo.canal.position(TAM_CABECERA)), TAM_BUFFER));
+
+        for (int i = 0; i < tramo.n; i++) {
+            MensajeIndexado mensaje = decodificar(entrada);
+            recuperado.accept(new MensajeIndexado(mensaje.secuencia(), tramo.tiempos[i], mensaje.emisor(),
+                mensaje.destinatario(), mensaje.texto()), finDocumento++);
+        }
+    }
+
+    private static MensajeIndexado decodificar(DataInputStream entrada) throws IOException {
+        long secuencia = entrada.readLong();
+        long tiempo = entrada.readLong();
+        String emisor = entrada.readUTF();
+        String destinatario = entrada.readUTF();
+        String texto = entrada.readUTF();
+
+        return new MensajeIndexado(secuencia, tiempo, emisor, destinatario.isEmpty() ? null : destinatario, texto);
+    }
+
+    /**
+     * Escribe en el archivo lo que hay en el buffer.
+     */
+    private void volcar(Tramo tramo) throws IOException {
+        buffer.flip();
+
+        try {
+            escribir(tramo, buffer);
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private static void escribir(Tramo tramo, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            tramo.volcado += tramo.canal.write(bytes, tramo.volcado);
+        }
+    }
+
+    /**
+     * Archivo con los documentos de {@code numero * documentosPorTramo} en adelante.
+     */
+    private final class Tramo {
+        private final int numero;
+        private final Path ruta;
+        private final FileChannel canal;
+        private final long[] posiciones = new long[documentosPorTramo];
+        private final long[] tiempos = new long[documentosPorTramo];
+        private final BitSet privados = new BitSet(documentosPorTramo);
+        private int n;
+        /**
+         * Bytes del archivo, con la cabecera, más los del buffer.
+         */
+        private long fin;
+        /**
+         * Bytes que ya están en el archivo. Los de {@code volcado} a {@code fin} están en el buffer.
+         */
+        private long volcado;
+
+        Tramo(int numero, Path ruta, FileChannel canal) {
+            this.numero = numero;
+            this.ruta = ruta;
+            this.canal = canal;
+        }
+    }
+
+    /**
+     * Cuenta los bytes leídos, para saber dónde empieza cada registro al recuperar un tramo.
+     */
+    private static final class Contador extends FilterInputStream {
+        private long leidos;
+
+        Contador(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b >= 0) {
+                leidos++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int desde, int n) throws IOException {
+            int leido = super.read(b, desde, n);
+
+            if (leido > 0) {
+                leidos += leido;
+            }
+
+            return leido;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long saltado = super.skip(n);
+            leidos += saltado;
+            return saltado;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package es.chat.servidor.busqueda;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Consulta de búsqueda. Se compone de palabras, que deben aparecer todas en el mensaje, y filtros opcionales:
+ * <ul>
+ *     <li>{@code de:alias}: Solo mensajes enviados por ese alias</li>
+ *     <li>{@code desde:AAAA-MM-DD}: Solo mensajes enviados ese día o después</li>
+ *     <li>{@code hasta:AAAA-MM-DD}: Solo mensajes enviados ese día o antes</li>
+ * </ul>
+ * P. ej: {@code reunión lunes de:Juan desde:2024-11-01}. Un filtro con una fecha no válida se busca como palabra.
+ * @param terminos Términos normalizados que deben aparecer en el mensaje
+ * @param emisor Alias del emisor, o {@code null} si no se filtra por emisor
+ * @param desde Instante mínimo en milisegundos (incluido)
+ * @param hasta Instante máximo en milisegundos (excluido)
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+public record Consulta(Set<String> terminos, String emisor, long desde, long hasta) {
+    /**
+     * Interpreta el texto de una consulta.
+     * @param texto Texto de la consulta
+     * @return Consulta
+     */
+    public static Consulta de(String texto) {
+        Set<String> terminos = new LinkedHashSet<>();
+        String emisor = null;
+        long desde = Long.MIN_VALUE;
+        long hasta = Long.MAX_VALUE;
+
+        for (String palabra : texto.trim().split("\\s+")) {
+            try {
+                if (palabra.startsWith("de:") && palabra.length() > 3) {
+                    emisor = palabra.substring(3);
+                    continue;
+                }
+
+                if (palabra.startsWith("desde:")) {
+                    desde = inicioDelDia(LocalDate.parse(palabra.substring(6)));
+                    continue;
+                }
+
+                if (palabra.startsWith("hasta:")) {
+                    hasta = inicioDelDia(LocalDate.parse(palabra.substring(6)).plusDays(1));
+                    continue;
+                }
+            } catch (DateTimeParseException e) {
+                // Se busca como una palabra más
+            }
+
+            terminos.addAll(IndiceMensajes.terminos(palabra));
+        }
+
+        return new Consulta(terminos, emisor, desde, hasta);
+    }
+
+    private static long inicioDelDia(LocalDate dia) {
+        return dia.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,453 @@
+package es.chat.servidor.busqueda;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido de los mensajes generales y privados que pasan por el servidor.
+ * <p>
+ * Cada mensaje es un documento con un identificador creciente. El texto se guarda en disco en un
+ * {@link AlmacenDocumentos} y en memoria solo quedan las listas de documentos de cada término y la posición de cada
+ * documento en su archivo. Los mensajes nuevos se añaden a un {@link SegmentoEnMemoria}; cuando llega a
+ * {@link #TAM_SEGMENTO} documentos se congela en un {@link Segmento} con las listas comprimidas. En cuanto hay
+ * {@link #FACTOR_FUSION} segmentos contiguos del mismo nivel dentro de un mismo tramo del almacén, un hilo aparte
+ * los fusiona en uno del nivel siguiente.
+ * <p>
+ * Como el {@link es.chat.servidor.Historial}, el índice solo guarda los últimos mensajes: cuando sin el tramo más
+ * antiguo siguen quedando {@code capacidad} documentos, se borran el tramo y sus segmentos.
+ * <p>
+ * Los tramos se conservan al cerrar el índice. Los segmentos no se guardan: al crear el índice se vuelven a indexar
+ * los mensajes de los tramos que quedaron de la ejecución anterior, y los segmentos recuperados se fusionan después
+ * en segundo plano.
+ * <p>
+ * El emisor de cada mensaje se indexa como un término más ({@code de:alias}), que no se confunde con las palabras
+ * porque estas no tienen dos puntos. Una búsqueda recorre los segmentos del más nuevo al más antiguo, interseca las
+ * listas de sus términos y del emisor y aplica los filtros de fecha y visibilidad (los mensajes privados solo los
+ * encuentran su emisor y su destinatario). Solo una consulta sin palabras ni emisor recorre los documentos uno a uno.
+ * @see Consulta
+ * @see MensajeIndexado
+ * @version 1.0
+ * @author Adrián González
+ */
+public class IndiceMensajes implements Closeable {
+    public static final int TAM_SEGMENTO = 4096;
+    public static final int FACTOR_FUSION = 8;
+    /**
+     * Documentos de cada archivo del almacén. Los segmentos se fusionan hasta ocupar un tramo entero.
+     */
+    public static final int DOCUMENTOS_POR_TRAMO = TAM_SEGMENTO * FACTOR_FUSION * FACTOR_FUSION;
+    public static final int TAM_PAGINA = 20;
+    /**
+     * Número máximo de resultados que se cuentan en una búsqueda. Limita el coste de los términos muy frecuentes.
+     */
+    public static final int MAX_RESULTADOS = 1000;
+
+    private static final String PREFIJO_EMISOR = "de:";
+
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+    private final AlmacenDocumentos documentos;
+    private final int capacidad;
+    private final int documentosPorTramo;
+    private final List<Segmento> segmentos = new ArrayList<>();
+    private SegmentoEnMemoria enMemoria = new SegmentoEnMemoria(0);
+    private boolean fusionPendiente;
+    private final ExecutorService fusiones = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "fusion-indice");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    /**
+     * @param directorio Directorio en el que se guardan los mensajes, con los de la ejecución anterior si los hay
+     * @param capacidad Mensajes que se conservan como mínimo
+     * @throws IOException Si no se puede crear el directorio o leer los mensajes anteriores
+     */
+    public IndiceMensajes(Path directorio, int capacidad) throws IOException {
+        this(directorio, capacidad, DOCUMENTOS_POR_TRAMO);
+    }
+
+    /**
+     * @param directorio Directorio en el que se guardan los mensajes
+     * @param capacidad Mensajes que se conservan como mínimo
+     * @param documentosPorTramo Documentos de cada archivo, múltiplo de {@link #TAM_SEGMENTO}
+     * @throws IOException Si no se puede crear el directorio o leer los mensajes anteriores
+     */
+    IndiceMensajes(Path directorio, int capacidad, int documentosPorTramo) throws IOException {
+        if (capacidad < 1 || documentosPorTramo < TAM_SEGMENTO || documentosPorTramo % TAM_SEGMENTO != 0) {
+            throw new IllegalArgumentException(String.format("Capacidad %d o documentos por tramo %d no válidos", capacidad, documentosPorTramo));
+        }
+
+        this.capacidad = capacidad;
+        this.documentosPorTramo = documentosPorTramo;
+        this.documentos = new AlmacenDocumentos(directorio, documentosPorTramo, this::recuperar);
+
+        if (!segmentos.isEmpty()) {
+            descartarAntiguos();
+            programarFusion();
+        }
+    }
+
+    /**
+     * Vuelve a indexar un documento recuperado del disco al crear el índice.
+     * @param mensaje Mensaje del documento
+     * @param documento Identificador del documento
+     */
+    private void recuperar(MensajeIndexado mensaje, int documento) {
+        Set<String> terminos = terminos(mensaje.texto());
+        terminos.add(terminoEmisor(mensaje.emisor()));
+
+        if (enMemoria.tamano() == 0) {
+            enMemoria = new SegmentoEnMemoria(documento);
+        }
+
+        enMemoria.anadir(documento, terminos);
+
+        if (enMemoria.tamano() >= TAM_SEGMENTO) {
+            segmentos.add(enMemoria.congelar());
+            enMemoria = new SegmentoEnMemoria(documento + 1);
+        }
+    }
+
+    /**
+     * Añade un mensaje al índice. Si no se puede guardar en disco, se muestra el error y no se añade.
+     * @param mensaje Mensaje a añadir
+     */
+    public void indexar(MensajeIndexado mensaje) {
+        Set<String> terminos = terminos(mensaje.texto());
+        terminos.add(terminoEmisor(mensaje.emisor()));
+
+        cerrojo.writeLock().lock();
+
+        try {
+            int documento;
+
+            try {
+                documento = documentos.anadir(mensaje);
+            } catch (IOException e) {
+                System.err.printf("ERROR al guardar el mensaje %d en el índice de búsqueda%n%s%n", mensaje.secuencia(), e.getMessage());
+                return;
+            }
+
+            enMemoria.anadir(documento, terminos);
+
+            if (enMemoria.tamano() >= TAM_SEGMENTO) {
+                segmentos.add(enMemoria.congelar());
+                enMemoria = new SegmentoEnMemoria(documento + 1);
+                descartarAntiguos();
+                programarFusion();
+            }
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca los mensajes que cumplen la consulta y son visibles para el alias.
+     * @param consulta Consulta de búsqueda
+     * @param alias Alias de quien busca
+     * @param pagina Página de resultados, empezando en 0
+     * @return Página de resultados, del mensaje más reciente al más antiguo
+     */
+    public ResultadoBusqueda buscar(Consulta consulta, String alias, int pagina) {
+        Recolector recolector = new Recolector(alias, pagina * TAM_PAGINA);
+        List<String> terminos = new ArrayList<>(consulta.terminos());
+
+        if (consulta.emisor() != null) {
+            terminos.add(terminoEmisor(consulta.emisor()));
+        }
+
+        cerrojo.readLock().lock();
+
+        try {
+            int desde = documentos.primerDocumentoDesde(consulta.desde());
+            int hasta = documentos.primerDocumentoDesde(consulta.hasta());
+
+            if (terminos.isEmpty()) {
+                for (int documento = hasta - 1; documento >= desde && !recolector.completo(); documento--) {
+                    recolector.anadir(documento);
+                }
+            } else {
+                buscarEnSegmento(enMemoria.getPrimerDocumento(), enMemoria.getFinDocumento(),
+                    terminos.stream().map(enMemoria::documentos).toList(), desde, hasta, recolector);
+
+                for (int i = segmentos.size() - 1; i >= 0 && !recolector.completo(); i--) {
+                    Segmento segmento = segmentos.get(i);
+
+                    if (segmento.getFinDocumento() > desde && segmento.getPrimerDocumento() < hasta) {
+                        buscarEnSegmento(segmento.getPrimerDocumento(), segmento.getFinDocumento(),
+                            terminos.stream().map(segmento::documentos).toList(), desde, hasta, recolector);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("ERROR al leer el índice de búsqueda%n%s%n", e.getMessage());
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+
+        return new ResultadoBusqueda(recolector.total, recolector.pagina);
+    }
+
+    /**
+     * @return Número de mensajes que se conservan en el índice
+     */
+    public int tamano() {
+        cerrojo.readLock().lock();
+
+        try {
+            return documentos.getFinDocumento() - documentos.getPrimerDocumento();
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Mayor número de secuencia de los mensajes guardados, {@code 0} si no hay ninguno
+     */
+    public long getUltimaSecuencia() {
+        cerrojo.readLock().lock();
+
+        try {
+            return documentos.getUltimaSecuencia();
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deja de fusionar segmentos y cierra los archivos de los mensajes, que se conservan para la siguiente ejecución.
+     */
+    @Override
+    public void close() {
+        fusiones.shutdownNow();
+        cerrojo.writeLock().lock();
+
+        try {
+            documentos.close();
+        } catch (IOException e) {
+            System.err.printf("ERROR al cerrar el índice de búsqueda%n%s%n", e.getMessage());
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Extrae los términos de un texto: palabras en minúsculas, sin tildes ni diéresis y sin repetir.
+     * @param texto Texto a dividir
+     * @return Términos normalizados
+     */
+    public static Set<String> terminos(String texto) {
+        Set<String> terminos = new LinkedHashSet<>();
+        StringBuilder termino = new StringBuilder();
+        boolean soloAscii = true;
+
+        for (int i = 0; i <= texto.length(); i++) {
+            char c = i < texto.length() ? texto.charAt(i) : ' ';
+
+            if (Character.isLetterOrDigit(c)) {
+                termino.append(Character.toLowerCase(c));
+                soloAscii &= c < 0x80;
+            } else if (!termino.isEmpty()) {
+                terminos.add(soloAscii ? termino.toString() : sinDiacriticos(termino.toString()));
+                termino.setLength(0);
+                soloAscii = true;
+            }
+        }
+
+        return terminos;
+    }
+
+    private static String sinDiacriticos(String termino) {
+        return Normalizer.normalize(termino, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    private static String terminoEmisor(String alias) {
+        return PREFIJO_EMISOR + alias;
+    }
+
+    /**
+     * Interseca las listas de los términos en un segmento y pasa al recolector los documentos dentro del rango,
+     * del más reciente al más antiguo.
+     */
+    private void buscarEnSegmento(int primerDocumento, int finDocumento, List<int[]> listas, int desde, int hasta,
+                                  Recolector recolector) throws IOException {
+        if (finDocumento <= desde || primerDocumento >= hasta) {
+            return;
+        }
+
+        int[][] ordenadas = listas.stream().sorted(Comparator.comparingInt(l -> l.length)).toArray(int[][]::new);
+        int[] coincidencias = ordenadas[0];
+
+        for (int i = 1; i < ordenadas.length && coincidencias.length > 0; i++) {
+            coincidencias = intersecar(coincidencias, ordenadas[i]);
+        }
+
+        for (int i = coincidencias.length - 1; i >= 0 && !recolector.completo(); i--) {
+            int documento = coincidencias[i];
+
+            if (documento >= desde && documento < hasta) {
+                recolector.anadir(documento);
+            }
+        }
+    }
+
+    private static int[] intersecar(int[] a, int[] b) {
+        int[] resultado = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                resultado[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(resultado, n);
+    }
+
+    /**
+     * Borra los tramos más antiguos del almacén, y sus segmentos, mientras sin ellos sigan quedando
+     * {@link #capacidad} documentos. Se llama con el cerrojo de escritura al congelar un segmento.
+     */
+    private void descartarAntiguos() {
+        while (documentos.getFinDocumento() - documentos.getPrimerDocumento() - documentosPorTramo >= capacidad) {
+            try {
+                documentos.descartarTramo();
+            } catch (IOException e) {
+                System.err.printf("ERROR al borrar un tramo del índice de búsqueda%n%s%n", e.getMessage());
+            }
+
+            int primero = documentos.getPrimerDocumento();
+            segmentos.removeIf(segmento -> segmento.getFinDocumento() <= primero);
+        }
+    }
+
+    /**
+     * Programa una fusión si no hay ninguna pendiente. Se llama con el cerrojo de escritura.
+     */
+    private void programarFusion() {
+        if (!fusionPendiente) {
+            fusionPendiente = true;
+            fusiones.execute(this::fusionar);
+        }
+    }
+
+    /**
+     * Fusiona grupos de segmentos mientras los haya. La fusión se hace sin cerrojo; solo se toma para elegir
+     * el grupo y para sustituirlo por el segmento fusionado. Mientras tanto solo se pueden añadir segmentos al final
+     * o descartar los más antiguos, así que el grupo sigue entero en la lista o se ha descartado entero.
+     */
+    private void fusionar() {
+        while (true) {
+            List<Segmento> grupo;
+
+            cerrojo.writeLock().lock();
+
+            try {
+                grupo = grupoAFusionar();
+
+                if (grupo == null) {
+                    fusionPendiente = false;
+                    return;
+                }
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+
+            Segmento fusionado = Segmento.fusionar(grupo);
+
+            cerrojo.writeLock().lock();
+
+            try {
+                int posicion = segmentos.indexOf(grupo.get(0));
+
+                if (posicion < 0) {
+                    continue;
+                }
+
+                segmentos.subList(posicion, posicion + grupo.size()).clear();
+                segmentos.add(posicion, fusionado);
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return Los primeros {@link #FACTOR_FUSION} segmentos contiguos del mismo nivel y del mismo tramo, o
+     * {@code null} si no hay. Así un tramo se puede descartar sin tocar los segmentos de los demás
+     */
+    private List<Segmento> grupoAFusionar() {
+        for (int i = 0; i + FACTOR_FUSION <= segmentos.size(); i++) {
+            int nivel = segmentos.get(i).getNivel();
+            int j = i + 1;
+
+            while (j < i + FACTOR_FUSION && segmentos.get(j).getNivel() == nivel) {
+                j++;
+            }
+
+            if (j == i + FACTOR_FUSION && segmentos.get(i).getPrimerDocumento() / documentosPorTramo
+                    == (segmentos.get(j - 1).getFinDocumento() - 1) / documentosPorTramo) {
+                return new ArrayList<>(segmentos.subList(i, j));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Cuenta los mensajes visibles y guarda los de la página pedida. Solo lee del disco los mensajes privados, para
+     * comprobar quién los ve, y los de la página.
+     */
+    private final class Recolector {
+        private final String alias;
+        private final int saltar;
+        private final List<MensajeIndexado> pagina = new ArrayList<>();
+        private int total;
+
+        Recolector(String alias, int saltar) {
+            this.alias = alias;
+            this.saltar = saltar;
+        }
+
+        void anadir(int documento) throws IOException {
+            MensajeIndexado mensaje = null;
+
+            if (documentos.esPrivado(documento)) {
+                mensaje = documentos.leer(documento);
+
+                if (!mensaje.visiblePara(alias)) {
+                    return;
+                }
+            }
+
+            if (total >= saltar && pagina.size() < TAM_PAGINA) {
+                pagina.add(mensaje != null ? mensaje : documentos.leer(documento));
+            }
+
+            total++;
+        }
+
+        boolean completo() {
+            return total >= MAX_RESULTADOS;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package es.chat.servidor.busqueda;
+
+/**
+ * Mensaje guardado en el índice de búsqueda.
+ * @param secuencia Número de secuencia que le asignó el servidor
+ * @param tiempo Instante en que se envió, en milisegundos desde la época
+ * @param emisor Alias del emisor
+ * @param destinatario Alias del destinatario de un mensaje privado, o {@code null} si es un mensaje general
+ * @param texto Texto del mensaje
+ * @version 1.0
+ * @author Adrián González
+ */
+public record MensajeIndexado(long secuencia, long tiempo, String emisor, String destinatario, String texto) {
+    /**
+     * Un mensaje general lo puede encontrar cualquiera, uno privado solo su emisor y su destinatario.
+     * @param alias Alias de quien busca
+     * @return {@code true} si el mensaje es visible para el alias, {@code false} en caso contrario
+     */
+    public boolean visiblePara(String alias) {
+        return destinatario == null || destinatario.equals(alias) || emisor.equals(alias);
+    }
+}
@@ -0,0 +1,78 @@
+package es.chat.servidor.busqueda;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Codifica las listas de documentos de un término (posting lists) de forma compacta: el número de documentos
+ * y después la diferencia de cada identificador con el anterior, todo en enteros de longitud variable
+ * (7 bits por byte). Como los identificadores son crecientes, la mayoría de diferencias ocupan un byte.
+ * @see Segmento
+ * @version 1.0
+ * @author Adrián González
+ */
+class Postings {
+    static final int[] VACIA = new int[0];
+
+    private Postings() {
+    }
+
+    /**
+     * @param documentos Identificadores de documento en orden creciente
+     * @param n Número de identificadores que se usan del array
+     * @return Lista codificada
+     */
+    static byte[] codificar(int[] documentos, int n) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(n + 4);
+        escribirVarint(bytes, n);
+
+        int anterior = 0;
+
+        for (int i = 0; i < n; i++) {
+            escribirVarint(bytes, documentos[i] - anterior);
+            anterior = documentos[i];
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param codificada Lista codificada con {@link #codificar(int[], int)}
+     * @return Identificadores de documento en orden creciente
+     */
+    static int[] decodificar(byte[] codificada) {
+        int[] posicion = {0};
+        int n = leerVarint(codificada, posicion);
+        int[] documentos = new int[n];
+        int anterior = 0;
+
+        for (int i = 0; i < n; i++) {
+            anterior += leerVarint(codificada, posicion);
+            documentos[i] = anterior;
+        }
+
+        return documentos;
+    }
+
+    private static void escribirVarint(ByteArrayOutputStream bytes, int valor) {
+        while ((valor & ~0x7F) != 0) {
+            bytes.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+
+        bytes.write(valor);
+    }
+
+    private static int leerVarint(byte[] codificada, int[] posicion) {
+        int valor = 0;
+        int desplazamiento = 0;
+        byte b;
+
+        do {
+            b = codificada[posicion[0]++];
+            valor |= (b & 0x7F) << desplazamiento;
+            desplazamiento += 7;
+        } while ((b & 0x80) != 0);
+
+        return valor;
+    }
+}
@@ -0,0 +1,14 @@
+package es.chat.servidor.busqueda;
+
+import java.util.List;
+
+/**
+ * Página de resultados de una búsqueda.
+ * @param total Número de mensajes encontrados, como mucho {@link IndiceMensajes#MAX_RESULTADOS}
+ * @param mensajes Mensajes de la página, del más reciente al más antiguo
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+public record ResultadoBusqueda(int total, List<MensajeIndexado> mensajes) {
+}
@@ -0,0 +1,93 @@
+package es.chat.servidor.busqueda;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Segmento inmutable del índice. Contiene los términos de los documentos de {@code primerDocumento}
+ * a {@code finDocumento} (excluido), ordenados para buscarlos por bisección, y la lista de documentos
+ * de cada término comprimida con {@link Postings}.
+ * <p>
+ * Los segmentos de un índice cubren rangos de documentos consecutivos y no solapados, así que al fusionar
+ * segmentos contiguos basta con concatenar las listas de cada término en orden.
+ * @see SegmentoEnMemoria
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+class Segmento {
+    private final int primerDocumento;
+    private final int finDocumento;
+    private final int nivel;
+    private final String[] terminos;
+    private final byte[][] postings;
+
+    Segmento(int primerDocumento, int finDocumento, int nivel, String[] terminos, byte[][] postings) {
+        this.primerDocumento = primerDocumento;
+        this.finDocumento = finDocumento;
+        this.nivel = nivel;
+        this.terminos = terminos;
+        this.postings = postings;
+    }
+
+    int getPrimerDocumento() {
+        return primerDocumento;
+    }
+
+    int getFinDocumento() {
+        return finDocumento;
+    }
+
+    /**
+     * @return Número de fusiones que han dado lugar al segmento, {@code 0} si viene directamente de memoria
+     */
+    int getNivel() {
+        return nivel;
+    }
+
+    /**
+     * @param termino Término normalizado
+     * @return Documentos que contienen el término, en orden creciente
+     */
+    int[] documentos(String termino) {
+        int i = Arrays.binarySearch(terminos, termino);
+        return i < 0 ? Postings.VACIA : Postings.decodificar(postings[i]);
+    }
+
+    /**
+     * Fusiona segmentos contiguos en uno de un nivel más que el mayor de ellos.
+     * @param segmentos Segmentos contiguos, ordenados por documento
+     * @return Segmento fusionado
+     */
+    static Segmento fusionar(List<Segmento> segmentos) {
+        TreeSet<String> union = new TreeSet<>();
+        segmentos.forEach(s -> Collections.addAll(union, s.terminos));
+
+        String[] terminos = union.toArray(String[]::new);
+        byte[][] postings = new byte[terminos.length][];
+        int[] documentos = new int[64];
+
+        for (int t = 0; t < terminos.length; t++) {
+            int n = 0;
+
+            for (Segmento segmento : segmentos) {
+                int[] parte = segmento.documentos(terminos[t]);
+
+                if (n + parte.length > documentos.length) {
+                    documentos = Arrays.copyOf(documentos, Math.max(documentos.length * 2, n + parte.length));
+                }
+
+                System.arraycopy(parte, 0, documentos, n, parte.length);
+                n += parte.length;
+            }
+
+            postings[t] = Postings.codificar(documentos, n);
+        }
+
+        int nivel = segmentos.stream().mapToInt(Segmento::getNivel).max().orElse(0) + 1;
+
+        return new Segmento(segmentos.get(0).primerDocumento, segmentos.get(segmentos.size() - 1).finDocumento, nivel, terminos, postings);
+    }
+}
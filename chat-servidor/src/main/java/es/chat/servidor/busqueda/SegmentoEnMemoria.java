@@ -0,0 +1,86 @@
+package es.chat.servidor.busqueda;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segmento del índice al que se añaden los mensajes nuevos. Guarda las listas de documentos sin comprimir
+ * hasta que se congela en un {@link Segmento} inmutable.
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+class SegmentoEnMemoria {
+    private final int primerDocumento;
+    private int finDocumento;
+    private final Map<String, Lista> listas = new HashMap<>();
+
+    SegmentoEnMemoria(int primerDocumento) {
+        this.primerDocumento = primerDocumento;
+        this.finDocumento = primerDocumento;
+    }
+
+    int getPrimerDocumento() {
+        return primerDocumento;
+    }
+
+    int getFinDocumento() {
+        return finDocumento;
+    }
+
+    int tamano() {
+        return finDocumento - primerDocumento;
+    }
+
+    /**
+     * Añade el siguiente documento con sus términos (sin repetir).
+     * @param documento Identificador del documento, que debe ser {@code getFinDocumento()}
+     * @param terminos Términos normalizados del documento
+     */
+    void anadir(int documento, Iterable<String> terminos) {
+        for (String termino : terminos) {
+            Lista lista = listas.computeIfAbsent(termino, t -> new Lista());
+
+            if (lista.n == lista.documentos.length) {
+                lista.documentos = Arrays.copyOf(lista.documentos, lista.n * 2);
+            }
+
+            lista.documentos[lista.n++] = documento;
+        }
+
+        finDocumento = documento + 1;
+    }
+
+    /**
+     * @param termino Término normalizado
+     * @return Documentos que contienen el término, en orden creciente
+     */
+    int[] documentos(String termino) {
+        Lista lista = listas.get(termino);
+        return lista == null ? Postings.VACIA : Arrays.copyOf(lista.documentos, lista.n);
+    }
+
+    /**
+     * @return Segmento inmutable de nivel 0 con los mismos documentos
+     */
+    Segmento congelar() {
+        String[] terminos = listas.keySet().stream().sorted().toArray(String[]::new);
+        byte[][] postings = new byte[terminos.length][];
+
+        for (int i = 0; i < terminos.length; i++) {
+            Lista lista = listas.get(terminos[i]);
+            postings[i] = Postings.codificar(lista.documentos, lista.n);
+        }
+
+        return new Segmento(primerDocumento, finDocumento, 0, terminos, postings);
+    }
+
+    /**
+     * Lista de documentos de un término que crece según se añaden documentos.
+     */
+    private static final class Lista {
+        private int[] documentos = new int[4];
+        private int n;
+    }
+}
@@ -0,0 +1,37 @@
+package es.chat.servidor.tuberia;
+
+/**
+ * Etapa de la {@link Tuberia} de mensajes: recibe cada mensaje general o privado antes de que se numere y se difunda
+ * y puede dejarlo pasar, cambiar su texto o descartarlo.
+ * <p>
+ * Las etapas se buscan con {@code ServiceLoader} ({@code provides es.chat.servidor.tuberia.Etapa} en un módulo o
+ * {@code META-INF/services} en el classpath) y se activan por su {@link #nombre()} con {@code chat.tuberia}, en el
+ * orden indicado. Se crea una sola instancia de cada etapa y, con varios hilos de tubería, se llama desde todos a la
+ * vez, así que debe poder usarse desde varios hilos.
+ * @see Tuberia
+ * @see FiltroPalabras
+ * @version 1.0
+ * @author Adrián González
+ */
+public interface Etapa {
+    /**
+     * @return Nombre con el que se activa la etapa en {@code chat.tuberia} y se muestra en las estadísticas
+     */
+    String nombre();
+
+    /**
+     * Procesa un mensaje. Solo se tiene en cuenta el texto del mensaje devuelto: el emisor y el destinatario no cambian.
+     * @param mensaje Mensaje a procesar
+     * @return El mismo mensaje, uno con otro texto, o {@code null} (o un texto vacío) para descartarlo
+     */
+    Mensaje procesar(Mensaje mensaje);
+
+    /**
+     * Indica si la {@link Tuberia} puede saltarse la etapa cuando va lenta y hay mensajes acumulados. Las etapas que
+     * tienen que ver todos los mensajes (p. ej: una auditoría) deben devolver {@code false}.
+     * @return {@code true} por defecto
+     */
+    default boolean prescindible() {
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package es.chat.servidor.tuberia;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import es.chat.util.Configuracion;
+
+/**
+ * {@link Etapa} que sustituye por asteriscos las palabras de {@code chat.filtro.palabras}, sin distinguir mayúsculas
+ * de minúsculas. Solo cambia palabras completas. Se activa con el nombre {@code filtro}.
+ * @see Tuberia
+ * @version 1.0
+ * @author Adrián González
+ */
+public class FiltroPalabras implements Etapa {
+    /**
+     * Patrón con todas las palabras, o {@code null} si no hay ninguna.
+     */
+    private final Pattern palabras;
+
+    public FiltroPalabras() {
+        this(Configuracion.palabrasFiltradas());
+    }
+
+    /**
+     * @param palabras Palabras a filtrar
+     */
+    public FiltroPalabras(List<String> palabras) {
+        this.palabras = palabras.isEmpty() ? null : Pattern.compile(
+            palabras.stream().map(Pattern::quote).collect(Collectors.joining("|", "(?<!\\w)(?:", ")(?!\\w)")),
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    @Override
+    public String nombre() {
+        return "filtro";
+    }
+
+    @Override
+    public Mensaje procesar(Mensaje mensaje) {
+        if (palabras == null) {
+            return mensaje;
+        }
+
+        Matcher coincidencias = palabras.matcher(mensaje.texto());
+
+        if (!coincidencias.find()) {
+            return mensaje;
+        }
+
+        return mensaje.conTexto(coincidencias.replaceAll(c -> "*".repeat(c.group().length())));
+    }
+}
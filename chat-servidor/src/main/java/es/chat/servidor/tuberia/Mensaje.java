@@ -0,0 +1,26 @@
+package es.chat.servidor.tuberia;
+
+/**
+ * Mensaje general o privado que pasa por la {@link Tuberia}.
+ * @param emisor Alias del emisor
+ * @param destinatario Alias del destinatario, o {@code null} si es un mensaje general
+ * @param texto Texto del mensaje
+ * @version 1.0
+ * @author Adrián González
+ */
+public record Mensaje(String emisor, String destinatario, String texto) {
+    /**
+     * @return {@code true} si es un mensaje privado
+     */
+    public boolean esPrivado() {
+        return destinatario != null;
+    }
+
+    /**
+     * @param texto Nuevo texto
+     * @return Mensaje con el mismo emisor y destinatario y otro texto
+     */
+    public Mensaje conTexto(String texto) {
+        return new Mensaje(emisor, destinatario, texto);
+    }
+}
@@ -0,0 +1,319 @@
+package es.chat.servidor.tuberia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Clase que pasa los mensajes generales y privados por una serie de {@link Etapa} antes de entregarlos para que se
+ * numeren y se difundan.
+ * <p>
+ * Los {@link es.chat.servidor.Worker} solo dejan el mensaje en la cola de una de las líneas de la tubería, elegida por
+ * el alias del emisor, así que los mensajes de un mismo cliente se procesan en orden. Cada línea tiene un hilo propio
+ * que pasa el mensaje por las etapas, en el orden en el que se registraron, y lo entrega al destino. Si la cola está
+ * llena, el {@link es.chat.servidor.Worker} espera, lo que frena al cliente que envía. Sin etapas no hay hilos: los
+ * mensajes se entregan directamente desde el hilo del {@link es.chat.servidor.Worker}.
+ * <p>
+ * De cada etapa se mide cuántos mensajes procesa, descarta, cambia y salta y cuánto tarda (media, media de los
+ * últimos mensajes y máximo), y se muestra con {@link #estadisticas()}. Cuando la cola de una línea pasa de la mitad,
+ * la línea se considera cargada hasta que baja de la cuarta parte. Si mientras está cargada una etapa
+ * {@link Etapa#prescindible() prescindible} tarda de media más que el límite ({@code chat.tuberia.limite}), la línea
+ * se la salta durante {@link #PAUSA_MS} aunque la cola se vacíe antes, para no alternar con cada mensaje. Después se
+ * le pasa el siguiente mensaje y su media de los últimos mensajes vuelve a empezar con lo que tarda en él.
+ * <p>
+ * Si una etapa lanza una excepción, el mensaje sigue sin cambios.
+ * @see Etapa
+ * @see Mensaje
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Tuberia {
+    /**
+     * Peso de cada mensaje en la media de los últimos mensajes (1/16).
+     */
+    private static final int DESPLAZAMIENTO_MEDIA = 4;
+    /**
+     * Milisegundos que se salta una etapa lenta antes de volver a probarla.
+     */
+    public static final long PAUSA_MS = 1000;
+
+    private final List<Etapa> etapas;
+    private final Consumer<Mensaje> destino;
+    private final Linea[] lineas;
+    private final int capacidad;
+    private final long limite;
+    private final long inicio = System.nanoTime();
+
+    /**
+     * @param etapas Etapas en el orden en el que se aplican
+     * @param hilos Número de líneas, cada una con su hilo
+     * @param capacidad Mensajes que caben en la cola de cada línea
+     * @param limiteMicros Microsegundos de media a partir de los cuales una etapa prescindible se salta si la línea está cargada
+     * @param destino Recibe los mensajes que pasan todas las etapas, desde el hilo de la línea
+     */
+    public Tuberia(List<Etapa> etapas, int hilos, int capacidad, long limiteMicros, Consumer<Mensaje> destino) {
+        this.etapas = List.copyOf(etapas);
+        this.destino = destino;
+        this.capacidad = capacidad;
+        this.limite = limiteMicros * 1000;
+        this.lineas = new Linea[this.etapas.isEmpty() ? 0 : hilos];
+
+        for (int i = 0; i < lineas.length; i++) {
+            lineas[i] = new Linea(capacidad, this.etapas.size());
+        }
+    }
+
+    /**
+     * Busca las etapas disponibles con {@code ServiceLoader} y devuelve las indicadas, en el mismo orden.
+     * @param nombres Nombres de las etapas
+     * @return Etapas
+     * @throws IllegalArgumentException Si alguna no existe
+     */
+    public static List<Etapa> cargar(List<String> nombres) {
+        if (nombres.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Etapa> disponibles = new HashMap<>();
+
+        for (Etapa etapa : ServiceLoader.load(Etapa.class)) {
+            disponibles.putIfAbsent(etapa.nombre(), etapa);
+        }
+
+        List<Etapa> etapas = new ArrayList<>();
+
+        for (String nombre : nombres) {
+            Etapa etapa = disponibles.get(nombre);
+
+            if (etapa == null) {
+                throw new IllegalArgumentException(String.format("Etapa desconocida: %s (disponibles: %s)", nombre, disponibles.keySet()));
+            }
+
+            etapas.add(etapa);
+        }
+
+        return etapas;
+    }
+
+    /**
+     * @return Etapas de la tubería, en orden
+     */
+    public List<Etapa> getEtapas() {
+        return etapas;
+    }
+
+    /**
+     * Empieza a procesar los mensajes, un hilo por línea. Sin etapas no hace nada.
+     */
+    public void iniciar() {
+        for (int i = 0; i < lineas.length; i++) {
+            Linea linea = lineas[i];
+            Thread t = new Thread(() -> consumir(linea), "tuberia-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Deja un mensaje para que se procese. Espera si la cola de su línea está llena; si se interrumpe la espera, el
+     * mensaje se descarta y se avisa por la salida de errores.
+     * @param mensaje Mensaje
+     */
+    public void enviar(Mensaje mensaje) {
+        if (lineas.length == 0) {
+            destino.accept(mensaje);
+            return;
+        }
+
+        Linea linea = lineas[Math.floorMod(mensaje.emisor().hashCode(), lineas.length)];
+
+        try {
+            linea.cola.put(mensaje);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.printf("ERROR al dejar en la tubería el mensaje de %s, se descarta: hilo interrumpido%n", mensaje.emisor());
+        }
+    }
+
+    private void consumir(Linea linea) {
+        while (true) {
+            Mensaje mensaje;
+
+            try {
+                mensaje = linea.cola.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            int pendientes = linea.cola.size();
+
+            if (pendientes > capacidad / 2) {
+                linea.cargada = true;
+            } else if (pendientes < capacidad / 4) {
+                linea.cargada = false;
+            }
+
+            mensaje = procesar(linea, mensaje);
+
+            if (mensaje == null) {
+                continue;
+            }
+
+            try {
+                destino.accept(mensaje);
+            } catch (RuntimeException e) {
+                System.err.printf("ERROR al entregar el mensaje de %s%n%s%n", mensaje.emisor(), e);
+            }
+        }
+    }
+
+    /**
+     * Pasa el mensaje por las etapas y anota sus medidas.
+     * @return Mensaje resultante, o {@code null} si alguna etapa lo descarta
+     */
+    private Mensaje procesar(Linea linea, Mensaje mensaje) {
+        for (int i = 0; i < etapas.size(); i++) {
+            Etapa etapa = etapas.get(i);
+            Medidas medidas = linea.medidas[i];
+
+            long antes = System.nanoTime();
+
+            if (medidas.saltando && antes - medidas.saltarHasta < 0) {
+                medidas.saltados++;
+                continue;
+            }
+
+            boolean probando = medidas.saltando;
+
+            if (probando) {
+                medidas.saltando = false;
+                System.err.printf("Se vuelve a aplicar la etapa %s%n", etapa.nombre());
+            }
+
+            if (!probando && linea.cargada && etapa.prescindible() && medidas.mediaReciente > limite) {
+                medidas.saltando = true;
+                medidas.saltarHasta = antes + PAUSA_MS * 1_000_000;
+                medidas.saltados++;
+                System.err.printf("Se salta la etapa %s durante %d ms, la tubería está cargada y tarda %.0f µs de media%n",
+                    etapa.nombre(), PAUSA_MS, medidas.mediaReciente / 1000.0);
+                continue;
+            }
+
+            Mensaje resultado;
+
+            try {
+                resultado = etapa.procesar(mensaje);
+            } catch (RuntimeException e) {
+                medidas.errores++;
+                System.err.printf("ERROR en la etapa %s, el mensaje sigue sin cambios%n%s%n", etapa.nombre(), e);
+                resultado = mensaje;
+            }
+
+            medidas.anotar(System.nanoTime() - antes, probando);
+
+            if (resultado == null || resultado.texto() == null || resultado.texto().isBlank()) {
+                medidas.descartados++;
+                return null;
+            }
+
+            if (!resultado.texto().equals(mensaje.texto())) {
+                medidas.cambiados++;
+                mensaje = mensaje.conTexto(resultado.texto());
+            }
+        }
+
+        return mensaje;
+    }
+
+    /**
+     * @return Medidas de cada etapa, sumadas las de todas las líneas, una por línea de texto
+     */
+    public String estadisticas() {
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        StringBuilder texto = new StringBuilder("Tubería de mensajes:");
+
+        for (int i = 0; i < etapas.size(); i++) {
+            long procesados = 0;
+            long descartados = 0;
+            long cambiados = 0;
+            long saltados = 0;
+            long errores = 0;
+            long tiempo = 0;
+            long maximo = 0;
+            long mediaReciente = 0;
+
+            for (Linea linea : lineas) {
+                Medidas medidas = linea.medidas[i];
+                procesados += medidas.procesados;
+                descartados += medidas.descartados;
+                cambiados += medidas.cambiados;
+                saltados += medidas.saltados;
+                errores += medidas.errores;
+                tiempo += medidas.tiempo;
+                maximo = Math.max(maximo, medidas.maximo);
+                mediaReciente = Math.max(mediaReciente, medidas.mediaReciente);
+            }
+
+            texto.append(String.format("%n  %s: %d procesados (%.0f/s), %d descartados, %d cambiados, %d saltados, %d errores; "
+                    + "media %.1f µs, últimos %.1f µs, máx %.1f µs",
+                etapas.get(i).nombre(), procesados, procesados / segundos, descartados, cambiados, saltados, errores,
+                procesados == 0 ? 0.0 : tiempo / 1000.0 / procesados, mediaReciente / 1000.0, maximo / 1000.0));
+        }
+
+        return texto.toString();
+    }
+
+    /**
+     * Cola de mensajes atendida por un hilo, con las medidas de cada etapa en ese hilo.
+     */
+    private static final class Linea {
+        private final BlockingQueue<Mensaje> cola;
+        private final Medidas[] medidas;
+        private boolean cargada;
+
+        private Linea(int capacidad, int numEtapas) {
+            this.cola = new ArrayBlockingQueue<>(capacidad);
+            this.medidas = new Medidas[numEtapas];
+
+            for (int i = 0; i < numEtapas; i++) {
+                medidas[i] = new Medidas();
+            }
+        }
+    }
+
+    /**
+     * Medidas de una etapa en una línea. Solo las escribe el hilo de la línea; se leen desde otros al mostrar las
+     * estadísticas, por eso son {@code volatile}.
+     */
+    private static final class Medidas {
+        private volatile long procesados;
+        private volatile long descartados;
+        private volatile long cambiados;
+        private volatile long saltados;
+        private volatile long errores;
+        private volatile long tiempo;
+        private volatile long maximo;
+        /**
+         * Media móvil exponencial de los nanosegundos por mensaje.
+         */
+        private volatile long mediaReciente;
+        private boolean saltando;
+        private long saltarHasta;
+
+        /**
+         * @param nanos Lo que ha tardado la etapa
+         * @param reiniciar Si la media de los últimos mensajes empieza de nuevo
+         */
+        private void anotar(long nanos, boolean reiniciar) {
+            procesados++;
+            tiempo += nanos;
+            maximo = Math.max(maximo, nanos);
+            mediaReciente = procesados == 1 || reiniciar ? nanos : mediaReciente + ((nanos - mediaReciente) >> DESPLAZAMIENTO_MEDIA);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+module es.chat.servidor {
+    requires es.chat.protocolo;
+    requires java.management;
+
+    exports es.chat;
+    exports es.chat.servidor;
+    exports es.chat.servidor.tuberia;
+
+    uses es.chat.servidor.tuberia.Etapa;
+
+    provides es.chat.servidor.tuberia.Etapa with es.chat.servidor.tuberia.FiltroPalabras;
+}
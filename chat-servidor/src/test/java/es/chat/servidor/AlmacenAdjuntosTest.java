@@ -0,0 +1,125 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.chat.modelo.Adjunto;
+
+/**
+ * Comprueba que dos usuarios pueden subir a la vez el mismo adjunto al {@link AlmacenAdjuntos}, que un usuario
+ * continúa su propia subida, que al cancelar una subida se borra lo recibido y que las subidas sin terminar que han
+ * caducado se borran al arrancar.
+ * @version 1.0
+ * @author Adrián González
+ */
+class AlmacenAdjuntosTest {
+    private static final long MAXIMO = 1024 * 1024;
+    private static final long CADUCIDAD_MS = 60_000;
+
+    @TempDir
+    Path directorio;
+
+    private final byte[] contenido = new byte[2 * Adjunto.TAM_TROZO + 5];
+    private final String hash;
+
+    AlmacenAdjuntosTest() throws NoSuchAlgorithmException {
+        new Random(7).nextBytes(contenido);
+        hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contenido));
+    }
+
+    @Test
+    void dosUsuariosSubenElMismoAdjuntoALaVez() throws IOException {
+        AlmacenAdjuntos almacen = new AlmacenAdjuntos(directorio, MAXIMO, CADUCIDAD_MS);
+        AlmacenAdjuntos.Subida ana = almacen.empezar(hash, contenido.length, "ana");
+        AlmacenAdjuntos.Subida juan = almacen.empezar(hash, contenido.length, "juan");
+
+        assertThrows(IOException.class, () -> almacen.empezar(hash, contenido.length, "ana"), "Ana ya lo está subiendo");
+
+        assertFalse(juan.escribir(0, trozo(0)));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i == 2, ana.escribir((long) i * Adjunto.TAM_TROZO, trozo(i)));
+        }
+
+        ana.terminar();
+        assertTrue(almacen.existe(hash));
+        assertEquals(Base64.getEncoder().encodeToString(contenido), Files.readString(almacen.ruta(hash)));
+
+        // El Worker cancela la subida de Juan al ver que el adjunto ya existe
+        juan.cancelar();
+        assertEquals(List.of(), parciales());
+    }
+
+    @Test
+    void continuaLaSubidaDelMismoUsuarioYBorraLaCancelada() throws IOException {
+        AlmacenAdjuntos almacen = new AlmacenAdjuntos(directorio, MAXIMO, CADUCIDAD_MS);
+        AlmacenAdjuntos.Subida subida = almacen.empezar(hash, contenido.length, "ana");
+        subida.escribir(0, trozo(0));
+        subida.cerrar();
+
+        subida = almacen.empezar(hash, contenido.length, "ana");
+        assertEquals(Adjunto.TAM_TROZO, subida.getRecibidos(), "Continúa desde el último trozo");
+        subida.cerrar();
+
+        AlmacenAdjuntos.Subida juan = almacen.empezar(hash, contenido.length, "juan");
+        assertEquals(0, juan.getRecibidos(), "Juan empieza la suya");
+        juan.cerrar();
+
+        subida = almacen.empezar(hash, contenido.length, "ana");
+        subida.cancelar();
+
+        assertEquals(1, parciales().size(), "Solo queda la de Juan");
+        subida = almacen.empezar(hash, contenido.length, "ana");
+        assertEquals(0, subida.getRecibidos(), "Ana empieza de cero");
+        subida.cerrar();
+    }
+
+    @Test
+    void borraLasSubidasCaducadasAlArrancar() throws IOException {
+        AlmacenAdjuntos almacen = new AlmacenAdjuntos(directorio, MAXIMO, CADUCIDAD_MS);
+
+        for (String usuario : List.of("ana", "juan")) {
+            AlmacenAdjuntos.Subida subida = almacen.empezar(hash, contenido.length, usuario);
+            subida.escribir(0, trozo(0));
+            subida.cerrar();
+        }
+
+        Path caducada = parciales().get(0);
+        Files.setLastModifiedTime(caducada, FileTime.fromMillis(System.currentTimeMillis() - 2 * CADUCIDAD_MS));
+
+        new AlmacenAdjuntos(directorio, MAXIMO, CADUCIDAD_MS);
+
+        List<Path> quedan = parciales();
+        assertEquals(1, quedan.size());
+        assertFalse(quedan.contains(caducada));
+    }
+
+    private String trozo(int numero) {
+        int desde = numero * Adjunto.TAM_TROZO;
+        return Base64.getEncoder().encodeToString(Arrays.copyOfRange(contenido, desde, Math.min(desde + Adjunto.TAM_TROZO, contenido.length)));
+    }
+
+    private List<Path> parciales() throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio.resolve("parciales"))) {
+            return archivos.toList();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.chat.util.Configuracion;
+
+/**
+ * Mide la memoria del montón que asigna el hilo por cada trama al codificar respuestas y decodificar comandos con el
+ * {@link PoolBuffers}, y la compara con cómo se hacía antes de tenerlo: {@code writeUTF} en un
+ * {@code ByteArrayOutputStream} copiado a un buffer directo nuevo, y {@code readUTF}. Los buffers directos nuevos
+ * reservan además memoria nativa, que no se cuenta aquí.
+ * <p>
+ * El pom la ejecuta aparte, sin {@code chat.buffers.fugas}: la detección de fugas guarda una traza por cada préstamo
+ * y la medida dejaría de tener sentido.
+ * @version 1.0
+ * @author Adrián González
+ */
+class AsignacionTramasTest {
+    private static final String RESPUESTA = "CHT 123456 Juan " + "Mensaje de prueba con algún acento. ".repeat(6);
+    private static final int REPETICIONES = 20_000;
+    private static final int CALENTAMIENTO = 3;
+
+    private com.sun.management.ThreadMXBean hilos;
+    /**
+     * Se acumula lo que devuelven las pasadas para que el compilador no pueda eliminarlas.
+     */
+    private long sumidero;
+
+    @BeforeEach
+    void comprobarMedidor() {
+        assumeTrue(!Configuracion.detectarFugas(), "La detección de fugas asigna memoria en cada préstamo");
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+            "Necesita com.sun.management.ThreadMXBean");
+        hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(hilos.isThreadAllocatedMemorySupported() && hilos.isThreadAllocatedMemoryEnabled(),
+            "Necesita medir la memoria asignada por hilo");
+    }
+
+    @Test
+    void codificarConElPoolAsignaMenosMemoria() throws IOException {
+        for (int i = 0; i < CALENTAMIENTO; i++) {
+            codificarConPool();
+            codificarSinPool();
+        }
+
+        long antes = hilos.getCurrentThreadAllocatedBytes();
+        codificarConPool();
+        double conPool = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / REPETICIONES;
+
+        antes = hilos.getCurrentThreadAllocatedBytes();
+        codificarSinPool();
+        double sinPool = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / REPETICIONES;
+
+        System.out.printf("Codificar una trama de %d caracteres: %.0f bytes con el pool, %.0f con writeUTF y un buffer directo nuevo%n",
+            RESPUESTA.length(), conPool, sinPool);
+        assertTrue(conPool * 4 < sinPool, String.format("Con el pool: %.0f bytes por trama, sin él: %.0f", conPool, sinPool));
+    }
+
+    @Test
+    void decodificarConElPoolNoAsignaMasMemoria() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(RESPUESTA);
+        byte[] comando = bytes.toByteArray();
+
+        for (int i = 0; i < CALENTAMIENTO; i++) {
+            decodificarConPool(comando);
+            decodificarSinPool(comando);
+        }
+
+        long antes = hilos.getCurrentThreadAllocatedBytes();
+        decodificarConPool(comando);
+        double conPool = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / REPETICIONES;
+
+        antes = hilos.getCurrentThreadAllocatedBytes();
+        decodificarSinPool(comando);
+        double sinPool = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / REPETICIONES;
+
+        System.out.printf("Decodificar un comando de %d caracteres: %.0f bytes con el pool, %.0f con readUTF%n",
+            RESPUESTA.length(), conPool, sinPool);
+        // Un DataInputStream que se reutiliza también reutiliza sus arrays: los dos solo crean el String del comando
+        assertTrue(conPool <= sinPool, String.format("Con el pool: %.0f bytes por comando, sin él: %.0f", conPool, sinPool));
+    }
+
+    private void codificarConPool() throws IOException {
+        for (int i = 0; i < REPETICIONES; i++) {
+            Trama trama = Trama.de(RESPUESTA);
+            sumidero += trama.longitud();
+            trama.liberar();
+        }
+    }
+
+    private void codificarSinPool() throws IOException {
+        for (int i = 0; i < REPETICIONES; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(RESPUESTA.length() + 2);
+            new DataOutputStream(bytes).writeUTF(RESPUESTA);
+            ByteBuffer contenido = ByteBuffer.allocateDirect(bytes.size());
+            contenido.put(bytes.toByteArray()).flip();
+            sumidero += contenido.asReadOnlyBuffer().remaining();
+        }
+    }
+
+    /**
+     * Igual que {@link Cliente#leerComando()}: el texto va a un buffer prestado y se decodifica con un array de
+     * caracteres que se reutiliza.
+     */
+    private void decodificarConPool(byte[] comando) throws IOException {
+        char[] caracteres = new char[comando.length];
+
+        for (int i = 0; i < REPETICIONES; i++) {
+            ByteBuffer datos = PoolBuffers.prestar(comando.length - 2);
+
+            try {
+                datos.put(comando, 2, comando.length - 2).flip();
+                sumidero += UtfModificado.decodificar(datos, caracteres).length();
+            } finally {
+                PoolBuffers.devolver(datos);
+            }
+        }
+    }
+
+    private void decodificarSinPool(byte[] comando) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(comando);
+        DataInputStream entrada = new DataInputStream(bytes);
+
+        for (int i = 0; i < REPETICIONES; i++) {
+            bytes.reset();
+            sumidero += entrada.readUTF().length();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Comprueba que lo que graba la {@link Captura} se lee igual con {@link Captura.Lector}: tipos, conexiones, textos
+ * e instantes crecientes, y que un último registro a medias se ignora.
+ * @version 1.0
+ * @author Adrián González
+ */
+class CapturaTest {
+    @TempDir
+    Path directorio;
+
+    @Test
+    void leeLoQueGraba() throws IOException {
+        Path archivo = directorio.resolve("captura.bin");
+        String largo = "MSG " + "ñ".repeat(20_000);
+
+        try (Captura captura = Captura.abrir(archivo)) {
+            int ana = captura.nuevaConexion();
+            int juan = captura.nuevaConexion();
+
+            assertEquals(ana + 1, juan);
+
+            captura.trama(ana, "CON ana");
+            captura.sesion(ana, "3f2a");
+            captura.trama(juan, "CON juan");
+            captura.trama(ana, largo);
+            captura.cierre(ana);
+            captura.trama(juan, "REA 3f2a 1 2 3");
+        }
+
+        List<Captura.Registro> registros = leer(archivo);
+
+        assertEquals(6, registros.size());
+        assertRegistro(registros.get(0), Captura.TRAMA, 1, "CON ana");
+        assertRegistro(registros.get(1), Captura.SESION, 1, "3f2a");
+        assertRegistro(registros.get(2), Captura.TRAMA, 2, "CON juan");
+        assertRegistro(registros.get(3), Captura.TRAMA, 1, largo);
+        assertRegistro(registros.get(4), Captura.CIERRE, 1, null);
+        assertRegistro(registros.get(5), Captura.TRAMA, 2, "REA 3f2a 1 2 3");
+
+        for (int i = 1; i < registros.size(); i++) {
+            assertTrue(registros.get(i).instante() >= registros.get(i - 1).instante(), "Instantes crecientes");
+        }
+    }
+
+    @Test
+    void ignoraElUltimoRegistroAMedias() throws IOException {
+        Path archivo = directorio.resolve("captura.bin");
+
+        try (Captura captura = Captura.abrir(archivo)) {
+            captura.trama(1, "CON ana");
+            captura.trama(1, "MSG Hola a todos");
+        }
+
+        byte[] contenido = Files.readAllBytes(archivo);
+        Files.write(archivo, Arrays.copyOf(contenido, contenido.length - 5));
+
+        List<Captura.Registro> registros = leer(archivo);
+
+        assertEquals(1, registros.size());
+        assertRegistro(registros.get(0), Captura.TRAMA, 1, "CON ana");
+    }
+
+    @Test
+    void rechazaArchivosQueNoSonCapturas() throws IOException {
+        Path archivo = directorio.resolve("otro.bin");
+        Files.write(archivo, new byte[] {'C', 'H', 'A', 'T', 1});
+
+        assertThrows(IOException.class, () -> new Captura.Lector(archivo));
+    }
+
+    private static List<Captura.Registro> leer(Path archivo) throws IOException {
+        List<Captura.Registro> registros = new ArrayList<>();
+
+        try (Captura.Lector lector = new Captura.Lector(archivo)) {
+            Captura.Registro registro;
+
+            while ((registro = lector.siguiente()) != null) {
+                registros.add(registro);
+            }
+        }
+
+        return registros;
+    }
+
+    private static void assertRegistro(Captura.Registro registro, byte tipo, int conexion, String texto) {
+        assertEquals(tipo, registro.tipo());
+        assertEquals(conexion, registro.conexion());
+        assertEquals(texto, registro.texto());
+    }
+}
@@ -0,0 +1,168 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Comprueba que las escrituras que se piden con {@link Cliente#programarVaciado()} no bloquean al que llama aunque
+ * el cliente no lea, que un cliente que no lee no retrasa a los demás y que las tramas de control adelantan a las de
+ * difusión encoladas antes.
+ * @version 1.0
+ * @author Adrián González
+ */
+class ClienteTest {
+    private static final String TEXTO_LARGO = "x".repeat(60_000);
+    private static final long ESPERA_MS = 5000;
+
+    private ServerSocketChannel escucha;
+    private final List<SocketChannel> canales = new ArrayList<>();
+    private long prestados;
+
+    @BeforeEach
+    void abrir() throws IOException {
+        prestados = PoolBuffers.getBytesPrestados();
+        escucha = ServerSocketChannel.open();
+        escucha.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void cerrar() throws IOException, InterruptedException {
+        for (SocketChannel canal : canales) {
+            canal.close();
+        }
+
+        escucha.close();
+
+        // Un escritor bloqueado falla al cerrarse la conexión y libera las tramas que le quedaban
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+
+        while (PoolBuffers.getBytesPrestados() != prestados && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+        assertEquals(0, PoolBuffers.comprobarFugas());
+    }
+
+    @Test
+    void unClienteQueNoLeeNoBloqueaAlQueDifundeNiALosDemas() throws Exception {
+        SocketChannel[] lento = conectar(4096);
+        SocketChannel[] rapido = conectar(0);
+        Cliente clienteLento = new Cliente(lento[0]);
+        Cliente clienteRapido = new Cliente(rapido[0]);
+
+        // Bastante más de lo que cabe en los buffers de los sockets: el escritor del lento se queda bloqueado
+        Trama grande = Trama.de(ServCmd.CHT + " 1 ana " + TEXTO_LARGO);
+
+        try {
+            long inicio = System.nanoTime();
+
+            for (int i = 0; i < 200; i++) {
+                assertTrue(clienteLento.encolar(grande));
+                assertTrue(clienteLento.programarVaciado());
+            }
+
+            long duracion = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            assertTrue(duracion < 1000, "Encolar y programar 200 tramas ha tardado " + duracion + " ms");
+        } finally {
+            grande.liberar();
+        }
+
+        Trama trama = Trama.de(ServCmd.CHT + " 2 ana Hola");
+
+        try {
+            assertTrue(clienteRapido.encolar(trama));
+            assertTrue(clienteRapido.programarVaciado());
+        } finally {
+            trama.liberar();
+        }
+
+        rapido[1].socket().setSoTimeout((int) ESPERA_MS);
+        assertEquals("CHT 2 ana Hola", new DataInputStream(rapido[1].socket().getInputStream()).readUTF());
+    }
+
+    @Test
+    void lasTramasDeControlAdelantanALasDeDifusion() throws IOException {
+        SocketChannel[] canal = conectar(0);
+        Cliente cliente = new Cliente(canal[0]);
+
+        for (int i = 0; i < 100; i++) {
+            encolar(cliente, ServCmd.CHT + " " + i + " ana mensaje");
+        }
+
+        encolar(cliente, ServCmd.OK + " token 100 Conectado");
+        assertTrue(cliente.vaciar());
+
+        DataInputStream entrada = new DataInputStream(Channels.newInputStream(canal[1]));
+        assertEquals("OK token 100 Conectado", entrada.readUTF());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("CHT " + i + " ana mensaje", entrada.readUTF());
+        }
+    }
+
+    @Test
+    void noSeEncolaEnUnaConexionQueHaFallado() throws Exception {
+        SocketChannel[] canal = conectar(0);
+        Cliente cliente = new Cliente(canal[0]);
+        canal[0].close();
+
+        Trama trama = Trama.de(ServCmd.CHT + " 1 ana Hola");
+
+        try {
+            assertTrue(cliente.encolar(trama));
+            assertFalse(cliente.vaciar(), "La escritura falla y la conexión queda cerrada");
+            assertFalse(cliente.encolar(trama));
+            assertFalse(cliente.programarVaciado());
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    private static void encolar(Cliente cliente, String respuesta) throws IOException {
+        Trama trama = Trama.de(respuesta);
+
+        try {
+            assertTrue(cliente.encolar(trama));
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    /**
+     * @param bufferRecepcion Tamaño del buffer de recepción del extremo del cliente, o {@code 0} para el del sistema
+     * @return Extremo del servidor y extremo del cliente de una conexión por la interfaz de bucle local
+     */
+    private SocketChannel[] conectar(int bufferRecepcion) throws IOException {
+        SocketChannel extremo = SocketChannel.open();
+
+        if (bufferRecepcion > 0) {
+            extremo.setOption(StandardSocketOptions.SO_RCVBUF, bufferRecepcion);
+        }
+
+        extremo.connect(escucha.getLocalAddress());
+        SocketChannel canal = escucha.accept();
+        canales.add(extremo);
+        canales.add(canal);
+        return new SocketChannel[] {canal, extremo};
+    }
+}
@@ -0,0 +1,56 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.util.Configuracion;
+
+/**
+ * Comprueba que {@link Historial#vaciar()} devuelve al pool las tramas de la ventana, que después no se puede
+ * reanudar desde un número anterior y que la numeración continúa.
+ * @version 1.0
+ * @author Adrián González
+ */
+class HistorialTest {
+    @Test
+    void vaciarDevuelveLasTramasDeLaVentana() throws IOException {
+        assumeTrue(Configuracion.detectarFugas(), "Necesita -Dchat.buffers.fugas=true");
+
+        int antes = PoolBuffers.comprobarFugas();
+        Historial historial = new Historial(8);
+
+        for (int i = 0; i < 3; i++) {
+            historial.registrar(ServCmd.CHT, "ana hola " + i, null).liberar();
+        }
+
+        assertTrue(PoolBuffers.comprobarFugas() > antes, "La ventana retiene las tramas");
+
+        historial.vaciar();
+
+        assertEquals(antes, PoolBuffers.comprobarFugas());
+        assertNull(historial.desde(vistas(1), "juan"), "Ya no se puede reanudar desde un número anterior");
+
+        assertEquals(List.of(), historial.desde(vistas(3), "juan"));
+
+        historial.registrar(ServCmd.CHT, "ana adios", null).liberar();
+        assertEquals(4, historial.getUltimaSecuencia());
+
+        historial.vaciar();
+    }
+
+    private static long[] vistas(long secuencia) {
+        long[] vistas = new long[Carril.values().length];
+        Arrays.fill(vistas, secuencia);
+        return vistas;
+    }
+}
@@ -0,0 +1,85 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.chat.servidor.busqueda.Consulta;
+import es.chat.servidor.busqueda.IndiceMensajes;
+import es.chat.servidor.busqueda.MensajeIndexado;
+
+/**
+ * Comprueba que el {@link Indexador} añade los mensajes al índice desde su hilo, que al cerrarlo indexa los que
+ * quedan en la cola y que no hace esperar a quien los deja aunque la cola esté llena.
+ * @version 1.0
+ * @author Adrián González
+ */
+class IndexadorTest {
+    private static final long ESPERA_MS = 5000;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void indexaDesdeSuHilo() throws IOException, InterruptedException {
+        IndiceMensajes indice = new IndiceMensajes(directorio, 1000);
+        Indexador indexador = new Indexador(indice, 100);
+        indexador.iniciar();
+
+        try {
+            for (int i = 0; i < 50; i++) {
+                indexador.indexar(new MensajeIndexado(i + 1, i, "ana", null, "hola " + i));
+            }
+
+            long limite = System.currentTimeMillis() + ESPERA_MS;
+
+            while (indice.tamano() < 50 && System.currentTimeMillis() < limite) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(50, indice.buscar(Consulta.de("hola"), "ana", 0).total());
+        } finally {
+            indexador.close();
+        }
+    }
+
+    @Test
+    void indexaLosPendientesAlCerrar() throws IOException {
+        Indexador indexador = new Indexador(new IndiceMensajes(directorio, 1000), 100);
+        indexador.iniciar();
+
+        for (int i = 0; i < 50; i++) {
+            indexador.indexar(new MensajeIndexado(i + 1, i, "ana", null, "adiós " + i));
+        }
+
+        indexador.close();
+
+        try (IndiceMensajes reabierto = new IndiceMensajes(directorio, 1000)) {
+            assertEquals(50, reabierto.buscar(Consulta.de("adios"), "ana", 0).total());
+        }
+    }
+
+    @Test
+    void conLaColaLlenaDescartaSinEsperar() throws IOException {
+        IndiceMensajes indice = new IndiceMensajes(directorio, 1000);
+        // Sin iniciar, nadie vacía la cola
+        Indexador indexador = new Indexador(indice, 10);
+        long inicio = System.nanoTime();
+
+        for (int i = 0; i < 1000; i++) {
+            indexador.indexar(new MensajeIndexado(i + 1, i, "ana", null, "hola"));
+        }
+
+        long duracion = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+
+        assertTrue(duracion < 1000, "Dejar 1000 mensajes con la cola llena ha tardado " + duracion + " ms");
+        assertEquals(0, indice.tamano());
+        indexador.close();
+    }
+}
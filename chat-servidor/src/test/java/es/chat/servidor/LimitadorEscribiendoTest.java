@@ -0,0 +1,45 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba que el {@link LimitadorEscribiendo} agrupa los avisos al mismo chat dentro de la ventana y que, con los
+ * avisos que repite el cliente cada media ventana, reenvía uno al menos cada ventana y media, antes de que caduque el
+ * anterior en los destinatarios.
+ * @version 1.0
+ * @author Adrián González
+ */
+class LimitadorEscribiendoTest {
+    private static final long VENTANA = 2000;
+
+    @Test
+    void agrupaLosAvisosAlMismoChat() {
+        LimitadorEscribiendo limitador = new LimitadorEscribiendo(VENTANA);
+
+        assertTrue(limitador.permitir("*", 1000));
+        assertFalse(limitador.permitir("*", 1500));
+        assertTrue(limitador.permitir("juan", 1500), "Otro chat no se agrupa");
+        assertTrue(limitador.permitir("*", 1000 + VENTANA));
+    }
+
+    @Test
+    void reenviaAntesDeQueCaduqueElAvisoAnterior() {
+        LimitadorEscribiendo limitador = new LimitadorEscribiendo(VENTANA);
+        long ultimoReenviado = 0;
+
+        assertTrue(limitador.permitir("*", ultimoReenviado));
+
+        // Cada repetición del cliente llega un poco antes de la media ventana, así que algunas caen dentro de la ventana
+        for (long ahora = VENTANA / 2 - 1; ahora < 20 * VENTANA; ahora += VENTANA / 2 - 1) {
+            if (limitador.permitir("*", ahora)) {
+                assertTrue(ahora - ultimoReenviado <= VENTANA + VENTANA / 2, "Reenviado a los " + (ahora - ultimoReenviado) + " ms del anterior");
+                ultimoReenviado = ahora;
+            }
+        }
+
+        assertTrue(ultimoReenviado > 18 * VENTANA);
+    }
+}
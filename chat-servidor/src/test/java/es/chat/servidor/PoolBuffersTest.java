@@ -0,0 +1,164 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import es.chat.util.Configuracion;
+
+/**
+ * Comprueba el préstamo y la devolución de buffers del {@link PoolBuffers}, el límite de su lista libre y su
+ * detección de fugas.
+ * <p>
+ * Las pruebas se ejecutan con {@code -Dchat.buffers.fugas=true} (lo configura el pom), así que
+ * {@link PoolBuffers#comprobarFugas()} cuenta de verdad los buffers sin devolver.
+ * @version 1.0
+ * @author Adrián González
+ */
+class PoolBuffersTest {
+    @AfterEach
+    void sinFugas() {
+        assertEquals(0, PoolBuffers.comprobarFugas());
+    }
+
+    @Test
+    void prestaLaClaseMasPequenaEnLaQueCabe() {
+        int[] tamanos = {0, 1, 64, 65, 300, 4096, 16385, 65537};
+        int[] capacidades = {64, 64, 64, 256, 1024, 4096, 65537, 65537};
+
+        for (int i = 0; i < tamanos.length; i++) {
+            ByteBuffer buffer = PoolBuffers.prestar(tamanos[i]);
+
+            try {
+                assertTrue(buffer.isDirect());
+                assertEquals(capacidades[i], buffer.capacity());
+                assertEquals(0, buffer.position());
+                assertEquals(tamanos[i], buffer.limit());
+            } finally {
+                PoolBuffers.devolver(buffer);
+            }
+        }
+    }
+
+    @Test
+    void reutilizaLosBuffersDevueltos() {
+        ByteBuffer primero = PoolBuffers.prestar(100);
+        primero.put((byte) 1).put((byte) 2);
+        PoolBuffers.devolver(primero);
+
+        long aciertos = PoolBuffers.getAciertos();
+        long fallos = PoolBuffers.getFallos();
+        ByteBuffer segundo = PoolBuffers.prestar(200);
+
+        try {
+            assertSame(primero, segundo, "La caché del hilo devuelve el último buffer de la clase");
+            assertEquals(0, segundo.position());
+            assertEquals(200, segundo.limit());
+            assertEquals(aciertos + 1, PoolBuffers.getAciertos());
+            assertEquals(fallos, PoolBuffers.getFallos());
+        } finally {
+            PoolBuffers.devolver(segundo);
+        }
+    }
+
+    @Test
+    void cuentaLosBytesPrestados() {
+        long prestados = PoolBuffers.getBytesPrestados();
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        for (int i = 0; i < PoolBuffers.BUFFERS_POR_BLOQUE * 3; i++) {
+            buffers.add(PoolBuffers.prestar(1000));
+        }
+
+        assertEquals(prestados + 1024L * buffers.size(), PoolBuffers.getBytesPrestados());
+        Set<ByteBuffer> distintos = Collections.newSetFromMap(new IdentityHashMap<>());
+        distintos.addAll(buffers);
+        assertEquals(buffers.size(), distintos.size(), "No se presta dos veces el mismo buffer");
+
+        buffers.forEach(PoolBuffers::devolver);
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+    }
+
+    @Test
+    void limitaLosBuffersDeLaListaLibre() {
+        int clase = PoolBuffers.CLASES.length - 1;
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        for (int i = 0; i < PoolBuffers.maximoLibres(clase) * 2; i++) {
+            buffers.add(PoolBuffers.prestar(PoolBuffers.CLASES[clase]));
+        }
+
+        buffers.forEach(PoolBuffers::devolver);
+
+        assertEquals(PoolBuffers.maximoLibres(clase), PoolBuffers.libres(clase), "Los que no caben se sueltan");
+    }
+
+    @Test
+    void lasPeticionesMayoresQueLaUltimaClaseNoPasanPorElPool() {
+        int tamano = PoolBuffers.CLASES[PoolBuffers.CLASES.length - 1] + 1;
+        ByteBuffer buffer = PoolBuffers.prestar(tamano);
+        PoolBuffers.devolver(buffer);
+        ByteBuffer otro = PoolBuffers.prestar(tamano);
+
+        try {
+            assertEquals(tamano, otro.capacity());
+            assertTrue(buffer != otro);
+        } finally {
+            PoolBuffers.devolver(otro);
+        }
+    }
+
+    @Test
+    void detectaLosBuffersSinDevolver() {
+        assumeTrue(Configuracion.detectarFugas(), "Necesita -Dchat.buffers.fugas=true");
+
+        ByteBuffer buffer = PoolBuffers.prestar(10);
+        assertEquals(1, PoolBuffers.comprobarFugas());
+
+        PoolBuffers.devolver(buffer);
+        assertEquals(0, PoolBuffers.comprobarFugas());
+        assertThrows(IllegalStateException.class, () -> PoolBuffers.devolver(buffer), "Devolver dos veces es un error");
+    }
+
+    @Test
+    void funcionaDesdeVariosHilos() throws InterruptedException {
+        long prestados = PoolBuffers.getBytesPrestados();
+        Thread[] hilos = new Thread[8];
+
+        for (int i = 0; i < hilos.length; i++) {
+            int semilla = i;
+            hilos[i] = new Thread(() -> {
+                List<ByteBuffer> buffers = new ArrayList<>();
+
+                for (int j = 0; j < 20_000; j++) {
+                    buffers.add(PoolBuffers.prestar((j * 31 + semilla * 17) % 5000));
+
+                    if (buffers.size() > 32) {
+                        PoolBuffers.devolver(buffers.remove((j + semilla) % buffers.size()));
+                    }
+                }
+
+                buffers.forEach(PoolBuffers::devolver);
+            });
+            hilos[i].start();
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+    }
+}
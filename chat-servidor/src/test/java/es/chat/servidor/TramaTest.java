@@ -0,0 +1,142 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.ServCmd;
+
+/**
+ * Comprueba el contador de referencias de {@link Trama} y que su buffer vuelve al {@link PoolBuffers} al liberar la
+ * última referencia, y no antes.
+ * @version 1.0
+ * @author Adrián González
+ */
+class TramaTest {
+    @AfterEach
+    void sinFugas() {
+        assertEquals(0, PoolBuffers.comprobarFugas());
+    }
+
+    @Test
+    void codificaComoWriteUtf() throws IOException {
+        String respuesta = "CHT 7 Juan ¡Hola, qué tal!";
+        Trama trama = Trama.de(respuesta);
+
+        try {
+            ByteArrayOutputStream esperado = new ByteArrayOutputStream();
+            new DataOutputStream(esperado).writeUTF(respuesta);
+            ByteBuffer vista = trama.vista();
+            byte[] codificado = new byte[vista.remaining()];
+            vista.get(codificado);
+
+            assertArrayEquals(esperado.toByteArray(), codificado);
+            assertEquals(codificado.length, trama.longitud());
+            assertEquals(Carril.DIFUSION, trama.carril());
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    @Test
+    void cadaVistaTieneSuPosicion() throws IOException {
+        Trama trama = Trama.de("OK token 0 Conectado");
+
+        try {
+            ByteBuffer a = trama.vista();
+            ByteBuffer b = trama.vista();
+            a.position(a.limit());
+
+            assertEquals(trama.longitud(), b.remaining());
+            assertTrue(a.isReadOnly());
+        } finally {
+            trama.liberar();
+        }
+    }
+
+    @Test
+    void elBufferVuelveAlLiberarLaUltimaReferencia() throws IOException {
+        long prestados = PoolBuffers.getBytesPrestados();
+        Trama trama = Trama.de("PRV 3 Ana Juan Hola");
+
+        assertSame(trama, trama.retener());
+        assertTrue(trama.intentarRetener());
+
+        trama.liberar();
+        trama.liberar();
+        assertTrue(PoolBuffers.getBytesPrestados() > prestados, "Con una referencia el buffer sigue prestado");
+
+        trama.liberar();
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+    }
+
+    @Test
+    void noSePuedeUsarUnaTramaLiberada() throws IOException {
+        Trama trama = Trama.de("LST Ana,Juan");
+        trama.liberar();
+
+        assertFalse(trama.intentarRetener());
+        assertThrows(IllegalStateException.class, trama::retener);
+        assertThrows(IllegalStateException.class, trama::liberar);
+    }
+
+    @Test
+    void referenciasDesdeVariosHilos() throws Exception {
+        long prestados = PoolBuffers.getBytesPrestados();
+        Trama trama = Trama.de("CHT 1 Ana Hola a todos");
+        Thread[] hilos = new Thread[8];
+
+        for (int i = 0; i < hilos.length; i++) {
+            hilos[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    trama.retener();
+                    trama.liberar();
+                }
+            });
+            hilos[i].start();
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertTrue(trama.intentarRetener());
+        trama.liberar();
+        trama.liberar();
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+    }
+
+    @Test
+    void cadaComandoSalePorSuCarril() throws IOException {
+        for (ServCmd comando : ServCmd.values()) {
+            Trama trama = Trama.de(comando + " x");
+
+            try {
+                assertEquals(Carril.de(comando), trama.carril());
+            } finally {
+                trama.liberar();
+            }
+        }
+    }
+
+    @Test
+    void rechazaRespuestasDemasiadoLargas() {
+        long prestados = PoolBuffers.getBytesPrestados();
+
+        assertThrows(UTFDataFormatException.class, () -> Trama.de("CHT " + "x".repeat(UtfModificado.LONGITUD_MAXIMA)));
+        assertEquals(prestados, PoolBuffers.getBytesPrestados());
+    }
+}
@@ -0,0 +1,116 @@
+package es.chat.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba que {@link UtfModificado} codifica y decodifica igual que {@code DataOutputStream.writeUTF} y
+ * {@code DataInputStream.readUTF}, que es lo que usa el cliente.
+ * @version 1.0
+ * @author Adrián González
+ */
+class UtfModificadoTest {
+    private static final List<String> TEXTOS = List.of(
+        "",
+        "CHT 42 Juan Hola",
+        "PRV 43 Ana Juan ¿Qué tal, señor Muñoz?",
+        "Carácter nulo: \0 en medio",
+        "ĀĂĄ — € ∑ 中文 日本語",
+        "Emoji fuera del plano básico: 😀👍",
+        "a".repeat(UtfModificado.LONGITUD_MAXIMA),
+        "ñ".repeat(UtfModificado.LONGITUD_MAXIMA / 2),
+        "€".repeat(UtfModificado.LONGITUD_MAXIMA / 3));
+
+    @AfterEach
+    void sinFugas() {
+        assertEquals(0, PoolBuffers.comprobarFugas());
+    }
+
+    @Test
+    void codificaIgualQueWriteUtf() throws IOException {
+        for (String texto : TEXTOS) {
+            int longitud = UtfModificado.longitud(texto);
+            ByteBuffer buffer = PoolBuffers.prestar(longitud + 2);
+
+            try {
+                UtfModificado.codificar(texto, longitud, buffer);
+                buffer.flip();
+                byte[] codificado = new byte[buffer.remaining()];
+                buffer.get(codificado);
+
+                assertArrayEquals(writeUtf(texto), codificado, "Texto de " + texto.length() + " caracteres");
+            } finally {
+                PoolBuffers.devolver(buffer);
+            }
+        }
+    }
+
+    @Test
+    void decodificaLoQueEscribeWriteUtf() throws IOException {
+        for (String texto : TEXTOS) {
+            byte[] codificado = writeUtf(texto);
+            ByteBuffer buffer = PoolBuffers.prestar(codificado.length - 2);
+
+            try {
+                buffer.put(codificado, 2, codificado.length - 2).flip();
+                assertEquals(texto, UtfModificado.decodificar(buffer, new char[codificado.length]));
+            } finally {
+                PoolBuffers.devolver(buffer);
+            }
+        }
+    }
+
+    @Test
+    void readUtfLeeLoQueCodifica() throws IOException {
+        for (String texto : TEXTOS) {
+            int longitud = UtfModificado.longitud(texto);
+            ByteBuffer buffer = ByteBuffer.allocate(longitud + 2);
+            UtfModificado.codificar(texto, longitud, buffer);
+
+            assertEquals(texto, new DataInputStream(new ByteArrayInputStream(buffer.array())).readUTF());
+        }
+    }
+
+    @Test
+    void rechazaTextosDemasiadoLargos() {
+        String texto = "ñ".repeat(UtfModificado.LONGITUD_MAXIMA / 2 + 1);
+        int longitud = UtfModificado.longitud(texto);
+
+        assertEquals(UtfModificado.LONGITUD_MAXIMA + 1, longitud);
+        assertThrows(UTFDataFormatException.class, () -> UtfModificado.codificar(texto, longitud, ByteBuffer.allocate(longitud + 2)));
+    }
+
+    @Test
+    void rechazaBytesNoValidos() {
+        byte[][] invalidos = {
+            {(byte) 0x80},
+            {(byte) 0xC3},
+            {(byte) 0xC3, (byte) 0x41},
+            {(byte) 0xE2, (byte) 0x82},
+            {(byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80}
+        };
+
+        for (byte[] bytes : invalidos) {
+            assertThrows(UTFDataFormatException.class, () -> UtfModificado.decodificar(ByteBuffer.wrap(bytes), new char[bytes.length]));
+        }
+    }
+
+    private static byte[] writeUtf(String texto) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(texto);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,231 @@
+package es.chat.servidor.busqueda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Comprueba las búsquedas del {@link IndiceMensajes} con los mensajes guardados en disco: por palabras, por emisor
+ * sin palabras, por fecha con instantes desordenados, la visibilidad de los privados, el descarte de los más antiguos
+ * y la recuperación de los mensajes al volver a abrirlo.
+ * @version 1.0
+ * @author Adrián González
+ */
+class IndiceMensajesTest {
+    private static final String[] EMISORES = {"ana", "Ana", "juan", "luis"};
+
+    @TempDir
+    Path directorio;
+
+    private IndiceMensajes indice;
+
+    @AfterEach
+    void cerrar() {
+        if (indice != null) {
+            indice.close();
+        }
+    }
+
+    @Test
+    void buscaPorPalabrasSinTildesNiMayusculas() throws IOException {
+        indice = new IndiceMensajes(directorio, 1000);
+        indice.indexar(new MensajeIndexado(1, 1000, "ana", null, "Reunión el LUNES"));
+        indice.indexar(new MensajeIndexado(2, 2000, "juan", null, "el martes no hay reunion"));
+        indice.indexar(new MensajeIndexado(3, 3000, "juan", null, "nada que ver"));
+
+        ResultadoBusqueda resultado = indice.buscar(Consulta.de("reunión"), "luis", 0);
+
+        assertEquals(2, resultado.total());
+        assertEquals(List.of(2L, 1L), resultado.mensajes().stream().map(MensajeIndexado::secuencia).toList());
+        assertEquals(new MensajeIndexado(1, 1000, "ana", null, "Reunión el LUNES"), resultado.mensajes().get(1));
+        assertEquals(1, indice.buscar(Consulta.de("reunion lunes"), "luis", 0).total());
+    }
+
+    @Test
+    void filtraPorEmisorSinPalabras() throws IOException {
+        indice = new IndiceMensajes(directorio, 100000);
+        int mensajes = IndiceMensajes.TAM_SEGMENTO * 2 + 100;
+
+        for (int i = 0; i < mensajes; i++) {
+            indice.indexar(new MensajeIndexado(i, i, EMISORES[i % EMISORES.length], null, "mensaje " + i));
+        }
+
+        ResultadoBusqueda resultado = indice.buscar(Consulta.de("de:Ana"), "luis", 0);
+
+        assertEquals(Math.min((mensajes + 2) / EMISORES.length, IndiceMensajes.MAX_RESULTADOS), resultado.total());
+        assertEquals(IndiceMensajes.TAM_PAGINA, resultado.mensajes().size());
+        assertTrue(resultado.mensajes().stream().allMatch(m -> m.emisor().equals("Ana")), "El alias distingue mayúsculas");
+        assertEquals(mensajes - 3, resultado.mensajes().get(0).secuencia(), "Del más reciente al más antiguo");
+
+        ResultadoBusqueda conPalabra = indice.buscar(Consulta.de("de:juan 42"), "luis", 0);
+
+        assertEquals(1, conPalabra.total());
+        assertEquals("mensaje 42", conPalabra.mensajes().get(0).texto());
+        assertEquals(0, indice.buscar(Consulta.de("de:pedro"), "luis", 0).total());
+        assertEquals(0, indice.buscar(Consulta.de("de:ana 42"), "luis", 0).total());
+    }
+
+    @Test
+    void losPrivadosSoloLosVenSuEmisorYSuDestinatario() throws IOException {
+        indice = new IndiceMensajes(directorio, 1000);
+        indice.indexar(new MensajeIndexado(1, 1000, "ana", "juan", "secreto"));
+        indice.indexar(new MensajeIndexado(2, 2000, "luis", null, "secreto a voces"));
+
+        assertEquals(2, indice.buscar(Consulta.de("secreto"), "ana", 0).total());
+        assertEquals(2, indice.buscar(Consulta.de("secreto"), "juan", 0).total());
+        assertEquals(1, indice.buscar(Consulta.de("secreto"), "luis", 0).total());
+        assertEquals(1, indice.buscar(Consulta.de("de:ana"), "juan", 0).total());
+        assertEquals(0, indice.buscar(Consulta.de("de:ana"), "luis", 0).total());
+        assertEquals("juan", indice.buscar(Consulta.de("de:ana"), "ana", 0).mensajes().get(0).destinatario());
+        assertNull(indice.buscar(Consulta.de("de:luis"), "ana", 0).mensajes().get(0).destinatario());
+    }
+
+    @Test
+    void filtraPorFechaAunqueLosInstantesLleguenDesordenados() throws IOException {
+        indice = new IndiceMensajes(directorio, 1000);
+        long[] tiempos = {1000, 3000, 2000, 2500, 4000, 3500, 5000};
+
+        for (int i = 0; i < tiempos.length; i++) {
+            indice.indexar(new MensajeIndexado(i, tiempos[i], "ana", null, "hola"));
+        }
+
+        // Los instantes se igualan al anterior al indexar: 1000, 3000, 3000, 3000, 4000, 4000, 5000
+        assertEquals(6, indice.buscar(new Consulta(Set.of(), null, 2000, Long.MAX_VALUE), "ana", 0).total());
+        assertEquals(3, indice.buscar(new Consulta(Set.of(), null, 3000, 4000), "ana", 0).total());
+        assertEquals(3, indice.buscar(new Consulta(Set.of("hola"), "ana", 3500, 5001), "ana", 0).total());
+        assertEquals(0, indice.buscar(new Consulta(Set.of("hola"), null, 0, 1000), "ana", 0).total());
+
+        List<MensajeIndexado> pagina = indice.buscar(new Consulta(Set.of(), null, Long.MIN_VALUE, Long.MAX_VALUE), "ana", 0).mensajes();
+
+        for (int i = 1; i < pagina.size(); i++) {
+            assertTrue(pagina.get(i).tiempo() <= pagina.get(i - 1).tiempo());
+        }
+    }
+
+    @Test
+    void conservaSoloLosUltimosMensajes() throws IOException {
+        int porTramo = IndiceMensajes.TAM_SEGMENTO;
+        indice = new IndiceMensajes(directorio, porTramo + 1, porTramo);
+        int mensajes = porTramo * 5 + 10;
+
+        for (int i = 0; i < mensajes; i++) {
+            indice.indexar(new MensajeIndexado(i, i, EMISORES[i % EMISORES.length], null, "mensaje numero" + i));
+        }
+
+        // Se descarta por tramos enteros al congelar un segmento, así que se conservan algunos más de los pedidos
+        assertTrue(indice.tamano() > porTramo && indice.tamano() < porTramo * 3, "Se conservan " + indice.tamano());
+        assertEquals(0, indice.buscar(Consulta.de("numero0"), "ana", 0).total());
+        assertEquals(0, indice.buscar(Consulta.de("numero" + (mensajes - indice.tamano() - 1)), "ana", 0).total());
+        assertEquals(1, indice.buscar(Consulta.de("numero" + (mensajes - indice.tamano())), "ana", 0).total());
+        assertEquals(1, indice.buscar(Consulta.de("numero" + (mensajes - 1)), "ana", 0).total());
+        assertEquals(Math.min(indice.tamano(), IndiceMensajes.MAX_RESULTADOS),
+            indice.buscar(Consulta.de(""), "ana", 0).total());
+
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            assertEquals((indice.tamano() + porTramo - 1) / porTramo, archivos.count());
+        }
+    }
+
+    @Test
+    void leeMensajesDelArchivoYDelBuffer() throws IOException {
+        indice = new IndiceMensajes(directorio, 1000);
+        String largo = "largo " + "x".repeat(65535 - 6);
+        indice.indexar(new MensajeIndexado(1, 1000, "ana", null, "antes del largo"));
+        indice.indexar(new MensajeIndexado(2, 2000, "ana", "juan", largo));
+        indice.indexar(new MensajeIndexado(3, 3000, "ana", null, "después del largo"));
+
+        List<MensajeIndexado> pagina = indice.buscar(Consulta.de("de:ana"), "ana", 0).mensajes();
+
+        assertEquals(3, pagina.size());
+        assertEquals("después del largo", pagina.get(0).texto());
+        assertEquals(largo, pagina.get(1).texto());
+        assertEquals("antes del largo", pagina.get(2).texto());
+    }
+
+    @Test
+    void recuperaLosMensajesAlReabrir() throws IOException {
+        int porTramo = IndiceMensajes.TAM_SEGMENTO;
+        int mensajes = porTramo * 3 + 10;
+        indice = new IndiceMensajes(directorio, 100000, porTramo);
+
+        for (int i = 0; i < mensajes; i++) {
+            indice.indexar(new MensajeIndexado(i + 1, 1000 + i, EMISORES[i % EMISORES.length], i % 10 == 0 ? "luis" : null, "mensaje numero" + i));
+        }
+
+        indice.close();
+        indice = new IndiceMensajes(directorio, 100000, porTramo);
+
+        assertEquals(mensajes, indice.tamano());
+        assertEquals(mensajes, indice.getUltimaSecuencia());
+        assertEquals(new MensajeIndexado(43, 1042, "juan", null, "mensaje numero42"),
+            indice.buscar(Consulta.de("numero42"), "ana", 0).mensajes().get(0));
+        assertEquals("luis", indice.buscar(Consulta.de("numero40"), "luis", 0).mensajes().get(0).destinatario());
+        assertEquals(0, indice.buscar(Consulta.de("numero40"), "juan", 0).total(), "Sigue siendo privado");
+        assertEquals(Math.min(mensajes / EMISORES.length, IndiceMensajes.MAX_RESULTADOS),
+            indice.buscar(new Consulta(Set.of(), "juan", 0, Long.MAX_VALUE), "luis", 0).total());
+
+        // Los nuevos siguen a los recuperados
+        indice.indexar(new MensajeIndexado(mensajes + 1, 1, "ana", null, "después de reabrir"));
+
+        List<MensajeIndexado> pagina = indice.buscar(Consulta.de("de:ana"), "ana", 0).mensajes();
+        assertEquals("después de reabrir", pagina.get(0).texto());
+        assertEquals(1000 + mensajes - 1, pagina.get(0).tiempo(), "El instante no retrocede respecto a los recuperados");
+        assertEquals(1, indice.buscar(Consulta.de("numero0"), "ana", 0).total());
+    }
+
+    @Test
+    void cortaElUltimoRegistroAMedias() throws IOException {
+        indice = new IndiceMensajes(directorio, 1000);
+        indice.indexar(new MensajeIndexado(1, 1000, "ana", null, "primero"));
+        indice.indexar(new MensajeIndexado(2, 2000, "ana", null, "segundo"));
+        indice.close();
+
+        Path tramo;
+
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            tramo = archivos.findFirst().orElseThrow();
+        }
+
+        byte[] contenido = Files.readAllBytes(tramo);
+        Files.write(tramo, Arrays.copyOf(contenido, contenido.length - 3));
+
+        indice = new IndiceMensajes(directorio, 1000);
+
+        assertEquals(1, indice.tamano());
+        assertEquals(1, indice.buscar(Consulta.de("primero"), "ana", 0).total());
+
+        indice.indexar(new MensajeIndexado(3, 3000, "ana", null, "tercero"));
+
+        assertEquals(List.of("tercero", "primero"),
+            indice.buscar(Consulta.de("de:ana"), "ana", 0).mensajes().stream().map(MensajeIndexado::texto).toList());
+    }
+
+    @Test
+    void borraLosTramosQueNoSonDeEstaVersion() throws IOException {
+        Files.write(directorio.resolve("0000000000.docs"), new byte[] {1, 2, 3, 4, 5, 6});
+        indice = new IndiceMensajes(directorio, 1000);
+
+        assertEquals(0, indice.tamano());
+        indice.indexar(new MensajeIndexado(1, 1000, "ana", null, "hola"));
+        assertEquals(1, indice.buscar(Consulta.de("hola"), "ana", 0).total());
+    }
+
+    @Test
+    void rechazaTramosQueNoSonMultiploDelSegmento() {
+        assertThrows(IllegalArgumentException.class, () -> new IndiceMensajes(directorio, 1000, IndiceMensajes.TAM_SEGMENTO + 1));
+        assertThrows(IllegalArgumentException.class, () -> new IndiceMensajes(directorio, 0));
+    }
+}
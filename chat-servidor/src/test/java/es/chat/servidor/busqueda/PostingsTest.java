@@ -0,0 +1,67 @@
+package es.chat.servidor.busqueda;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba la codificación de las listas de documentos con {@link Postings}: el número de documentos y las
+ * diferencias entre identificadores en enteros de 7 bits por byte.
+ * @version 1.0
+ * @author Adrián González
+ */
+class PostingsTest {
+    @Test
+    void codificaElNumeroYLasDiferencias() {
+        assertArrayEquals(new byte[] {2, 3, 127}, Postings.codificar(new int[] {3, 130}, 2));
+        assertArrayEquals(new byte[] {1, (byte) 0x80, 0x01}, Postings.codificar(new int[] {128}, 1));
+        assertArrayEquals(new byte[] {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+            Postings.codificar(new int[] {Integer.MAX_VALUE}, 1));
+    }
+
+    @Test
+    void soloUsaLosPrimerosN() {
+        int[] documentos = {1, 2, 3, 99, 100};
+
+        assertArrayEquals(new int[] {1, 2, 3}, Postings.decodificar(Postings.codificar(documentos, 3)));
+    }
+
+    @Test
+    void listaVacia() {
+        byte[] codificada = Postings.codificar(Postings.VACIA, 0);
+
+        assertArrayEquals(new byte[] {0}, codificada);
+        assertArrayEquals(Postings.VACIA, Postings.decodificar(codificada));
+    }
+
+    @Test
+    void losDocumentosSeguidosOcupanUnBytePorDocumento() {
+        int[] documentos = new int[1000];
+        Arrays.setAll(documentos, i -> 5000 + i);
+
+        // 2 bytes del número, 2 de la primera diferencia y 1 de cada una de las demás
+        assertEquals(2 + 2 + 999, Postings.codificar(documentos, documentos.length).length);
+    }
+
+    @Test
+    void decodificaLoQueCodifica() {
+        Random aleatorio = new Random(42);
+
+        for (int limite : new int[] {1, 127, 128, 16384, 1 << 21, 1 << 28, Integer.MAX_VALUE / 4096}) {
+            int[] documentos = new int[4096];
+            int documento = 0;
+
+            for (int i = 0; i < documentos.length; i++) {
+                documento += aleatorio.nextInt(limite) + (i == 0 ? 0 : 1);
+                documentos[i] = documento;
+            }
+
+            assertArrayEquals(documentos, Postings.decodificar(Postings.codificar(documentos, documentos.length)),
+                "Diferencias de hasta " + limite);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package es.chat.servidor.rendimiento;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import es.chat.servidor.busqueda.Consulta;
+import es.chat.servidor.busqueda.IndiceMensajes;
+import es.chat.servidor.busqueda.MensajeIndexado;
+import es.chat.servidor.busqueda.ResultadoBusqueda;
+
+/**
+ * Mide la latencia de las búsquedas del {@link IndiceMensajes} con millones de mensajes guardados.
+ * <p>
+ * Indexa mensajes de 8 palabras elegidas con una distribución de Zipf sobre un vocabulario de 50.000, enviados por
+ * 1000 alias, uno de cada diez privado. Los instantes avanzan 10 ms por mensaje y los privados llegan con uno algo
+ * anterior, como los que pone el {@link es.chat.servidor.Repartidor}. Después lanza cada tipo de consulta con
+ * palabras y alias distintos en cada ronda y muestra sus percentiles, junto con el ritmo de indexación, la memoria
+ * del montón tras una recolección y lo que ocupan los mensajes en disco. Las primeras rondas son de calentamiento.
+ * <p>
+ * Los mensajes se guardan en un directorio temporal que se borra al terminar. Con los valores por defecto conviene
+ * lanzarla con {@code -Xmx1g} y tener sitio en disco para ellos.
+ * <p>
+ * Uso: {@code BusquedaCarga [mensajes] [rondas]}, por defecto 10.000.000 de mensajes y 200 rondas.
+ * @see IndiceMensajes
+ * @version 1.0
+ * @author Adrián González
+ */
+public class BusquedaCarga {
+    private static final int CALENTAMIENTO = 20;
+    private static final int VOCABULARIO = 50_000;
+    private static final int PALABRAS_POR_MENSAJE = 8;
+    private static final int ALIAS = 1000;
+    private static final long INICIO = 1_700_000_000_000L;
+    private static final long PASO_MS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int numMensajes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rondas = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Path directorio = Files.createTempDirectory("busqueda-carga");
+
+        try (IndiceMensajes indice = new IndiceMensajes(directorio, numMensajes)) {
+            Zipf zipf = new Zipf(VOCABULARIO, 1.0);
+            Random aleatorio = new Random(42);
+            long inicio = System.nanoTime();
+
+            for (int i = 0; i < numMensajes; i++) {
+                String emisor = alias(aleatorio.nextInt(ALIAS));
+                boolean privado = aleatorio.nextInt(10) == 0;
+                StringBuilder texto = new StringBuilder();
+
+                for (int p = 0; p < PALABRAS_POR_MENSAJE; p++) {
+                    texto.append(p == 0 ? "" : " ").append(palabra(zipf.siguiente(aleatorio)));
+                }
+
+                indice.indexar(new MensajeIndexado(i + 1, INICIO + i * PASO_MS - (privado ? aleatorio.nextInt(50) : 0),
+                    emisor, privado ? alias(aleatorio.nextInt(ALIAS)) : null, texto.toString()));
+
+                if ((i + 1) % 1_000_000 == 0) {
+                    System.out.printf("  %d mensajes indexados%n", i + 1);
+                }
+            }
+
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            System.gc();
+            Runtime entorno = Runtime.getRuntime();
+
+            System.out.printf("%d mensajes indexados en %.1f s (%.0f por segundo)%n", numMensajes, segundos, numMensajes / segundos);
+            System.out.printf("Montón tras una recolección: %d MB; mensajes en disco: %d MB%n",
+                (entorno.totalMemory() - entorno.freeMemory()) / 1024 / 1024, tamano(directorio) / 1024 / 1024);
+
+            long ventana = numMensajes * PASO_MS / 100;
+            Map<String, IntFunction<Consulta>> consultas = new LinkedHashMap<>();
+            consultas.put("Palabra frecuente", r -> Consulta.de(palabra(r % 3)));
+            consultas.put("Palabra poco frecuente", r -> Consulta.de(palabra(5000 + r)));
+            consultas.put("Dos palabras", r -> Consulta.de(palabra(r % 50) + " " + palabra(100 + r)));
+            consultas.put("Solo de:alias", r -> Consulta.de("de:" + alias(r % ALIAS)));
+            consultas.put("de:alias y palabra", r -> Consulta.de("de:" + alias(r % ALIAS) + " " + palabra(r % 20)));
+            consultas.put("Solo fechas (1 %)", r -> new Consulta(Set.of(), null, INICIO + r % 99 * ventana, INICIO + (r % 99 + 1) * ventana));
+            consultas.put("Palabra y fechas (1 %)", r -> new Consulta(Set.of(palabra(r % 100)), null, INICIO + r % 99 * ventana, INICIO + (r % 99 + 1) * ventana));
+            consultas.put("Sin filtros, página 10", r -> Consulta.de(""));
+
+            for (Map.Entry<String, IntFunction<Consulta>> consulta : consultas.entrySet()) {
+                long[] muestras = new long[rondas];
+                long total = 0;
+
+                for (int r = -CALENTAMIENTO; r < rondas; r++) {
+                    Consulta c = consulta.getValue().apply(r + CALENTAMIENTO);
+                    String quien = alias((r + CALENTAMIENTO) % ALIAS);
+                    int pagina = consulta.getKey().startsWith("Sin filtros") ? 10 : 0;
+                    long antes = System.nanoTime();
+                    ResultadoBusqueda resultado = indice.buscar(c, quien, pagina);
+                    long despues = System.nanoTime();
+
+                    if (r >= 0) {
+                        muestras[r] = despues - antes;
+                        total += resultado.total();
+                    }
+                }
+
+                System.out.printf("  %-24s %s, %.0f resultados de media%n", consulta.getKey(), percentiles(muestras), (double) total / rondas);
+            }
+        } finally {
+            try (Stream<Path> archivos = Files.list(directorio)) {
+                for (Path archivo : archivos.toList()) {
+                    Files.delete(archivo);
+                }
+            }
+
+            Files.delete(directorio);
+        }
+    }
+
+    private static String palabra(int rango) {
+        return "p" + Integer.toString(rango, 36);
+    }
+
+    private static String alias(int i) {
+        return "usuario" + i;
+    }
+
+    private static long tamano(Path directorio) throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            long bytes = 0;
+
+            for (Path archivo : archivos.toList()) {
+                bytes += Files.size(archivo);
+            }
+
+            return bytes;
+        }
+    }
+
+    private static String percentiles(long[] muestras) {
+        long[] ordenadas = muestras.clone();
+        Arrays.sort(ordenadas);
+        int n = ordenadas.length;
+        return String.format("(ms): p50 %.3f, p90 %.3f, p99 %.3f, máx %.3f",
+            ordenadas[n / 2] / 1e6, ordenadas[(int) (n * 0.9)] / 1e6, ordenadas[(int) (n * 0.99)] / 1e6, ordenadas[n - 1] / 1e6);
+    }
+
+    /**
+     * Elige rangos de 0 a {@code n - 1} con probabilidad proporcional a {@code 1 / (rango + 1)^s}, por bisección
+     * sobre la distribución acumulada.
+     */
+    private static final class Zipf {
+        private final double[] acumulada;
+
+        private Zipf(int n, double s) {
+            acumulada = new double[n];
+            double suma = 0;
+
+            for (int i = 0; i < n; i++) {
+                suma += 1 / Math.pow(i + 1, s);
+                acumulada[i] = suma;
+            }
+
+            for (int i = 0; i < n; i++) {
+                acumulada[i] /= suma;
+            }
+        }
+
+        private int siguiente(Random aleatorio) {
+            int i = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, acumulada.length - 1);
+        }
+    }
+}
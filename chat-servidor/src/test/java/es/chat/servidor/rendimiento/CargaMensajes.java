@@ -0,0 +1,244 @@
+package es.chat.servidor.rendimiento;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.chat.modelo.comando.CliCmd;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.util.Configuracion;
+
+/**
+ * Prueba de carga de los mensajes generales contra un servidor en marcha ({@code chat.host} y {@code chat.puerto}).
+ * <p>
+ * Conecta varios emisores que envían {@code MSG} sin pausa, cada uno desde su hilo, y varios oyentes que solo reciben.
+ * Cada emisor tiene como mucho {@link #VENTANA} mensajes enviados que todavía no ha recibido de vuelta, así que se
+ * mide lo que el servidor es capaz de difundir y no lo que cabe en los buffers de los sockets.
+ * Al terminar muestra los mensajes por segundo enviados y recibidos por el oyente más lento, la latencia desde que se
+ * envía un mensaje hasta que lo recibe el primer oyente y si algún oyente ha recibido los mensajes fuera de orden.
+ * Como los números de secuencia son únicos, si todos los oyentes los reciben crecientes, todos los reciben en el
+ * mismo orden.
+ * <p>
+ * Uso: {@code CargaMensajes [emisores] [oyentes] [segundos] [ventana]}, por defecto 32 emisores, 4 oyentes, 10 segundos
+ * y una ventana de 16 mensajes.
+ * El primer segundo es de calentamiento y no se cuenta.
+ * @version 1.0
+ * @author Adrián González
+ */
+public class CargaMensajes {
+    private static final long CALENTAMIENTO_MS = 1000;
+    private static final int VENTANA = 16;
+    /**
+     * Se guarda la latencia de uno de cada tantos mensajes recibidos por el primer oyente.
+     */
+    private static final int MUESTREO = 16;
+    private static final int MAX_MUESTRAS = 1 << 20;
+
+    public static void main(String[] args) throws Exception {
+        int numEmisores = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int numOyentes = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int ventana = args.length > 3 ? Integer.parseInt(args[3]) : VENTANA;
+        String host = Configuracion.host();
+        int puerto = Configuracion.puerto();
+
+        AtomicBoolean fin = new AtomicBoolean();
+        AtomicLong enviados = new AtomicLong();
+        List<Oyente> oyentes = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+
+        for (int i = 0; i < numOyentes; i++) {
+            Socket socket = conectar(host, puerto, "cargaOyente" + i);
+            Oyente oyente = new Oyente(new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16)), i == 0);
+            sockets.add(socket);
+            oyentes.add(oyente);
+            iniciar(oyente::run, "oyente-" + i);
+        }
+
+        List<Thread> emisores = new ArrayList<>();
+
+        for (int i = 0; i < numEmisores; i++) {
+            String alias = "cargaEmisor" + i;
+            Socket socket = conectar(host, puerto, alias);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+            Semaphore enVuelo = new Semaphore(ventana);
+            sockets.add(socket);
+            // Los emisores también reciben todos los mensajes: se leen para que el servidor no los corte por lentos
+            iniciar(() -> recibirPropios(entrada, alias, enVuelo), "vuelta-" + i);
+            emisores.add(iniciar(() -> emitir(salida, enVuelo, fin, enviados), "emisor-" + i));
+        }
+
+        Thread.sleep(CALENTAMIENTO_MS);
+        long enviadosInicio = enviados.get();
+        long[] recibidosInicio = oyentes.stream().mapToLong(o -> o.recibidos.get()).toArray();
+        oyentes.get(0).medir = true;
+        long inicio = System.nanoTime();
+
+        Thread.sleep(segundos * 1000L);
+
+        double duracion = (System.nanoTime() - inicio) / 1e9;
+        long enviadosFin = enviados.get();
+        oyentes.get(0).medir = false;
+        long recibidosMin = Long.MAX_VALUE;
+
+        for (int i = 0; i < oyentes.size(); i++) {
+            recibidosMin = Math.min(recibidosMin, oyentes.get(i).recibidos.get() - recibidosInicio[i]);
+        }
+
+        fin.set(true);
+
+        for (Thread emisor : emisores) {
+            emisor.join(2000);
+        }
+
+        System.out.printf("Emisores: %d, oyentes: %d, ventana: %d, %.1f s%n", numEmisores, numOyentes, ventana, duracion);
+        System.out.printf("Enviados: %.0f mensajes/s%n", (enviadosFin - enviadosInicio) / duracion);
+        System.out.printf("Recibidos por el oyente más lento: %.0f mensajes/s%n", recibidosMin / duracion);
+        System.out.println(oyentes.get(0).latencias());
+        System.out.printf("Orden: %s%n", comprobarOrden(oyentes));
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        System.exit(0);
+    }
+
+    private static Socket conectar(String host, int puerto, String alias) throws IOException {
+        Socket socket = new Socket(host, puerto);
+        socket.setTcpNoDelay(true);
+        DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+        DataInputStream entrada = new DataInputStream(socket.getInputStream());
+
+        salida.writeUTF(String.format("%s %s", CliCmd.CON, alias));
+        String respuesta = entrada.readUTF();
+
+        if (!respuesta.startsWith(ServCmd.OK.name())) {
+            throw new IOException(String.format("No se puede conectar %s: %s", alias, respuesta));
+        }
+
+        return socket;
+    }
+
+    private static Thread iniciar(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        return hilo;
+    }
+
+    private static void emitir(DataOutputStream salida, Semaphore enVuelo, AtomicBoolean fin, AtomicLong enviados) {
+        try {
+            while (!fin.get()) {
+                if (!enVuelo.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+
+                salida.writeUTF(String.format("%s %d", CliCmd.MSG, System.nanoTime()));
+                enviados.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.err.printf("Emisor desconectado: %s%n", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lee todo lo que recibe un emisor y deja enviar otro mensaje cada vez que le vuelve uno propio.
+     */
+    private static void recibirPropios(DataInputStream entrada, String alias, Semaphore enVuelo) {
+        String prefijo = " " + alias + " ";
+
+        try {
+            while (true) {
+                String respuesta = entrada.readUTF();
+
+                if (respuesta.startsWith(ServCmd.CHT.name()) && respuesta.indexOf(prefijo) == respuesta.indexOf(' ', 4)) {
+                    enVuelo.release();
+                }
+            }
+        } catch (IOException e) {
+            // Conexión cerrada al terminar
+        }
+    }
+
+    /**
+     * Comprueba que cada oyente ha recibido números de secuencia crecientes.
+     */
+    private static String comprobarOrden(List<Oyente> oyentes) {
+        long desordenados = oyentes.stream().mapToLong(o -> o.desordenados).sum();
+        return desordenados == 0 ? "correcto en todos los oyentes" : desordenados + " mensajes fuera de orden";
+    }
+
+    /**
+     * Conexión que solo recibe. Cuenta los mensajes generales y comprueba que sus números de secuencia crecen.
+     */
+    private static final class Oyente {
+        private final DataInputStream entrada;
+        private final boolean muestrear;
+        private final AtomicLong recibidos = new AtomicLong();
+        private final long[] muestras;
+        private volatile int numMuestras;
+        private long ultimaSecuencia;
+        private volatile long desordenados;
+        private volatile boolean medir;
+
+        private Oyente(DataInputStream entrada, boolean muestrear) {
+            this.entrada = entrada;
+            this.muestrear = muestrear;
+            this.muestras = muestrear ? new long[MAX_MUESTRAS] : null;
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    String respuesta = entrada.readUTF();
+
+                    if (!respuesta.startsWith(ServCmd.CHT.name())) {
+                        continue;
+                    }
+
+                    // CHT <secuencia> <alias> <instante de envío>
+                    String[] partes = respuesta.split(" ", 4);
+                    long secuencia = Long.parseLong(partes[1]);
+
+                    if (secuencia <= ultimaSecuencia) {
+                        desordenados++;
+                    }
+
+                    ultimaSecuencia = secuencia;
+                    long n = recibidos.incrementAndGet();
+
+                    if (muestrear && medir && n % MUESTREO == 0 && numMuestras < MAX_MUESTRAS) {
+                        muestras[numMuestras++] = System.nanoTime() - Long.parseLong(partes[3]);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Conexión cerrada al terminar
+            }
+        }
+
+        private String latencias() {
+            if (numMuestras == 0) {
+                return "Latencia: sin muestras";
+            }
+
+            long[] ordenadas = Arrays.copyOf(muestras, numMuestras);
+            Arrays.sort(ordenadas);
+            return String.format("Latencia (ms): p50 %.2f, p99 %.2f, p99.9 %.2f, máx %.2f (%d muestras)",
+                ordenadas[numMuestras / 2] / 1e6, ordenadas[(int) (numMuestras * 0.99)] / 1e6,
+                ordenadas[(int) (numMuestras * 0.999)] / 1e6, ordenadas[numMuestras - 1] / 1e6, numMuestras);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package es.chat.servidor.rendimiento;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import es.chat.modelo.comando.ServCmd;
+import es.chat.servidor.Cliente;
+import es.chat.servidor.Difusor;
+import es.chat.servidor.PoolBuffers;
+import es.chat.servidor.Trama;
+
+/**
+ * Mide cuánto tarda el {@link Difusor} en entregar una trama a todos los destinatarios.
+ * <p>
+ * Para cada número de destinatarios abre esas conexiones por la interfaz de bucle local, envuelve el extremo del
+ * servidor en un {@link Cliente} y lee el otro extremo de todas con un solo {@code Selector}. En cada ronda difunde un
+ * {@code CHT} y mide desde que se llama a {@link Difusor#difundir(List, Trama)} hasta que vuelve (todas las tramas
+ * escritas o encoladas) y hasta que el último destinatario ha leído la trama completa. Las primeras rondas son de
+ * calentamiento y no se cuentan.
+ * <p>
+ * Cada destinatario necesita dos descriptores de archivo (los dos extremos de la conexión), así que para 10.000
+ * destinatarios hay que subir el límite ({@code ulimit -n}) por encima de 20.000.
+ * <p>
+ * Uso: {@code DifusionCarga [rondas] [destinatarios...]}, por defecto 200 rondas a 100, 1000 y 10000 destinatarios.
+ * @see Difusor
+ * @version 1.0
+ * @author Adrián González
+ */
+public class DifusionCarga {
+    private static final int CALENTAMIENTO = 20;
+    private static final long MAX_ESPERA_RONDA_MS = 30_000;
+
+    public static void main(String[] args) throws Exception {
+        int rondas = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] tamanos = args.length > 1
+            ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[] {100, 1000, 10000};
+
+        System.out.printf("Umbral de difusión en paralelo: %d destinatarios, fragmentos de %d, %d procesadores%n",
+            Difusor.UMBRAL, Difusor.TAM_FRAGMENTO, Runtime.getRuntime().availableProcessors());
+
+        for (int destinatarios : tamanos) {
+            medir(destinatarios, rondas);
+        }
+
+        System.out.println(PoolBuffers.estadisticas());
+    }
+
+    private static void medir(int numDestinatarios, int rondas) throws IOException, InterruptedException {
+        List<SocketChannel> extremos = new ArrayList<>();
+        List<Cliente> destinatarios = new ArrayList<>();
+
+        try (ServerSocketChannel escucha = ServerSocketChannel.open(); Selector selector = Selector.open()) {
+            escucha.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), numDestinatarios);
+
+            for (int i = 0; i < numDestinatarios; i++) {
+                SocketChannel extremo = SocketChannel.open(escucha.getLocalAddress());
+                SocketChannel canal = escucha.accept();
+                canal.socket().setTcpNoDelay(true);
+                extremo.configureBlocking(false);
+                extremo.register(selector, SelectionKey.OP_READ, new int[1]);
+                extremos.add(extremo);
+
+                Cliente cliente = new Cliente(canal);
+                cliente.setAlias("difusion" + i);
+                destinatarios.add(cliente);
+            }
+
+            Lector lector = new Lector(selector, numDestinatarios);
+            Thread hilo = new Thread(lector::run, "lector");
+            hilo.setDaemon(true);
+            hilo.start();
+
+            long[] entrega = new long[rondas];
+            long[] ultimo = new long[rondas];
+
+            for (int ronda = -CALENTAMIENTO; ronda < rondas; ronda++) {
+                // Misma longitud en todas las rondas: el lector cuenta bytes
+                Trama trama = Trama.de(String.format("%s %08d difusion %s", ServCmd.CHT, ronda + CALENTAMIENTO, "x".repeat(64)));
+                CountDownLatch completa = lector.preparar(trama.longitud());
+                long inicio = System.nanoTime();
+
+                try {
+                    Difusor.difundir(destinatarios, trama);
+                } finally {
+                    trama.liberar();
+                }
+
+                long difundida = System.nanoTime();
+
+                if (!completa.await(MAX_ESPERA_RONDA_MS, TimeUnit.MILLISECONDS)) {
+                    throw new IOException(String.format("Ronda %d sin completar: %d de %d destinatarios",
+                        ronda, numDestinatarios - completa.getCount(), numDestinatarios));
+                }
+
+                if (ronda >= 0) {
+                    entrega[ronda] = difundida - inicio;
+                    ultimo[ronda] = lector.ultimaEntrega - inicio;
+                }
+            }
+
+            System.out.printf("%d destinatarios, %d rondas (%s)%n", numDestinatarios, rondas,
+                numDestinatarios > Difusor.UMBRAL ? "en paralelo" : "en el hilo que llama");
+            System.out.println("  Vuelta de difundir      " + percentiles(entrega));
+            System.out.println("  Entrega al último       " + percentiles(ultimo));
+        } finally {
+            for (SocketChannel extremo : extremos) {
+                extremo.close();
+            }
+        }
+    }
+
+    private static String percentiles(long[] muestras) {
+        long[] ordenadas = muestras.clone();
+        Arrays.sort(ordenadas);
+        int n = ordenadas.length;
+        return String.format("(ms): p50 %.3f, p90 %.3f, p99 %.3f, máx %.3f",
+            ordenadas[n / 2] / 1e6, ordenadas[(int) (n * 0.9)] / 1e6, ordenadas[(int) (n * 0.99)] / 1e6, ordenadas[n - 1] / 1e6);
+    }
+
+    /**
+     * Lee todas las conexiones y anota cuándo ha recibido cada una la trama completa de la ronda.
+     * Cada clave lleva como adjunto los bytes que le quedan por recibir.
+     */
+    private static final class Lector {
+        private final Selector selector;
+        private final int numDestinatarios;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private volatile CountDownLatch completa = new CountDownLatch(0);
+        private volatile int longitudTrama;
+        private volatile long ultimaEntrega;
+
+        private Lector(Selector selector, int numDestinatarios) {
+            this.selector = selector;
+            this.numDestinatarios = numDestinatarios;
+        }
+
+        /**
+         * Prepara la siguiente ronda. Solo se llama cuando la anterior está completa, así que no hay bytes a medias.
+         * @param longitud Bytes de la trama de la ronda
+         * @return Contador que llega a cero cuando todos los destinatarios la han recibido
+         */
+        private CountDownLatch preparar(int longitud) {
+            longitudTrama = longitud;
+            completa = new CountDownLatch(numDestinatarios);
+            return completa;
+        }
+
+        private void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+
+                    for (SelectionKey clave : selector.selectedKeys()) {
+                        leer(clave);
+                    }
+
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Conexiones cerradas al terminar
+            }
+        }
+
+        private void leer(SelectionKey clave) throws IOException {
+            int[] recibidos = (int[]) clave.attachment();
+            SocketChannel canal = (SocketChannel) clave.channel();
+            int n;
+
+            while ((n = canal.read(buffer.clear())) > 0) {
+                recibidos[0] += n;
+
+                while (recibidos[0] >= longitudTrama) {
+                    recibidos[0] -= longitudTrama;
+                    ultimaEntrega = System.nanoTime();
+                    completa.countDown();
+                }
+            }
+
+            if (n < 0) {
+                clave.cancel();
+            }
+        }
+    }
+}
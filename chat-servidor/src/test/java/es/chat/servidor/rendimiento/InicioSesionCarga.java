@@ -0,0 +1,193 @@
+package es.chat.servidor.rendimiento;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import es.chat.modelo.comando.CliCmd;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.util.Configuracion;
+
+/**
+ * Mide cuánto tardan en entrar al chat y en recibir la lista de usuarios los clientes que se conectan mientras otros
+ * inundan el servidor de mensajes generales, contra un servidor en marcha ({@code chat.host} y {@code chat.puerto}).
+ * <p>
+ * Conecta varios oyentes que leen todo lo que reciben, un cliente lento con un buffer de recepción de 4 KB que lee una
+ * trama por milisegundo y 4 emisores que envían sus mensajes sin pausa. Mientras tanto conecta otros clientes de uno
+ * en uno y mide desde que envía {@code CON} hasta que recibe {@code OK} y desde que envía {@code LUS} hasta que recibe
+ * {@code LST}. Si el servidor escribiera a los destinatarios desde el hilo que reparte los mensajes o desde el de la
+ * presencia, el cliente lento retrasaría estas respuestas; con los escritores solo debería notarse la carga.
+ * <p>
+ * Uso: {@code InicioSesionCarga [oyentes] [inicios] [mensajes]}, por defecto 20 oyentes, 15 inicios de sesión y
+ * 200.000 mensajes entre todos los emisores.
+ * @see es.chat.servidor.Cliente#programarVaciado()
+ * @version 1.0
+ * @author Adrián González
+ */
+public class InicioSesionCarga {
+    private static final int EMISORES = 4;
+    private static final int BUFFER_LENTO = 4096;
+    private static final long ESPERA_INICIO_MS = 100;
+    private static final String TEXTO = "x".repeat(200);
+
+    public static void main(String[] args) throws Exception {
+        int numOyentes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int inicios = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int mensajes = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        String host = Configuracion.host();
+        int puerto = Configuracion.puerto();
+
+        AtomicBoolean fin = new AtomicBoolean();
+        List<Socket> sockets = new ArrayList<>();
+
+        for (int i = 0; i < numOyentes; i++) {
+            Socket socket = conectar(host, puerto, "inicioOyente" + i, 0);
+            sockets.add(socket);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            iniciar(() -> leer(entrada, 0), "oyente-" + i);
+        }
+
+        Socket lento = conectar(host, puerto, "inicioLento", BUFFER_LENTO);
+        sockets.add(lento);
+        DataInputStream entradaLento = new DataInputStream(lento.getInputStream());
+        iniciar(() -> leer(entradaLento, 1), "lento");
+
+        List<Thread> emisores = new ArrayList<>();
+
+        for (int i = 0; i < EMISORES; i++) {
+            Socket socket = conectar(host, puerto, "inicioEmisor" + i, 0);
+            sockets.add(socket);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+            iniciar(() -> leer(entrada, 0), "vuelta-" + i);
+            emisores.add(iniciar(() -> emitir(salida, mensajes / EMISORES, fin), "emisor-" + i));
+        }
+
+        long[] entradas = new long[inicios];
+        long[] listas = new long[inicios];
+
+        for (int i = 0; i < inicios; i++) {
+            Thread.sleep(ESPERA_INICIO_MS);
+
+            try (Socket socket = new Socket(host, puerto)) {
+                socket.setTcpNoDelay(true);
+                DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+                DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+                long antes = System.nanoTime();
+                salida.writeUTF(String.format("%s %s", CliCmd.CON, "inicio" + i));
+                esperar(entrada, ServCmd.OK);
+                entradas[i] = System.nanoTime() - antes;
+
+                antes = System.nanoTime();
+                salida.writeUTF(CliCmd.LUS.name());
+                esperar(entrada, ServCmd.LST);
+                listas[i] = System.nanoTime() - antes;
+            }
+        }
+
+        boolean inundando = emisores.stream().anyMatch(Thread::isAlive);
+        fin.set(true);
+
+        System.out.printf("Oyentes: %d, emisores: %d, mensajes: %d, inicios de sesión: %d%n", numOyentes, EMISORES, mensajes, inicios);
+        System.out.printf("CON -> OK %s%n", percentiles(entradas));
+        System.out.printf("LUS -> LST %s%n", percentiles(listas));
+
+        if (!inundando) {
+            System.out.println("Los emisores terminaron antes que los inicios de sesión: aumente el número de mensajes");
+        }
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        System.exit(0);
+    }
+
+    private static Socket conectar(String host, int puerto, String alias, int bufferRecepcion) throws IOException {
+        Socket socket = new Socket();
+
+        if (bufferRecepcion > 0) {
+            socket.setReceiveBufferSize(bufferRecepcion);
+        }
+
+        socket.connect(new InetSocketAddress(host, puerto));
+        socket.setTcpNoDelay(true);
+        DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+        DataInputStream entrada = new DataInputStream(socket.getInputStream());
+
+        salida.writeUTF(String.format("%s %s", CliCmd.CON, alias));
+        String respuesta = entrada.readUTF();
+
+        if (!respuesta.startsWith(ServCmd.OK.name())) {
+            throw new IOException(String.format("No se puede conectar %s: %s", alias, respuesta));
+        }
+
+        return socket;
+    }
+
+    private static Thread iniciar(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        return hilo;
+    }
+
+    private static void emitir(DataOutputStream salida, int mensajes, AtomicBoolean fin) {
+        try {
+            for (int i = 0; i < mensajes && !fin.get(); i++) {
+                salida.writeUTF(String.format("%s %d %s", CliCmd.MSG, i, TEXTO));
+            }
+        } catch (IOException e) {
+            System.err.printf("Emisor desconectado: %s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * Lee todo lo que recibe una conexión, con una pausa tras cada trama si se indica.
+     */
+    private static void leer(DataInputStream entrada, long pausaMs) {
+        try {
+            while (true) {
+                entrada.readUTF();
+
+                if (pausaMs > 0) {
+                    Thread.sleep(pausaMs);
+                }
+            }
+        } catch (IOException e) {
+            // Conexión cerrada al terminar o cortada por lenta
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lee hasta recibir una respuesta del comando indicado, descartando los mensajes que lleguen antes.
+     */
+    private static void esperar(DataInputStream entrada, ServCmd comando) throws IOException {
+        String respuesta;
+
+        do {
+            respuesta = entrada.readUTF();
+
+            if (respuesta.startsWith(ServCmd.NOK.name())) {
+                throw new IOException(respuesta);
+            }
+        } while (!respuesta.startsWith(comando.name() + " "));
+    }
+
+    private static String percentiles(long[] muestras) {
+        long[] ordenadas = muestras.clone();
+        Arrays.sort(ordenadas);
+        int n = ordenadas.length;
+        return String.format("(ms): p50 %.2f, p90 %.2f, máx %.2f", ordenadas[n / 2] / 1e6, ordenadas[(int) (n * 0.9)] / 1e6, ordenadas[n - 1] / 1e6);
+    }
+}
@@ -0,0 +1,684 @@
+package es.chat.servidor.rendimiento;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import es.chat.modelo.comando.Carril;
+import es.chat.modelo.comando.CliCmd;
+import es.chat.modelo.comando.ServCmd;
+import es.chat.servidor.Captura;
+import es.chat.servidor.Servidor;
+import es.chat.util.Configuracion;
+
+/**
+ * Reproduce una {@link Captura} contra un servidor que arranca en la misma JVM, en el puerto {@code chat.puerto}, y
+ * mide cómo responde.
+ * <p>
+ * Abre una conexión por cada conexión de la captura y le envía sus comandos en el mismo orden, respetando los tiempos
+ * de la captura ({@code 1x}), diez veces más rápido ({@code 10x}) o sin esperas ({@code max}). Los {@code REA} se
+ * traducen al token y a los últimos números de secuencia que ha recibido en la reproducción la conexión a la que
+ * pertenecía el token. Al terminar muestra:
+ * <ul>
+ *     <li>Tramas enviadas y recibidas por segundo</li>
+ *     <li>Latencia de entrega: desde que se envía un {@code MSG} o un {@code PRV} hasta que le vuelve al emisor el
+ *     {@code CHT} o el {@code PRV} con su texto</li>
+ *     <li>Memoria asignada por el servidor, por segundo y por trama enviada. Se suma la memoria asignada durante la
+ *     reproducción por los hilos vivos de la JVM que no son del reproductor (los hilos de sesión del servidor se
+ *     reutilizan y siguen vivos al terminar), así que necesita el módulo {@code jdk.management} (si se ejecuta como
+ *     módulo, con {@code --add-modules jdk.management --add-reads es.chat.servidor=jdk.management}, como en las
+ *     pruebas)</li>
+ * </ul>
+ * Si se indica un archivo de línea base que no existe, se guardan en él los resultados. Si existe, se comparan con
+ * él y el programa termina con código 1 si alguna medida empeora más que la tolerancia.
+ * <p>
+ * La salida estándar del servidor se descarta mientras dura la reproducción (el coste de formatearla sí se mide).
+ * <p>
+ * Uso: {@code Reproductor captura [1x|10x|max] [lineaBase] [tolerancia]}, por defecto a {@code 1x}, sin línea base y
+ * con una tolerancia del 10 %.
+ * @see Captura
+ * @version 1.0
+ * @author Adrián González
+ */
+public class Reproductor {
+    private static final double TOLERANCIA_POR_DEFECTO = 10;
+    /**
+     * Milisegundos sin recibir nada tras enviar la última trama a partir de los cuales se da por terminada la reproducción.
+     */
+    private static final long ESPERA_FINAL_MS = 500;
+    private static final long MAX_ESPERA_FINAL_MS = 10_000;
+    private static final long MAX_ESPERA_SERVIDOR_MS = 10_000;
+    /**
+     * Milisegundos que se espera como mucho a que llegue el token de la sesión que reanuda un {@code REA}. Sin esperas
+     * el {@code REA} puede adelantarse a la respuesta del {@code CON} original.
+     */
+    private static final long MAX_ESPERA_TOKEN_MS = 1000;
+
+    private final double velocidad;
+    private final int puerto;
+    private final Medidor medidor = Medidor.crear();
+    /**
+     * Conexiones de la reproducción por número de conexión de la captura.
+     */
+    private final Map<Integer, Conexion> conexiones = new HashMap<>();
+    /**
+     * Número de conexión de la captura a la que se dio cada token de la captura.
+     */
+    private final Map<String, Integer> tokens = new HashMap<>();
+    private final AtomicLong recibidas = new AtomicLong();
+    private final AtomicLong ultimaRecepcion = new AtomicLong();
+    private long enviadas;
+    private long erroresEnvio;
+
+    /**
+     * @param velocidad Veces más rápido que la captura, o {@code 0} para enviar sin esperas
+     * @param puerto Puerto del servidor
+     */
+    private Reproductor(double velocidad, int puerto) {
+        this.velocidad = velocidad;
+        this.puerto = puerto;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Uso: Reproductor captura [1x|10x|max] [lineaBase] [tolerancia]");
+            System.exit(2);
+        }
+
+        Path archivo = Path.of(args[0]);
+        String nombreVelocidad = args.length > 1 ? args[1] : "1x";
+        double velocidad = leerVelocidad(nombreVelocidad);
+        Path lineaBase = args.length > 2 ? Path.of(args[2]) : null;
+        double tolerancia = args.length > 3 ? Double.parseDouble(args[3]) : TOLERANCIA_POR_DEFECTO;
+        int puerto = Configuracion.puerto();
+        PrintStream consola = System.out;
+
+        iniciarServidor(puerto);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Resultado resultado = new Reproductor(velocidad, puerto).reproducir(archivo);
+
+        System.setOut(consola);
+        System.out.printf("Captura: %s, velocidad: %s%n", archivo, nombreVelocidad);
+        System.out.println(resultado);
+
+        int codigo = 0;
+
+        if (lineaBase != null) {
+            codigo = compararConLineaBase(resultado, nombreVelocidad, lineaBase, tolerancia) ? 0 : 1;
+        }
+
+        System.exit(codigo);
+    }
+
+    private static double leerVelocidad(String velocidad) {
+        if (velocidad.equalsIgnoreCase("max")) {
+            return 0;
+        }
+
+        double veces = Double.parseDouble(velocidad.endsWith("x") ? velocidad.substring(0, velocidad.length() - 1) : velocidad);
+
+        if (veces <= 0) {
+            throw new IllegalArgumentException("Velocidad no válida: " + velocidad);
+        }
+
+        return veces;
+    }
+
+    /**
+     * Arranca el servidor en un hilo de esta JVM, sin captura, y espera a que acepte conexiones.
+     * @param puerto Puerto del servidor
+     */
+    private static void iniciarServidor(int puerto) throws IOException, InterruptedException {
+        if (puedeConectar(puerto)) {
+            throw new IOException("Ya hay un servidor escuchando en el puerto " + puerto);
+        }
+
+        System.clearProperty("chat.captura");
+        Thread servidor = new Thread(() -> Servidor.main(new String[0]), "servidor");
+        servidor.setDaemon(true);
+        servidor.start();
+
+        long limite = System.currentTimeMillis() + MAX_ESPERA_SERVIDOR_MS;
+
+        while (!puedeConectar(puerto)) {
+            if (System.currentTimeMillis() > limite) {
+                throw new IOException("El servidor no acepta conexiones en el puerto " + puerto);
+            }
+
+            Thread.sleep(20);
+        }
+    }
+
+    private static boolean puedeConectar(int puerto) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), puerto)) {
+            return socket.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Envía todos los registros de la captura y espera a que dejen de llegar respuestas.
+     * @param archivo Archivo de captura
+     * @return Medidas de la reproducción
+     */
+    private Resultado reproducir(Path archivo) throws IOException, InterruptedException {
+        if (medidor != null) {
+            medidor.excluir(Thread.currentThread());
+            medidor.empezar();
+        }
+
+        long inicio = System.nanoTime();
+        long finEnvio;
+
+        try (Captura.Lector lector = new Captura.Lector(archivo)) {
+            Captura.Registro registro;
+
+            while ((registro = lector.siguiente()) != null) {
+                esperarHasta(inicio, registro.instante());
+
+                switch (registro.tipo()) {
+                    case Captura.TRAMA -> enviar(registro.conexion(), registro.texto());
+                    case Captura.SESION -> tokens.put(registro.texto(), registro.conexion());
+                    case Captura.CIERRE -> cerrarEnvio(registro.conexion());
+                    default -> throw new IOException("Registro no válido: " + registro.tipo());
+                }
+            }
+
+            finEnvio = System.nanoTime();
+        }
+
+        ultimaRecepcion.compareAndSet(0, finEnvio);
+        long limite = finEnvio + MAX_ESPERA_FINAL_MS * 1_000_000;
+
+        while (System.nanoTime() - Math.max(ultimaRecepcion.get(), finEnvio) < ESPERA_FINAL_MS * 1_000_000
+                && System.nanoTime() < limite) {
+            Thread.sleep(20);
+        }
+
+        long finRecepcion = Math.max(ultimaRecepcion.get(), finEnvio);
+        long asignadaServidor = medidor != null ? medidor.asignada() : -1;
+
+        for (Conexion conexion : conexiones.values()) {
+            conexion.cerrar();
+        }
+
+        List<long[]> latencias = new ArrayList<>();
+
+        for (Conexion conexion : conexiones.values()) {
+            conexion.lector.join();
+            latencias.add(Arrays.copyOf(conexion.latencias, conexion.numLatencias));
+        }
+
+        return new Resultado(conexiones.size(), enviadas, erroresEnvio, recibidas.get(), (finEnvio - inicio) / 1e9,
+            (finRecepcion - inicio) / 1e9, unir(latencias), asignadaServidor);
+    }
+
+    /**
+     * Espera hasta el instante del registro según la velocidad de la reproducción.
+     * @param inicio Comienzo de la reproducción
+     * @param instante Microsegundos del registro desde el comienzo de la captura
+     */
+    private void esperarHasta(long inicio, long instante) {
+        if (velocidad == 0) {
+            return;
+        }
+
+        long debido = inicio + (long) (instante * 1000 / velocidad);
+        long espera;
+
+        while ((espera = debido - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(espera);
+        }
+    }
+
+    /**
+     * Envía un comando de la captura por la conexión que le corresponde, abriéndola si es el primero.
+     * @param numero Número de conexión de la captura
+     * @param comando Comando tal y como se capturó
+     */
+    private void enviar(int numero, String comando) {
+        Conexion conexion = conexiones.get(numero);
+
+        try {
+            if (conexion == null) {
+                conexion = new Conexion(numero);
+                conexiones.put(numero, conexion);
+            }
+
+            conexion.salida.writeUTF(traducir(conexion, comando));
+            enviadas++;
+        } catch (IOException e) {
+            erroresEnvio++;
+        }
+    }
+
+    /**
+     * Prepara el comando para la reproducción: anota el alias de la conexión, los mensajes cuya entrega se mide y
+     * traduce los {@code REA}.
+     * @param conexion Conexión de la reproducción
+     * @param comando Comando tal y como se capturó
+     * @return Comando a enviar
+     */
+    private String traducir(Conexion conexion, String comando) {
+        String[] splitComandoParametros = comando.split(" ", 2);
+        String parametros = splitComandoParametros.length == 2 ? splitComandoParametros[1] : "";
+        CliCmd cliCmd;
+
+        try {
+            cliCmd = CliCmd.valueOf(splitComandoParametros[0]);
+        } catch (IllegalArgumentException e) {
+            return comando;
+        }
+
+        switch (cliCmd) {
+            case CON -> conexion.alias = parametros;
+            case MSG -> conexion.generales.add(new Pendiente(parametros, System.nanoTime()));
+            case PRV -> {
+                String[] splitDestinatarioMensaje = parametros.split(" ", 2);
+
+                if (splitDestinatarioMensaje.length == 2) {
+                    conexion.privados.add(new Pendiente(splitDestinatarioMensaje[1], System.nanoTime()));
+                }
+            }
+            case REA -> {
+                Integer numeroAnterior = tokens.get(parametros.split(" ", 2)[0]);
+                Conexion anterior = numeroAnterior != null ? conexiones.get(numeroAnterior) : null;
+
+                if (anterior != null && anterior.esperarToken()) {
+                    StringBuilder rea = new StringBuilder(CliCmd.REA.name()).append(' ').append(anterior.token);
+
+                    for (Carril carril : Carril.values()) {
+                        if (carril.isNumerado()) {
+                            long ultima = anterior.ultimas.get(carril.ordinal());
+                            conexion.ultimas.set(carril.ordinal(), ultima);
+                            rea.append(' ').append(ultima);
+                        }
+                    }
+
+                    conexion.alias = anterior.alias;
+                    return rea.toString();
+                }
+            }
+            default -> {
+            }
+        }
+
+        return comando;
+    }
+
+    private void cerrarEnvio(int numero) {
+        Conexion conexion = conexiones.get(numero);
+
+        if (conexion != null) {
+            try {
+                conexion.socket.shutdownOutput();
+            } catch (IOException e) {
+                // Ya estaba cerrada
+            }
+        }
+    }
+
+    private static long[] unir(List<long[]> partes) {
+        long[] todas = new long[partes.stream().mapToInt(p -> p.length).sum()];
+        int posicion = 0;
+
+        for (long[] parte : partes) {
+            System.arraycopy(parte, 0, todas, posicion, parte.length);
+            posicion += parte.length;
+        }
+
+        Arrays.sort(todas);
+        return todas;
+    }
+
+    /**
+     * Guarda el resultado como línea base si el archivo no existe o lo compara con ella.
+     * @return {@code false} si alguna medida empeora más que la tolerancia
+     */
+    private static boolean compararConLineaBase(Resultado resultado, String velocidad, Path lineaBase, double tolerancia) throws IOException {
+        Properties actual = resultado.medidas();
+        actual.setProperty("velocidad", velocidad);
+
+        if (!Files.exists(lineaBase)) {
+            try (OutputStream salida = Files.newOutputStream(lineaBase)) {
+                actual.store(salida, "Línea base de Reproductor");
+            }
+
+            System.out.printf("Línea base guardada en %s%n", lineaBase);
+            return true;
+        }
+
+        Properties base = new Properties();
+
+        try (InputStream entrada = Files.newInputStream(lineaBase)) {
+            base.load(entrada);
+        }
+
+        if (!velocidad.equals(base.getProperty("velocidad"))) {
+            System.out.printf("AVISO: la línea base se midió a %s%n", base.getProperty("velocidad"));
+        }
+
+        boolean correcto = true;
+        System.out.printf("Comparación con %s (tolerancia %.0f %%):%n", lineaBase, tolerancia);
+
+        for (Medida medida : Medida.values()) {
+            String valorBase = base.getProperty(medida.clave);
+            String valorActual = actual.getProperty(medida.clave);
+
+            if (valorBase == null || valorActual == null) {
+                continue;
+            }
+
+            double antes = Double.parseDouble(valorBase);
+            double ahora = Double.parseDouble(valorActual);
+            // Porcentaje en el que empeora: positivo si es peor, negativo si es mejor
+            double empeora = antes == 0 ? 0 : (medida.mayorEsMejor ? antes - ahora : ahora - antes) / antes * 100;
+            boolean regresion = empeora > tolerancia;
+            correcto &= !regresion;
+
+            System.out.printf("  %-22s %12.2f -> %12.2f  %+6.1f %%%s%n", medida.clave, antes, ahora,
+                (ahora - antes) / (antes == 0 ? 1 : antes) * 100, regresion ? "  REGRESIÓN" : "");
+        }
+
+        return correcto;
+    }
+
+    /**
+     * Medidas que se guardan en la línea base y si un valor mayor es mejor.
+     */
+    private enum Medida {
+        RECIBIDAS("recibidas.segundo", true),
+        LATENCIA_P50("latencia.p50.ms", false),
+        LATENCIA_P99("latencia.p99.ms", false),
+        ASIGNADA("asignada.trama.bytes", false);
+
+        private final String clave;
+        private final boolean mayorEsMejor;
+
+        Medida(String clave, boolean mayorEsMejor) {
+            this.clave = clave;
+            this.mayorEsMejor = mayorEsMejor;
+        }
+    }
+
+    /**
+     * Mensaje enviado cuya vuelta al emisor todavía no ha llegado.
+     */
+    private record Pendiente(String texto, long enviado) {
+    }
+
+    /**
+     * Conexión de la reproducción. El hilo del reproductor envía por ella y un hilo propio lee las respuestas.
+     */
+    private final class Conexion {
+        private final Socket socket;
+        private final DataOutputStream salida;
+        private final Thread lector;
+        private final ConcurrentLinkedQueue<Pendiente> generales = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Pendiente> privados = new ConcurrentLinkedQueue<>();
+        /**
+         * Último número de secuencia recibido en cada carril.
+         */
+        private final AtomicLongArray ultimas = new AtomicLongArray(Carril.values().length);
+        private volatile String alias;
+        private volatile String token;
+        /**
+         * Latencias de entrega en nanosegundos. Solo las escribe el hilo lector.
+         */
+        private long[] latencias = new long[64];
+        private int numLatencias;
+
+        private Conexion(int numero) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), puerto);
+            socket.setTcpNoDelay(true);
+            salida = new DataOutputStream(socket.getOutputStream());
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            lector = new Thread(() -> leer(entrada), "reproduccion-" + numero);
+            lector.setDaemon(true);
+
+            if (medidor != null) {
+                medidor.excluir(lector);
+            }
+
+            lector.start();
+        }
+
+        private void leer(DataInputStream entrada) {
+            try {
+                while (true) {
+                    recibir(entrada.readUTF());
+                }
+            } catch (IOException | RuntimeException e) {
+                // Conexión cerrada por el servidor o al terminar
+            }
+        }
+
+        private void recibir(String respuesta) {
+            long ahora = System.nanoTime();
+            recibidas.incrementAndGet();
+            ultimaRecepcion.set(ahora);
+
+            String[] partes = respuesta.split(" ", 4);
+            ServCmd comando = ServCmd.valueOf(partes[0]);
+
+            switch (comando) {
+                case OK -> {
+                    token = partes[1];
+
+                    // Al iniciar sesión se empieza a contar desde la última secuencia; al reanudar, desde las del REA
+                    if (alias != null && ultimas.get(Carril.DIFUSION.ordinal()) == 0) {
+                        long secuencia = Long.parseLong(partes[2]);
+
+                        for (Carril carril : Carril.values()) {
+                            ultimas.set(carril.ordinal(), secuencia);
+                        }
+                    }
+                }
+                case PRE, PRV, CHT -> {
+                    int carril = Carril.de(comando).ordinal();
+                    ultimas.set(carril, Math.max(ultimas.get(carril), Long.parseLong(partes[1])));
+
+                    if (comando == ServCmd.CHT && partes.length == 4 && partes[2].equals(alias)) {
+                        entregado(generales, partes[3], ahora);
+                    } else if (comando == ServCmd.PRV && partes.length == 4 && partes[2].equals(alias)) {
+                        // PRV <secuencia> <emisor> <destinatario> <texto>
+                        String[] destinatarioTexto = partes[3].split(" ", 2);
+
+                        if (destinatarioTexto.length == 2) {
+                            entregado(privados, destinatarioTexto[1], ahora);
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Anota la latencia del mensaje entregado. Los pendientes anteriores que no han vuelto (p. ej: a un destinatario
+         * que ya no existía) se descartan.
+         */
+        private void entregado(ConcurrentLinkedQueue<Pendiente> pendientes, String texto, long ahora) {
+            Pendiente pendiente;
+
+            while ((pendiente = pendientes.poll()) != null) {
+                if (pendiente.texto().equals(texto)) {
+                    if (numLatencias == latencias.length) {
+                        latencias = Arrays.copyOf(latencias, latencias.length * 2);
+                    }
+
+                    latencias[numLatencias++] = ahora - pendiente.enviado();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} si la conexión ha recibido un token de sesión, esperándolo si todavía no ha llegado
+         */
+        private boolean esperarToken() {
+            long limite = System.nanoTime() + MAX_ESPERA_TOKEN_MS * 1_000_000;
+
+            while (token == null && lector.isAlive() && System.nanoTime() < limite) {
+                LockSupport.parkNanos(100_000);
+            }
+
+            return token != null;
+        }
+
+        private void cerrar() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ya estaba cerrada
+            }
+        }
+    }
+
+    /**
+     * Medidas de una reproducción.
+     * @param conexiones Conexiones abiertas
+     * @param enviadas Tramas enviadas
+     * @param erroresEnvio Tramas que no se han podido enviar
+     * @param recibidas Tramas recibidas por todas las conexiones
+     * @param segundosEnvio Segundos desde el comienzo hasta enviar la última trama
+     * @param segundosRecepcion Segundos desde el comienzo hasta recibir la última trama
+     * @param latencias Latencias de entrega ordenadas, en nanosegundos
+     * @param asignada Bytes asignados por el servidor, o {@code -1} si no se pueden medir
+     */
+    private record Resultado(int conexiones, long enviadas, long erroresEnvio, long recibidas, double segundosEnvio,
+                             double segundosRecepcion, long[] latencias, long asignada) {
+        private double percentil(double p) {
+            return latencias.length == 0 ? 0 : latencias[Math.min(latencias.length - 1, (int) (latencias.length * p))] / 1e6;
+        }
+
+        private Properties medidas() {
+            Properties medidas = new Properties();
+            medidas.setProperty(Medida.RECIBIDAS.clave, String.format("%.1f", recibidas / segundosRecepcion));
+
+            if (latencias.length > 0) {
+                medidas.setProperty(Medida.LATENCIA_P50.clave, String.format("%.3f", percentil(0.5)));
+                medidas.setProperty(Medida.LATENCIA_P99.clave, String.format("%.3f", percentil(0.99)));
+            }
+
+            if (asignada >= 0 && enviadas > 0) {
+                medidas.setProperty(Medida.ASIGNADA.clave, String.format("%.0f", (double) asignada / enviadas));
+            }
+
+            return medidas;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder texto = new StringBuilder();
+            texto.append(String.format("Conexiones: %d%n", conexiones));
+            texto.append(String.format("Enviadas: %d tramas en %.2f s (%.0f/s)%s%n", enviadas, segundosEnvio,
+                enviadas / segundosEnvio, erroresEnvio > 0 ? String.format(", %d sin enviar", erroresEnvio) : ""));
+            texto.append(String.format("Recibidas: %d tramas en %.2f s (%.0f/s)%n", recibidas, segundosRecepcion,
+                recibidas / segundosRecepcion));
+
+            if (latencias.length == 0) {
+                texto.append(String.format("Latencia de entrega: sin muestras%n"));
+            } else {
+                texto.append(String.format("Latencia de entrega (ms): p50 %.2f, p99 %.2f, p99.9 %.2f, máx %.2f (%d muestras)%n",
+                    percentil(0.5), percentil(0.99), percentil(0.999), latencias[latencias.length - 1] / 1e6, latencias.length));
+            }
+
+            if (asignada < 0) {
+                texto.append("Memoria asignada por el servidor: no disponible (falta jdk.management)");
+            } else {
+                texto.append(String.format("Memoria asignada por el servidor: %.1f MB/s, %.0f bytes por trama enviada",
+                    asignada / segundosRecepcion / (1024 * 1024), enviadas > 0 ? (double) asignada / enviadas : 0));
+            }
+
+            return texto.toString();
+        }
+    }
+
+    /**
+     * Memoria asignada por los hilos de la JVM que no son del reproductor, con la extensión de {@code ThreadMXBean}
+     * de {@code jdk.management}.
+     */
+    private static final class Medidor {
+        private final com.sun.management.ThreadMXBean hilos;
+        private final Set<Long> excluidos = ConcurrentHashMap.newKeySet();
+        private final Map<Long, Long> alEmpezar = new HashMap<>();
+
+        private Medidor(com.sun.management.ThreadMXBean hilos) {
+            this.hilos = hilos;
+        }
+
+        /**
+         * @return Medidor, o {@code null} si la JVM no permite medir la memoria asignada
+         */
+        private static Medidor crear() {
+            try {
+                if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean hilos
+                        && hilos.isThreadAllocatedMemorySupported()) {
+                    hilos.setThreadAllocatedMemoryEnabled(true);
+                    return new Medidor(hilos);
+                }
+            } catch (LinkageError e) {
+                // Módulo jdk.management no disponible
+            }
+
+            return null;
+        }
+
+        private void excluir(Thread hilo) {
+            excluidos.add(hilo.getId());
+        }
+
+        /**
+         * Anota lo que han asignado hasta ahora los hilos vivos.
+         */
+        private void empezar() {
+            long[] ids = hilos.getAllThreadIds();
+            long[] asignada = hilos.getThreadAllocatedBytes(ids);
+
+            for (int i = 0; i < ids.length; i++) {
+                alEmpezar.put(ids[i], asignada[i]);
+            }
+        }
+
+        /**
+         * @return Bytes asignados desde {@link #empezar()} por los hilos vivos que no son del reproductor
+         */
+        private long asignada() {
+            long[] ids = hilos.getAllThreadIds();
+            long[] asignada = hilos.getThreadAllocatedBytes(ids);
+            long total = 0;
+
+            for (int i = 0; i < ids.length; i++) {
+                if (asignada[i] > 0 && !excluidos.contains(ids[i])) {
+                    total += asignada[i] - alEmpezar.getOrDefault(ids[i], 0L);
+                }
+            }
+
+            return total;
+        }
+    }
+}
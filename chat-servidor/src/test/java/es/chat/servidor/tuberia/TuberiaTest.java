@@ -0,0 +1,134 @@
+package es.chat.servidor.tuberia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba que la {@link Tuberia} se salta una etapa prescindible lenta mientras la línea está cargada, que la sigue
+ * saltando durante {@link Tuberia#PAUSA_MS} aunque la cola se vacíe y que después vuelve a aplicarla, que nunca se
+ * salta una etapa que no es prescindible y que avisa de las etapas desconocidas y de los mensajes que descarta.
+ * @version 1.0
+ * @author Adrián González
+ */
+class TuberiaTest {
+    private static final int CAPACIDAD = 8;
+    /**
+     * Límite de la tubería en microsegundos, bastante menos de lo que tarda la etapa lenta.
+     */
+    private static final long LIMITE_MICROS = 1000;
+    private static final long ESPERA_MS = 5000;
+
+    private final BlockingQueue<Mensaje> entregados = new LinkedBlockingQueue<>();
+
+    @Test
+    void seSaltaLaEtapaLentaMientrasLaLineaEstaCargadaYLaVuelveAAplicarTrasLaPausa() throws InterruptedException {
+        Tuberia tuberia = new Tuberia(List.of(new Lenta(true)), 1, CAPACIDAD, LIMITE_MICROS, entregados::add);
+
+        // Con la cola llena antes de arrancar, la línea está cargada desde el primer mensaje
+        for (int i = 0; i < CAPACIDAD; i++) {
+            tuberia.enviar(new Mensaje("ana", null, "m" + i));
+        }
+
+        tuberia.iniciar();
+
+        assertEquals("m0 lenta", recibir().texto(), "El primero se procesa y fija la media");
+
+        for (int i = 1; i < CAPACIDAD; i++) {
+            assertEquals("m" + i, recibir().texto(), "Línea cargada y media por encima del límite");
+        }
+
+        // La cola ya está vacía, pero la pausa no ha terminado
+        tuberia.enviar(new Mensaje("ana", null, "durante"));
+        assertEquals("durante", recibir().texto());
+
+        Thread.sleep(Tuberia.PAUSA_MS + 100);
+        tuberia.enviar(new Mensaje("ana", null, "después"));
+        assertEquals("después lenta", recibir().texto());
+
+        String estadisticas = tuberia.estadisticas();
+        assertTrue(estadisticas.contains("2 procesados"), estadisticas);
+        assertTrue(estadisticas.contains(CAPACIDAD + " saltados"), estadisticas);
+    }
+
+    @Test
+    void nuncaSeSaltaUnaEtapaQueNoEsPrescindible() throws InterruptedException {
+        Tuberia tuberia = new Tuberia(List.of(new Lenta(false)), 1, CAPACIDAD, LIMITE_MICROS, entregados::add);
+
+        for (int i = 0; i < CAPACIDAD; i++) {
+            tuberia.enviar(new Mensaje("ana", null, "m" + i));
+        }
+
+        tuberia.iniciar();
+
+        for (int i = 0; i < CAPACIDAD; i++) {
+            assertEquals("m" + i + " lenta", recibir().texto());
+        }
+
+        assertTrue(tuberia.estadisticas().contains("0 saltados"));
+    }
+
+    @Test
+    void descartaElMensajeSiSeInterrumpeLaEspera() throws InterruptedException {
+        Tuberia tuberia = new Tuberia(List.of(new Lenta(true)), 1, 1, LIMITE_MICROS, entregados::add);
+        tuberia.enviar(new Mensaje("ana", null, "cabe"));
+
+        // Sin iniciar, la cola sigue llena y el siguiente tendría que esperar
+        Thread.currentThread().interrupt();
+        tuberia.enviar(new Mensaje("ana", null, "no cabe"));
+
+        assertTrue(Thread.interrupted(), "Se conserva la interrupción");
+
+        tuberia.iniciar();
+
+        assertEquals("cabe lenta", recibir().texto());
+        assertNull(entregados.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void rechazaLasEtapasDesconocidas() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Tuberia.cargar(List.of("desconocida")));
+
+        assertTrue(e.getMessage().contains("desconocida"), e.getMessage());
+        assertEquals(List.of(), Tuberia.cargar(List.of()));
+    }
+
+    private Mensaje recibir() throws InterruptedException {
+        Mensaje mensaje = entregados.poll(ESPERA_MS, TimeUnit.MILLISECONDS);
+
+        if (mensaje == null) {
+            throw new AssertionError("No ha salido ningún mensaje de la tubería");
+        }
+
+        return mensaje;
+    }
+
+    /**
+     * Etapa que tarda 5 ms y añade " lenta" al texto, para saber qué mensajes ha procesado.
+     */
+    private record Lenta(boolean prescindible) implements Etapa {
+        @Override
+        public String nombre() {
+            return "lenta";
+        }
+
+        @Override
+        public Mensaje procesar(Mensaje mensaje) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return mensaje.conTexto(mensaje.texto() + " lenta");
+        }
+    }
+}